@@ -14,7 +14,8 @@
  */
 
 var NativeModules = require("react-native").NativeModules;
-var DB_STATE_INIT, DB_STATE_OPEN, READ_ONLY_REGEX, SQLiteFactory, SQLitePlugin, SQLitePluginTransaction, argsArray, dblocations, newSQLError, txLocks;
+var Platform = require("react-native").Platform;
+var DB_STATE_INIT, DB_STATE_OPEN, READ_ONLY_REGEX, SQLiteFactory, SQLitePlugin, SQLitePluginCursor, SQLitePluginTransaction, argsArray, dblocations, newSQLError, txLocks;
 
 var plugin = {};
 
@@ -50,6 +51,206 @@ newSQLError = function(error, code) {
   return sqlError;
 };
 
+/*
+ A statement may be given either as a SQL string or as an object of the form
+ {sql: "SELECT ...", resultFormat: "array" | "columnar"} to request a compact
+ result encoding from the native side.
+ */
+
+function statementText(sql) {
+  if (!!sql && typeof sql === "object" && sql.sql !== void 0) {
+    return sql.sql;
+  }
+  return sql;
+}
+
+function statementOptions(sql) {
+  if (!!sql && typeof sql === "object" && sql.sql !== void 0) {
+    return sql;
+  }
+  return {};
+}
+
+/*
+ Result references: a {$ref: "index.name"} parameter is replaced natively (Android)
+ by a value of the result of statement index of the transaction (0 is the first
+ executeSql): name is insertId or rowsAffected, or for a query a column of its
+ first row. The statement must be sent in the same native batch, i.e. queued in
+ the same callback. Indexes are sent relative to the batch.
+ */
+
+function isRef(v) {
+  return !!v && typeof v === "object" && typeof v.$ref === "string";
+}
+
+function batchRef(ref, base) {
+  var dot = ref.indexOf(".");
+  /* executes[0] of a transaction is its BEGIN (or SELECT 1) statement */
+  return {$ref: (parseInt(ref.substring(0, dot), 10) + 1 - base) + ref.substring(dot)};
+}
+
+/* statement as sent in the executes of a native batch starting at statement base */
+function nativeExecute(request, base) {
+  var topt = {
+    qid: 1111,
+    sql: request.sql,
+    params: request.params
+  };
+  if (request.refs) {
+    topt.params = request.params.map(function(v) {
+      return isRef(v) ? batchRef(v.$ref, base || 0) : v;
+    });
+  }
+  if (request.resultFormat) {
+    topt.format = request.resultFormat;
+  }
+  if (request.blobs) {
+    topt.blobs = request.blobs;
+  }
+  return topt;
+}
+
+/*
+ BLOB transport: ArrayBuffer and typed array parameters are sent as
+ {blob: base64} and bound natively as BLOB. With the statement option
+ {sql, blobs: "arraybuffer"} BLOB columns come back the same way and are
+ turned into ArrayBuffers here; blobs: "compact" returns Base64 strings
+ without line breaks.
+ */
+
+/*
+ Interactive transactions are started ahead of waiting background ones, but
+ at most MAX_INTERACTIVE_STREAK in a row while a background one waits.
+ */
+const MAX_INTERACTIVE_STREAK = 8;
+
+const BASE64_CHARS = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+
+function bytesToBase64(bytes) {
+  var out = "", i, n;
+  for (i = 0; i < bytes.length; i += 3) {
+    n = (bytes[i] << 16) | ((i + 1 < bytes.length ? bytes[i + 1] : 0) << 8) | (i + 2 < bytes.length ? bytes[i + 2] : 0);
+    out += BASE64_CHARS.charAt((n >> 18) & 63) + BASE64_CHARS.charAt((n >> 12) & 63) +
+      (i + 1 < bytes.length ? BASE64_CHARS.charAt((n >> 6) & 63) : "=") +
+      (i + 2 < bytes.length ? BASE64_CHARS.charAt(n & 63) : "=");
+  }
+  return out;
+}
+
+function base64ToArrayBuffer(str) {
+  var clean = str.replace(/[^A-Za-z0-9+/]/g, ""), bytes, i, j, n, c;
+  bytes = new Uint8Array(Math.floor(clean.length * 3 / 4));
+  for (i = 0, j = 0; i < clean.length; i += 4) {
+    n = 0;
+    for (c = 0; c < 4; c++) {
+      n = (n << 6) | (i + c < clean.length ? BASE64_CHARS.indexOf(clean.charAt(i + c)) : 0);
+    }
+    if (j < bytes.length) bytes[j++] = (n >> 16) & 255;
+    if (j < bytes.length) bytes[j++] = (n >> 8) & 255;
+    if (j < bytes.length) bytes[j++] = n & 255;
+  }
+  return bytes.buffer;
+}
+
+function isBinary(v) {
+  return typeof ArrayBuffer !== "undefined" && (v instanceof ArrayBuffer || ArrayBuffer.isView(v));
+}
+
+function toNativeParam(v) {
+  if (typeof v === "boolean") {
+    return ~~v;
+  }
+  if (isBinary(v)) {
+    return {
+      blob: bytesToBase64(v instanceof ArrayBuffer ? new Uint8Array(v) : new Uint8Array(v.buffer, v.byteOffset, v.byteLength))
+    };
+  }
+  return v;
+}
+
+function decodeBlob(v) {
+  return !!v && typeof v === "object" && typeof v.blob === "string" ? base64ToArrayBuffer(v.blob) : v;
+}
+
+function decodeBlobs(list) {
+  var i, k, item;
+  for (i = 0; i < list.length; i++) {
+    item = list[i];
+    if (item.constructor === Array) {
+      for (k = 0; k < item.length; k++) {
+        item[k] = decodeBlob(item[k]);
+      }
+    } else {
+      for (k in item) {
+        item[k] = decodeBlob(item[k]);
+      }
+    }
+  }
+}
+
+/*
+ Rows accessor for results sent in array (column names once, one positional
+ array per row) or columnar (column names once, one array per column) format.
+ Row objects are only built when asked for.
+ */
+
+function resultSetRows(response) {
+  var columns = response.columns, length, row, column;
+  if (response.values) {
+    var values = response.values;
+    length = response.rowCount || 0;
+    row = function(i) {
+      var r = [], c;
+      for (c = 0; c < columns.length; c++) {
+        r.push(values[c][i]);
+      }
+      return r;
+    };
+    column = function(c) {
+      return values[c];
+    };
+  } else {
+    var arrays = response.rows || [];
+    length = arrays.length;
+    row = function(i) {
+      return arrays[i];
+    };
+    column = function(c) {
+      return arrays.map(function(r) {
+        return r[c];
+      });
+    };
+  }
+  var item = function(i) {
+    var r, obj = {}, c;
+    if (i < 0 || i >= length) {
+      return void 0;
+    }
+    r = row(i);
+    for (c = 0; c < columns.length; c++) {
+      obj[columns[c]] = r[c];
+    }
+    return obj;
+  };
+  return {
+    item: item,
+    raw: function() {
+      var all = [], i;
+      for (i = 0; i < length; i++) {
+        all.push(item(i));
+      }
+      return all;
+    },
+    /**
+     * non-standard: column names, positional row values and per column values
+     */
+    columns: columns.slice(),
+    row: row,
+    column: column,
+    length: length
+  };
+}
+
 let nextTick = setImmediate ||  function(fun) {
   setTimeout(fun, 0);
 };
@@ -86,9 +287,27 @@ plugin.exec = function(method, options, success, error) {
   if (plugin.sqlitePlugin.DEBUG){
     plugin.log("SQLite." + method + "(" + JSON.stringify(options) + ")");
   }
+  if (typeof NativeModules["SQLite"][method] !== "function") {
+    error("SQLite." + method + " is not supported on this platform");
+    return;
+  }
   NativeModules["SQLite"][method](options,success,error);
 };
 
+/*
+ Synchronous call of a native method, returns {type: "success", result}
+ or {type: "error", message}.
+ */
+plugin.execSync = function(method, options) {
+  if (plugin.sqlitePlugin.DEBUG){
+    plugin.log("SQLite." + method + "(" + JSON.stringify(options) + ")");
+  }
+  if (typeof NativeModules["SQLite"][method] !== "function") {
+    return {type: "error", message: "SQLite." + method + " is not supported on this platform"};
+  }
+  return NativeModules["SQLite"][method](options);
+};
+
 plugin.log = function(...messages) {
   if (plugin.sqlitePlugin.DEBUG) {
     console.log(...messages)
@@ -135,7 +354,11 @@ SQLitePlugin.prototype.addTransaction = function(t) {
   if (!txLocks[this.dbname]) {
     txLocks[this.dbname] = {
       queue: [],
-      inProgress: false
+      inProgress: false,
+      interactiveStreak: 0,
+      /* atomic batches sent but not yet committed, all in the same priority lane */
+      atomicPending: 0,
+      atomicPriority: null
     };
   }
   txLocks[this.dbname].queue.push(t);
@@ -159,11 +382,17 @@ SQLitePlugin.prototype.transaction = function(fn, error, success) {
 };
 
 SQLitePlugin.prototype.readTransaction = function(fn, error, success) {
+  var pinned;
   if (!this.openDBs[this.dbname]) {
     error(newSQLError("database not open"));
     return;
   }
-  this.addTransaction(new SQLitePluginTransaction(this, fn, error, success, false, true));
+  /*
+   With a reader pool the batches of a read transaction go to a reader connection,
+   inside BEGIN ... COMMIT so they all run on the same reader and read one snapshot.
+   */
+  pinned = this.openargs.readerPoolSize > 0 && Platform.OS === "android";
+  this.addTransaction(new SQLitePluginTransaction(this, fn, error, success, pinned, true));
 };
 
 SQLitePlugin.prototype.startNextTransaction = function() {
@@ -179,14 +408,220 @@ SQLitePlugin.prototype.startNextTransaction = function() {
       txLock = txLocks[self.dbname];
       if (!txLock) {
         plugin.log("cannot start next transaction: database connection is lost");
-      } else if (txLock.queue.length > 0 && !txLock.inProgress) {
+      } else if (txLock.queue.length > 0 && !txLock.inProgress && canStartNextTransaction(txLock)) {
         txLock.inProgress = true;
-        txLock.queue.shift().start();
+        takeNextTransaction(txLock).start();
       }
     };
   })(this));
 };
 
+/*
+ Adds the request options of a database handle (see withPriority and
+ withRequestId) to the args of a native request. Requests which must run once
+ sent (cancellable false, e.g. the COMMIT or ROLLBACK ending a transaction)
+ only get the priority.
+ */
+
+function requestOptions(db, args, cancellable) {
+  if (db.priority !== void 0) {
+    args.priority = db.priority;
+  }
+  if (cancellable === false) {
+    return args;
+  }
+  if (db.requestId !== void 0) {
+    args.requestId = String(db.requestId);
+  }
+  if (db.timeout > 0) {
+    args.timeout = db.timeout;
+  }
+  return args;
+}
+
+function nextTransactionIndex(txLock) {
+  var i, queue = txLock.queue;
+  if (txLock.interactiveStreak < MAX_INTERACTIVE_STREAK) {
+    for (i = 0; i < queue.length; i++) {
+      if (queue[i].priority === "interactive") {
+        return i;
+      }
+    }
+  }
+  return 0;
+}
+
+function takeNextTransaction(txLock) {
+  var i = nextTransactionIndex(txLock), queue = txLock.queue;
+  if (txLock.interactiveStreak < MAX_INTERACTIVE_STREAK && queue[i].priority === "interactive") {
+    /* only counts if it was taken ahead of a background transaction */
+    txLock.interactiveStreak = i > 0 ? txLock.interactiveStreak + 1 : 0;
+  } else {
+    txLock.interactiveStreak = 0;
+  }
+  return queue.splice(i, 1)[0];
+}
+
+/*
+ While atomic batches are still waiting natively only a write transaction of
+ their priority lane may follow them: it is queued behind them on the database
+ thread. Anything else could overtake them (from another lane, or on a reader
+ connection) and waits until they have been committed.
+ */
+
+function canStartNextTransaction(txLock) {
+  var next;
+  if (!txLock.atomicPending) {
+    return true;
+  }
+  next = txLock.queue[nextTransactionIndex(txLock)];
+  return !!next.txlock && !next.readOnly && (next.priority || "background") === txLock.atomicPriority;
+}
+
+/*
+ Returns a handle on the same database whose transactions and requests carry a
+ priority hint: "interactive" ones go ahead of waiting "background" ones (the
+ default), in the transaction queue here and in the native request queue.
+ */
+
+SQLitePlugin.prototype.withPriority = function(priority) {
+  var handle = Object.create(this);
+  handle.priority = priority;
+  return handle;
+};
+
+/*
+ Returns a handle on the same database whose transactions and requests can be
+ cancelled with db.cancel(requestId) (several may share the ID). With a timeout
+ (ms) a request still waiting natively that long after it was sent is dropped
+ before it runs. Either way the request fails with a "request cancelled" error.
+ */
+
+SQLitePlugin.prototype.withRequestId = function(requestId, timeout) {
+  var handle = Object.create(this);
+  handle.requestId = requestId;
+  handle.timeout = timeout;
+  return handle;
+};
+
+/*
+ Cancels the transactions and requests of a withRequestId handle: those waiting
+ for the transaction lock are aborted here, those sent are removed from the
+ native queues or interrupted while they run. Android only. Success gets the
+ number of requests cancelled ({cancelled}).
+ */
+
+SQLitePlugin.prototype.cancel = function(requestId, success, error) {
+  var txLock = txLocks[this.dbname], aborted = 0, j, entry;
+  if (!!txLock) {
+    for (j = txLock.queue.length - 1; j >= 0; j--) {
+      entry = txLock.queue[j];
+      if (entry.requestId !== void 0 && entry.requestId === requestId) {
+        txLock.queue.splice(j, 1);
+        entry.abortFromQ(newSQLError("request cancelled"));
+        aborted++;
+      }
+    }
+  }
+  plugin.exec("cancel",{
+    dbargs: {
+      dbname: this.dbname
+    },
+    requestId: String(requestId)
+  }, function(result) {
+    if (!!success) {
+      success({cancelled: aborted + result.cancelled});
+    }
+  }, function(e) {
+    if (!!error) {
+      error(newSQLError(e));
+    } else {
+      plugin.log("Error handler not provided: ",e);
+    }
+  });
+};
+
+/*
+ Reports the requests waiting in the native queues of the database: depth, and
+ with a queueLimit open option the bytes, bounds, the number of requests
+ rejected or dropped so far and of those blocked waiting for room. Producers can
+ use it to slow down. Android only.
+ */
+
+SQLitePlugin.prototype.getQueueStatus = function(success, error) {
+  plugin.exec("getQueueStatus",{
+    dbargs: {
+      dbname: this.dbname
+    }
+  }, success, function(e) {
+    if (!!error) {
+      error(newSQLError(e));
+    } else {
+      plugin.log("Error handler not provided: ",e);
+    }
+  });
+};
+
+/*
+ Reports the statistics of the database collected natively: per statement kind
+ counts, errors, rows, result bytes and compile / execute latency histograms,
+ result serialization, transactions, queue wait per queue and lane, the queue
+ status, statement cache and cursor window counters. Android only.
+ */
+
+SQLitePlugin.prototype.getStats = function(success, error) {
+  plugin.exec("getStats",{
+    dbargs: {
+      dbname: this.dbname
+    }
+  }, success, function(e) {
+    if (!!error) {
+      error(newSQLError(e));
+    } else {
+      plugin.log("Error handler not provided: ",e);
+    }
+  });
+};
+
+/*
+ Resets the statistics reported by getStats and clears the slow query log.
+ Android only.
+ */
+
+SQLitePlugin.prototype.resetStats = function(success, error) {
+  plugin.exec("resetStats",{
+    dbargs: {
+      dbname: this.dbname
+    }
+  }, success, function(e) {
+    if (!!error) {
+      error(newSQLError(e));
+    } else {
+      plugin.log("Error handler not provided: ",e);
+    }
+  });
+};
+
+/*
+ Reports the statements logged by the slowQueryLog open option, oldest first:
+ redacted sql, timing, row count and the query plan, with full table scans
+ flagged. Android only.
+ */
+
+SQLitePlugin.prototype.getSlowQueries = function(success, error) {
+  plugin.exec("getSlowQueries",{
+    dbargs: {
+      dbname: this.dbname
+    }
+  }, success, function(e) {
+    if (!!error) {
+      error(newSQLError(e));
+    } else {
+      plugin.log("Error handler not provided: ",e);
+    }
+  });
+};
+
 SQLitePlugin.prototype.abortAllPendingTransactions = function() {
   var j, len1, ref, tx, txLock;
   txLock = txLocks[this.dbname];
@@ -263,11 +698,17 @@ SQLitePlugin.prototype.open = function(success, error) {
   } else {
     plugin.log("OPEN database: " + this.dbname);
     opensuccesscb = (function(_this) {
-      return function() {
+      return function(result) {
         var txLock;
         if (!_this.openDBs[_this.dbname]) {
           plugin.log("database was closed during open operation");
         }
+        if (!!result && !!result.performance) {
+          _this.performance = result.performance;
+        }
+        if (!!result && result.userVersion !== void 0) {
+          _this.userVersion = result.userVersion;
+        }
         if (_this.dbname in _this.openDBs) {
           _this.openDBs[_this.dbname] = DB_STATE_OPEN;
         }
@@ -419,6 +860,270 @@ SQLitePlugin.prototype.executeSql = function(statement, params, success, error)
   this.addTransaction(new SQLitePluginTransaction(this, myfn, null, null, false, false));
 };
 
+/*
+ Runs a single statement synchronously and returns the result set (or throws).
+ The JS thread blocks until the statement has run on the database thread, so
+ this is meant for small, fast queries. Not available while a transaction is
+ in progress, and not with remote JS debugging.
+ */
+
+SQLitePlugin.prototype.executeSqlSync = function(statement, params) {
+  var txLock = txLocks[this.dbname], holder = {executes: []}, request, topt, response, r, payload, failure;
+  if (this.openDBs[this.dbname] !== DB_STATE_OPEN) {
+    throw newSQLError("database not open");
+  }
+  if (!!txLock && (txLock.inProgress || txLock.atomicPending > 0)) {
+    throw newSQLError("executeSqlSync can not run while a transaction is in progress");
+  }
+  SQLitePluginTransaction.prototype.addStatement.call(holder, statement, params, null, function(err) {
+    failure = err;
+  });
+  if (!!failure) {
+    throw failure;
+  }
+  request = holder.executes[0];
+  topt = nativeExecute(request);
+
+  response = plugin.execSync("executeSqlBatchSync", {
+    dbargs: {
+      dbname: this.dbname
+    },
+    executes: [topt]
+  });
+  if (response.type !== "success") {
+    throw newSQLError(response.message);
+  }
+  r = response.result[0];
+  if (r.type !== "success") {
+    throw newSQLError(r.result);
+  }
+  if (request.blobs === "arraybuffer") {
+    decodeBlobs(r.result.rows || r.result.values || []);
+  }
+  SQLitePluginTransaction.prototype.handleStatementSuccess.call(holder, function(tx, res) {
+    payload = res;
+  }, r.result);
+  return payload;
+};
+
+/*
+ Runs one statement for many parameter rows: compiled once natively and
+ executed in an implicit transaction, only aggregate counts are returned
+ ({rowCount, rowsAffected}). Statement options: {sql, returnInsertIds: true}
+ adds firstInsertId and lastInsertId. Waits for running transactions like
+ any other statement.
+ */
+
+SQLitePlugin.prototype.executeMany = function(statement, rows, success, error) {
+  var db = this, options = statementOptions(statement);
+  if (!this.openDBs[this.dbname]) {
+    error(newSQLError("database not open"));
+    return;
+  }
+  if (!rows || rows.constructor !== Array) {
+    error(newSQLError("executeMany expects an array of parameter rows"));
+    return;
+  }
+  let values = rows.map(function(row) {
+    return (row || []).map(toNativeParam);
+  });
+  let release = function() {
+    txLocks[db.dbname].inProgress = false;
+    db.startNextTransaction();
+  };
+  this.addTransaction({
+    priority: db.priority,
+    requestId: db.requestId,
+    start: function() {
+      plugin.exec("executeMany",requestOptions(db, {
+        dbargs: {
+          dbname: db.dbname
+        },
+        sql: statementText(statement),
+        rows: values,
+        returnInsertIds: !!options.returnInsertIds
+      }), function(result) {
+        release();
+        if (!!success) {
+          success(result);
+        }
+      }, function(e) {
+        release();
+        if (!!error) {
+          error(newSQLError(e));
+        } else {
+          plugin.log("Error handler not provided: ",e);
+        }
+      });
+    },
+    abortFromQ: function(sqlerror) {
+      if (!!error) {
+        error(sqlerror);
+      }
+    }
+  });
+};
+
+/*
+ Runs a SQL script of many statements (e.g. a schema migration): split and
+ executed natively in one transaction, rolled back if a statement fails. Only
+ a summary is returned ({statements, rowsAffected}). Android only.
+ */
+
+SQLitePlugin.prototype.executeScript = function(sql, success, error) {
+  var db = this;
+  if (!this.openDBs[this.dbname]) {
+    error(newSQLError("database not open"));
+    return;
+  }
+  let release = function() {
+    txLocks[db.dbname].inProgress = false;
+    db.startNextTransaction();
+  };
+  this.addTransaction({
+    priority: db.priority,
+    requestId: db.requestId,
+    start: function() {
+      plugin.exec("executeScript",requestOptions(db, {
+        dbargs: {
+          dbname: db.dbname
+        },
+        sql: sql
+      }), function(result) {
+        release();
+        if (!!success) {
+          success(result);
+        }
+      }, function(e) {
+        release();
+        if (!!error) {
+          error(newSQLError(e));
+        } else {
+          plugin.log("Error handler not provided: ",e);
+        }
+      });
+    },
+    abortFromQ: function(sqlerror) {
+      if (!!error) {
+        error(sqlerror);
+      }
+    }
+  });
+};
+
+/*
+ Opens a result cursor kept open on the native side and read in chunks with
+ cursor.fetch(count). Statement options: {sql, readAhead: true} prefetches the
+ next chunk natively while the current one is being processed.
+ */
+
+SQLitePlugin.prototype.openCursor = function(statement, params, success, error) {
+  var db = this, options = statementOptions(statement), values = [];
+  if (!this.openDBs[this.dbname]) {
+    error(newSQLError("database not open"));
+    return;
+  }
+  if (!!params && params.constructor === Array) {
+    values = params.map(toNativeParam);
+  }
+  let mysuccess = function(result) {
+    if (!!success) {
+      return success(new SQLitePluginCursor(db, result.cursorId, result.columns || [], options.blobs));
+    }
+  };
+  let myerror = function(e) {
+    if (!!error) {
+      return error(newSQLError(e));
+    } else {
+      plugin.log("Error handler not provided: ",e);
+    }
+  };
+  plugin.exec("openCursor",requestOptions(this, {
+    dbargs: {
+      dbname: this.dbname
+    },
+    sql: statementText(statement),
+    params: values,
+    readAhead: !!options.readAhead,
+    blobs: options.blobs
+  }), mysuccess, myerror);
+};
+
+SQLitePluginCursor = function(db, cursorId, columns, blobs) {
+  this.db = db;
+  this.cursorId = cursorId;
+  this.columns = columns;
+  this.blobs = blobs;
+  this.done = false;
+};
+
+SQLitePluginCursor.prototype.fetch = function(count, success, error) {
+  var cursor = this;
+  if (typeof count === "function") {
+    error = success;
+    success = count;
+    count = 100;
+  }
+  if (this.done) {
+    nextTick(function() {
+      if (!!success) {
+        success({rows: resultSetRows({columns: cursor.columns, rows: []}), done: true});
+      }
+    });
+    return;
+  }
+  let mysuccess = function(result) {
+    cursor.done = !!result.done;
+    if (cursor.blobs === "arraybuffer") {
+      decodeBlobs(result.rows || []);
+    }
+    if (!!success) {
+      return success({
+        rows: resultSetRows({columns: cursor.columns, rows: result.rows || []}),
+        done: cursor.done
+      });
+    }
+  };
+  let myerror = function(e) {
+    cursor.done = true;
+    if (!!error) {
+      return error(newSQLError(e));
+    } else {
+      plugin.log("Error handler not provided: ",e);
+    }
+  };
+  plugin.exec("fetch",requestOptions(this.db, {
+    dbargs: {
+      dbname: this.db.dbname
+    },
+    cursorId: this.cursorId,
+    count: count || 100
+  }), mysuccess, myerror);
+};
+
+SQLitePluginCursor.prototype.close = function(success, error) {
+  var cursor = this;
+  let mysuccess = function(r) {
+    cursor.done = true;
+    if (!!success) {
+      return success(r);
+    }
+  };
+  let myerror = function(e) {
+    if (!!error) {
+      return error(newSQLError(e));
+    } else {
+      plugin.log("Error handler not provided: ",e);
+    }
+  };
+  plugin.exec("closeCursor",requestOptions(this.db, {
+    dbargs: {
+      dbname: this.db.dbname
+    },
+    cursorId: this.cursorId
+  }, false), mysuccess, myerror);
+};
+
 SQLitePluginTransaction = function(db, fn, error, success, txlock, readOnly) {
   if (typeof fn !== "function") {
     /*
@@ -435,6 +1140,8 @@ SQLitePluginTransaction = function(db, fn, error, success, txlock, readOnly) {
     }
   }
   this.db = db;
+  this.priority = db.priority;
+  this.requestId = db.requestId;
   this.fn = fn;
   this.error = error;
   this.success = success;
@@ -454,17 +1161,27 @@ SQLitePluginTransaction.prototype.start = function() {
   var err;
   try {
     this.fn(this);
-    this.run();
+    if (this.isAtomic()) {
+      this.runAtomic();
+    } else if (this.isNative()) {
+      this.runNative();
+    } else {
+      this.run();
+    }
   } catch (_error) {
     err = _error;
-    txLocks[this.db.dbname].inProgress = false;
-    this.db.startNextTransaction();
+    this.releaseLock();
     if (this.error) {
       this.error(newSQLError(err));
     }
   }
 };
 
+SQLitePluginTransaction.prototype.releaseLock = function() {
+  txLocks[this.db.dbname].inProgress = false;
+  this.db.startNextTransaction();
+};
+
 SQLitePluginTransaction.prototype.executeSql = function(sql, values, success, error) {
   var that = this;
   if (that.finalized) {
@@ -476,7 +1193,7 @@ SQLitePluginTransaction.prototype.executeSql = function(sql, values, success, er
       code: 11
     };
   }
-  if (that.readOnly && READ_ONLY_REGEX.test(sql)) {
+  if (that.readOnly && READ_ONLY_REGEX.test(statementText(sql))) {
     that.handleStatementFailure(error, {
       message: "invalid sql for a read-only transaction"
     });
@@ -494,13 +1211,17 @@ SQLitePluginTransaction.prototype.executeSql = function(sql, values, success, er
       plugin.log("Error handler not provided: ",e);
     }
   };
-  that.addStatement(sql, values, mysuccess, myerror);
+  that.addStatement(sql, values, !!success ? mysuccess : null, !!error ? myerror : null);
 };
 
 SQLitePluginTransaction.prototype.addStatement = function(sql, values, success, error) {
-  var j, len1, params, sqlStatement, t, v;
+  var j, len1, params, refs, resultFormat, blobs, seq, sqlStatement, t, v;
+  resultFormat = statementOptions(sql).resultFormat;
+  blobs = statementOptions(sql).blobs;
+  sql = statementText(sql);
   sqlStatement = typeof sql === "string" ? sql : sql.toString();
   params = [];
+  refs = false;
   if (!!values && values.constructor === Array) {
     for (j = 0, len1 = values.length; j < len1; j++) {
       v = values[j];
@@ -510,6 +1231,11 @@ SQLitePluginTransaction.prototype.addStatement = function(sql, values, success,
       } else if (t === "boolean") {
         //Convert true -> 1 / false -> 0
         params.push(~~v);
+      } else if (isBinary(v)) {
+        params.push(toNativeParam(v));
+      } else if (isRef(v)) {
+        params.push(v);
+        refs = true;
       }
       else if (t !== "function") {
         params.push(v.toString());
@@ -522,11 +1248,17 @@ SQLitePluginTransaction.prototype.addStatement = function(sql, values, success,
       }
     }
   }
+  seq = this.statementCount || 0;
+  this.statementCount = seq + 1;
   this.executes.push({
     success: success,
     error: error,
     sql: sqlStatement,
-    params: params
+    params: params,
+    refs: refs,
+    seq: seq,
+    resultFormat: resultFormat,
+    blobs: blobs
   });
 };
 
@@ -536,6 +1268,15 @@ SQLitePluginTransaction.prototype.handleStatementSuccess = function(handler, res
   if (!handler) {
     return;
   }
+  if (response.columns) {
+    payload = {
+      rows: resultSetRows(response),
+      rowsAffected: response.rowsAffected || 0,
+      insertId: response.insertId || void 0
+    };
+    handler(this, payload);
+    return;
+  }
   rows = response.rows || [];
   // plugin.log("handler rows now:",rows);
   payload = {
@@ -581,6 +1322,9 @@ SQLitePluginTransaction.prototype.run = function() {
       if (!txFailure) {
         try {
           if (didSucceed) {
+            if (batchExecutes[index].blobs === "arraybuffer") {
+              decodeBlobs(response.rows || response.values || []);
+            }
             tx.handleStatementSuccess(batchExecutes[index].success, response);
           } else {
             tx.handleStatementFailure(batchExecutes[index].error, newSQLError(response));
@@ -616,11 +1360,7 @@ SQLitePluginTransaction.prototype.run = function() {
       success: handlerFor(i, true),
       error: handlerFor(i, false)
     });
-    tropts.push({
-      qid: 1111,
-      sql: request.sql,
-      params: request.params
-    });
+    tropts.push(nativeExecute(request, batchExecutes[0].seq));
     i++;
   }
 
@@ -644,15 +1384,157 @@ SQLitePluginTransaction.prototype.run = function() {
   };
 
   var myerror = function(error) {
+    var j;
     plugin.log("batch execution error: ",error);
+    /* the batch was not run (e.g. a cancelled request), all its statements fail */
+    for (j = 0; j < callbacks.length; j++) {
+      callbacks[j].error({message: error});
+    }
+  };
+
+  plugin.exec("backgroundExecuteSqlBatch",requestOptions(this.db, {
+    dbargs: {
+      dbname: this.db.dbname
+    },
+    readOnly: this.readOnly,
+    executes: tropts
+  }, !this.finalized), mysuccess, myerror);
+};
+
+/*
+ A transaction whose statements have no callbacks is complete once its function
+ returns, no statement result can add statements or recover from an error.
+ */
+
+SQLitePluginTransaction.prototype.isSelfContained = function() {
+  var j;
+  if (this.executes.length < 2) {
+    return false;
+  }
+  /* executes[0] is the BEGIN (or SELECT 1) statement */
+  for (j = 1; j < this.executes.length; j++) {
+    if (!!this.executes[j].success || !!this.executes[j].error) {
+      return false;
+    }
+  }
+  return true;
+};
+
+/*
+ With the groupCommit open option a self-contained write transaction is sent as
+ one atomic batch (no BEGIN/COMMIT round trips) which the native side may commit
+ together with the atomic batches queued behind it.
+ */
+
+SQLitePluginTransaction.prototype.isAtomic = function() {
+  /* the atomic flag is only understood by the Android implementations */
+  return !!this.txlock && !this.readOnly && !!this.db.openargs.groupCommit && Platform.OS === "android" && this.isSelfContained();
+};
+
+/*
+ Otherwise, with the nativeTransactions open option, a self-contained transaction
+ is run by the native executeTransaction action (where available) in a single
+ round trip: the native side begins the transaction, stops at the first failed
+ statement and rolls back, or commits.
+ */
+
+SQLitePluginTransaction.prototype.isNative = function() {
+  return !!this.db.openargs.nativeTransactions && typeof NativeModules["SQLite"].executeTransaction === "function" &&
+    this.isSelfContained();
+};
+
+SQLitePluginTransaction.prototype.runNative = function() {
+  var j, tropts, tx;
+  tx = this;
+  tropts = [];
+  for (j = 1; j < this.executes.length; j++) {
+    tropts.push(nativeExecute(this.executes[j], this.executes[1].seq));
+  }
+  this.executes = [];
+  this.finalized = true;
+
+  let mysuccess = function(result) {
+    tx.releaseLock();
+    if (result.failedIndex >= 0) {
+      if (tx.error) {
+        tx.error(newSQLError(result.results[result.failedIndex].result));
+      }
+    } else if (tx.success) {
+      tx.success();
+    }
+  };
+
+  let myerror = function(error) {
+    tx.releaseLock();
+    if (tx.error) {
+      tx.error(newSQLError(error));
+    }
   };
 
-  plugin.exec("backgroundExecuteSqlBatch",{
+  plugin.exec("executeTransaction",requestOptions(this.db, {
     dbargs: {
       dbname: this.db.dbname
     },
+    readOnly: this.readOnly,
     executes: tropts
-  }, mysuccess, myerror);
+  }), mysuccess, myerror);
+};
+
+SQLitePluginTransaction.prototype.runAtomic = function() {
+  var j, tropts, tx, txLock;
+  tx = this;
+  txLock = txLocks[this.db.dbname];
+  tropts = [];
+  for (j = 1; j < this.executes.length; j++) {
+    tropts.push(nativeExecute(this.executes[j], this.executes[1].seq));
+  }
+  this.executes = [];
+  this.finalized = true;
+
+  /*
+   the native side runs the batches of a lane in queue order, the next transaction can
+   start right away unless it could overtake this batch (see canStartNextTransaction)
+   */
+  txLock.atomicPending++;
+  txLock.atomicPriority = this.priority || "background";
+  this.releaseLock();
+
+  let committed = function() {
+    if (--txLock.atomicPending === 0) {
+      tx.db.startNextTransaction();
+    }
+  };
+
+  let mysuccess = function(result) {
+    var k;
+    committed();
+    for (k = 0; k < result.length; k++) {
+      if (result[k].type === "error") {
+        if (tx.error) {
+          tx.error(newSQLError(result[k].result));
+        }
+        return;
+      }
+    }
+    if (tx.success) {
+      tx.success();
+    }
+  };
+
+  let myerror = function(error) {
+    committed();
+    if (tx.error) {
+      tx.error(newSQLError(error));
+    }
+  };
+
+  plugin.exec("backgroundExecuteSqlBatch",requestOptions(this.db, {
+    dbargs: {
+      dbname: this.db.dbname
+    },
+    atomic: true,
+    executes: tropts
+  }), mysuccess, myerror);
 };
 
 SQLitePluginTransaction.prototype.abort = function(txFailure) {
@@ -662,15 +1544,13 @@ SQLitePluginTransaction.prototype.abort = function(txFailure) {
   }
   tx = this;
   succeeded = function(tx) {
-    txLocks[tx.db.dbname].inProgress = false;
-    tx.db.startNextTransaction();
+    tx.releaseLock();
     if (tx.error) {
       tx.error(txFailure);
     }
   };
   failed = function(tx, err) {
-    txLocks[tx.db.dbname].inProgress = false;
-    tx.db.startNextTransaction();
+    tx.releaseLock();
     if (tx.error) {
       tx.error(newSQLError("error while trying to roll back: " + err.message, err.code));
     }
@@ -691,15 +1571,13 @@ SQLitePluginTransaction.prototype.finish = function() {
   }
   tx = this;
   succeeded = function(tx) {
-    txLocks[tx.db.dbname].inProgress = false;
-    tx.db.startNextTransaction();
+    tx.releaseLock();
     if (tx.success) {
       tx.success();
     }
   };
   failed = function(tx, err) {
-    txLocks[tx.db.dbname].inProgress = false;
-    tx.db.startNextTransaction();
+    tx.releaseLock();
     if (tx.error) {
       tx.error(newSQLError("error while trying to commit: " + err.message, err.code));
     }
@@ -810,6 +1688,10 @@ SQLiteFactory.prototype.echoTest = function(success, error) {
   plugin.exec("echoStringValue",{value: inputTestValue}, mysuccess, myerror);
 };
 
+SQLiteFactory.prototype.setTracing = function(enabled, success, error) {
+  plugin.exec("setTracing",{enabled: !!enabled}, success, error);
+};
+
 SQLiteFactory.prototype.deleteDatabase = function(first,success, error) {
   var args = {};
   if (first.constructor === String) {
@@ -848,6 +1730,7 @@ SQLiteFactory.prototype.deleteDatabase = function(first,success, error) {
 plugin.sqlitePlugin = {
   SQLiteFactory : SQLiteFactory,
   SQLitePluginTransaction : SQLitePluginTransaction,
+  SQLitePluginCursor : SQLitePluginCursor,
   SQLitePlugin : SQLitePlugin,
   log: plugin.log
 };
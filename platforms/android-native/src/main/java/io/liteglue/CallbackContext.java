@@ -19,6 +19,9 @@ public class CallbackContext {
 
     private Callback successCallback;
     private Callback errorCallback;
+    // request of the synchronous API, awaited on the JS thread:
+    boolean synchronous;
+    String requestId;
 
     public CallbackContext(Callback success, Callback error) {
         this.successCallback = success;
@@ -10,15 +10,20 @@ package io.liteglue;
 import android.annotation.SuppressLint;
 
 import android.database.Cursor;
+import android.database.sqlite.SQLiteCursorDriver;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteException;
+import android.database.sqlite.SQLiteProgram;
+import android.database.sqlite.SQLiteQuery;
 import android.database.sqlite.SQLiteStatement;
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
 
-import android.util.Base64;
 
 import com.facebook.common.logging.FLog;
 import com.facebook.react.bridge.Arguments;
 import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.ReadableMap;
 import com.facebook.react.bridge.ReadableType;
 import com.facebook.react.bridge.WritableArray;
 import com.facebook.react.bridge.WritableMap;
@@ -26,21 +31,30 @@ import com.facebook.react.bridge.WritableMap;
 import java.io.File;
 import java.lang.IllegalArgumentException;
 import java.lang.Number;
-import java.util.Locale;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import io.liteglue.SQLiteStatementInfo.QueryType;
 
 /**
  * Android Database helper class
  */
-class SQLiteAndroidDatabase {
-    private static final Pattern FIRST_WORD = Pattern.compile("^\\s*(\\S+)",
-            Pattern.CASE_INSENSITIVE);
-
+class SQLiteAndroidDatabase implements SQLiteSlowQueryLog.Explainer {
 
     File dbFile;
     int openFlags;
     SQLiteDatabase mydb;
+    SQLiteStatementCache statementCache = new SQLiteStatementCache(0);
+    SQLiteQueryCursor.Settings cursorSettings = new SQLiteQueryCursor.Settings(0);
+    SQLiteMetrics metrics = new SQLiteMetrics();
+    // null unless requested by the open options:
+    SQLiteSlowQueryLog slowQueryLog;
+
+    // deferred read-only transaction of executeTransaction and of read transactions on readers:
+    private static final String READ_SAVEPOINT = "read_transaction";
+    private boolean deferredTransaction;
 
     /**
      * NOTE: Using default constructor, no explicit constructor.
@@ -64,12 +78,179 @@ class SQLiteAndroidDatabase {
         this.dbFile = dbfile; // for possible bug workaround
         this.openFlags = openFlags;
         this.mydb = SQLiteDatabase.openDatabase(dbfile.getAbsolutePath(), null, openFlags);
+        this.statementCache.configure(this.mydb);
+    }
+
+    /**
+     * Enable the compiled statement cache for this connection.
+     *
+     * @param size   Maximum number of cached statements, 0 to disable
+     */
+    void setStatementCacheSize(int size) {
+        this.statementCache.clear();
+        this.statementCache = new SQLiteStatementCache(size);
+        this.statementCache.configure(this.mydb);
+    }
+
+    /**
+     * Use the cursor window settings of the database for this connection.
+     *
+     * @param cursorSettings   Window size and refill count, shared by the connections of a database
+     */
+    void setCursorSettings(SQLiteQueryCursor.Settings cursorSettings) {
+        this.cursorSettings = cursorSettings;
+    }
+
+    /**
+     * Record into the metrics of the database on this connection.
+     *
+     * @param metrics   Metrics shared by the connections of a database
+     */
+    void setMetrics(SQLiteMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Log the slow statements of this connection.
+     *
+     * @param slowQueryLog   Slow query log shared by the connections of a database (may be null)
+     */
+    void setSlowQueryLog(SQLiteSlowQueryLog slowQueryLog) {
+        this.slowQueryLog = slowQueryLog;
+    }
+
+    /**
+     * Record a statement in the slow query log, if any and if it was slow.
+     *
+     * @param startedAt  System.nanoTime() before the statement was compiled
+     * @param paramCount number of bound parameters
+     * @param result     rows of a query, null for other statements
+     */
+    void logIfSlow(QueryType queryType, String query, int paramCount, long startedAt, boolean failed,
+                   SQLiteRowBuffer result) {
+        if (slowQueryLog != null) {
+            long duration = System.nanoTime() - startedAt;
+            if (slowQueryLog.isSlow(duration)) {
+                slowQueryLog.record(queryType, query, paramCount, duration, failed, result, this);
+            }
+        }
+    }
+
+    @Override
+    public List<String> explainQueryPlan(String sql) throws Exception {
+        List<String> steps = new ArrayList<>();
+        Cursor cur = mydb.rawQuery("EXPLAIN QUERY PLAN " + sql, null);
+        try {
+            int detail = cur.getColumnIndex("detail");
+            while (cur.moveToNext()) {
+                steps.add(cur.getString(detail));
+            }
+        } finally {
+            cur.close();
+        }
+        return steps;
+    }
+
+    /**
+     * Switch the database to write-ahead logging so read-only connections
+     * can read while this connection writes.
+     *
+     * NOTE: with a PRAGMA rather than SQLiteDatabase.enableWriteAheadLogging(), which makes
+     * the framework run reads on a pool of connections of its own, without the per-connection
+     * settings of the performance profile (the reader pool connections get them).
+     *
+     * @return true if WAL is enabled
+     */
+    boolean enableWriteAheadLogging() throws Exception {
+        return "wal".equalsIgnoreCase(queryValue("PRAGMA journal_mode=WAL"));
+    }
+
+    /**
+     * @return true if a transaction is open on this connection
+     */
+    boolean inTransaction() {
+        return mydb != null && (mydb.inTransaction() || deferredTransaction);
+    }
+
+    /**
+     * Begin a transaction (in the current thread), for a BEGIN statement of a batch and for
+     * executeTransaction alike.
+     *
+     * It is deferred (BEGIN DEFERRED, no lock until the first read) as a savepoint, which is
+     * passed to SQLite as is, on a read-only connection, which can't begin the immediate or
+     * exclusive transactions of the framework, and for a read transaction unless the connection
+     * has a WAL connection pool, whose reads the framework only keeps on one connection in its
+     * own transactions. Otherwise the framework begins it, non-exclusive for a read transaction.
+     *
+     * @param readOnly   Read transaction (marked by JS)
+     */
+    void beginTransaction(boolean readOnly) throws Exception {
+        if (mydb == null) {
+            throw new Exception("database has been closed");
+        }
+        if (mydb.isReadOnly() || (readOnly && !mydb.isWriteAheadLoggingEnabled())) {
+            mydb.execSQL("SAVEPOINT " + READ_SAVEPOINT);
+            deferredTransaction = true;
+        } else if (readOnly) {
+            mydb.beginTransactionNonExclusive();
+        } else {
+            mydb.beginTransaction();
+        }
+    }
+
+    /**
+     * Commit or roll back a transaction begun by beginTransaction() (in the current thread).
+     */
+    void endTransaction(boolean commit) throws Exception {
+        if (deferredTransaction) {
+            if (!commit) {
+                rollbackTo(READ_SAVEPOINT);
+            }
+            mydb.execSQL("RELEASE " + READ_SAVEPOINT);
+            deferredTransaction = false;
+        } else {
+            if (commit) {
+                mydb.setTransactionSuccessful();
+            }
+            mydb.endTransaction();
+        }
+    }
+
+    /**
+     * Execute a single statement without results (in the current thread).
+     */
+    void execute(String sql) throws Exception {
+        mydb.execSQL(sql);
+    }
+
+    /**
+     * Roll back to a savepoint, the transaction stays open (in the current thread).
+     */
+    void rollbackTo(String savepoint) throws Exception {
+        // leading ';' keeps the framework from taking this for a transaction rollback:
+        mydb.execSQL(";ROLLBACK TO " + savepoint);
+    }
+
+    /**
+     * Execute a single statement (in the current thread).
+     *
+     * @return the first column of the first result row as string, null if there is no row
+     */
+    String queryValue(String sql) throws Exception {
+        Cursor cur = mydb.rawQuery(sql, null);
+        try {
+            return cur.moveToFirst() ? cur.getString(0) : null;
+        } finally {
+            cur.close();
+        }
     }
 
     /**
      * Close a database (in the current thread).
      */
     void closeDatabaseNow() {
+        // cached statements must be released before the connection goes away
+        statementCache.clear();
         if (mydb != null) {
             mydb.close();
             mydb = null;
@@ -84,52 +265,77 @@ class SQLiteAndroidDatabase {
     /**
      * Executes a batch request and sends the results via cbc.
      *
+     * Query results are read into row buffers, the result array is built and sent
+     * by the result serializer of the database while the caller goes on.
+     *
      * @param queryArr   Array of query strings
      * @param queryParams Array of JSON query parameters
      * @param queryIDs   Array of query ids
+     * @param queryFormats Array of requested result formats (may be null)
+     * @param queryBlobEncodings Array of requested BLOB encodings (may be null)
+     * @param atomic     Stop at the first failed statement (atomic batch of a group commit)
+     * @param readOnly   Batch of a read transaction (marked by JS), see beginTransaction()
+     * @param cancellation cancellation signal of the request (may be null): cancels a running
+     *                   query, the statements after it fail without being executed
+     * @param resultSerializer result serializer of the database
      * @param cbc        Callback context from Cordova API
+     * @return index of the first failed statement, -1 if all statements succeeded
      */
     @SuppressLint("NewApi")
-    void executeSqlBatch(String[] queryArr, ReadableArray[] queryParams,
-                                 String[] queryIDs, CallbackContext cbc) {
+    int executeSqlBatch(String[] queryArr, ReadableArray[] queryParams,
+                                 String[] queryIDs, ResultFormat[] queryFormats,
+                                 SQLiteBlobEncoding[] queryBlobEncodings, boolean atomic,
+                                 boolean readOnly, CancellationSignal cancellation,
+                                 SQLiteResultSerializer resultSerializer, CallbackContext cbc) {
 
         if (mydb == null) {
             // not allowed - can only happen if someone has closed (and possibly deleted) a database and then re-used the database
             cbc.error("database has been closed");
-            return;
+            return 0;
         }
 
+        int failedIndex = -1;
+
         String query = "";
         String query_id = "";
         int len = queryArr.length;
-        WritableArray batchResults = Arguments.createArray();
+        SQLiteBatchResults batchResults = new SQLiteBatchResults(len);
+        boolean batchTraced = SQLiteTrace.begin("executeSqlBatch");
 
         for (int i = 0; i < len; i++) {
             int rowsAffectedCompat = 0;
             boolean needRowsAffectedCompat = false;
             query_id = queryIDs[i];
+            query = queryArr[i];
+            QueryType queryType = SQLiteStatementInfo.getQueryType(query);
+            // (section named after the statement kind)
+            boolean traced = SQLiteTrace.begin(queryType.name());
+            long startedAt = System.nanoTime();
 
             WritableMap queryResult = null;
+            SQLiteRowBuffer queryRows = null;
             String errorMessage = "unknown";
 
             try {
+                if (cancellation != null) {
+                    cancellation.throwIfCanceled();
+                }
                 boolean needRawQuery = true;
 
-                query = queryArr[i];
-
-                QueryType queryType = getQueryType(query);
+                ReadableArray params = queryParams != null ? batchResults.resolveRefs(queryParams[i]) : null;
 
                 if (queryType == QueryType.update || queryType == QueryType.delete) {
 
-                    SQLiteStatement myStatement = mydb.compileStatement(query);
-
-                    if (queryParams != null) {
-                        bindArgsToStatement(myStatement, queryParams[i]);
-                    }
+                    SQLiteStatement myStatement = statementCache.acquire(mydb, query);
+                    metrics.recordCompile(queryType, startedAt);
 
                     int rowsAffected = -1; // (assuming invalid)
 
                     try {
+                        if (params != null) {
+                            bindArgsToStatement(myStatement, params);
+                        }
+
                         rowsAffected = myStatement.executeUpdateDelete();
                         // Indicate valid results:
                         needRawQuery = false;
@@ -138,6 +344,8 @@ class SQLiteAndroidDatabase {
                         errorMessage = ex.getMessage();
                         FLog.e(SQLitePlugin.TAG, "SQLiteStatement.executeUpdateDelete() failed", ex);
                         needRawQuery = false;
+                    } finally {
+                        statementCache.release(query, myStatement);
                     }
 
                     if (rowsAffected != -1) {
@@ -147,13 +355,14 @@ class SQLiteAndroidDatabase {
                 }
 
                 // INSERT:
-                else if (queryType == QueryType.insert && queryParams != null) {
+                else if (queryType == QueryType.insert && params != null) {
                     needRawQuery = false;
-                    SQLiteStatement myStatement = mydb.compileStatement(query);
-                    bindArgsToStatement(myStatement, queryParams[i]);
+                    SQLiteStatement myStatement = statementCache.acquire(mydb, query);
+                    metrics.recordCompile(queryType, startedAt);
                     long insertId = -1; // (invalid)
 
                     try {
+                        bindArgsToStatement(myStatement, params);
                         insertId = myStatement.executeInsert();
 
                         // statement has finished with no constraint violation:
@@ -169,17 +378,19 @@ class SQLiteAndroidDatabase {
                         // could be constraint violation or some other error
                         errorMessage = ex.getMessage();
                         FLog.e(SQLitePlugin.TAG, "SQLiteDatabase.executeInsert() failed", ex);
+                    } finally {
+                        statementCache.release(query, myStatement);
                     }
                 }
 
                 else if (queryType == QueryType.begin) {
                     needRawQuery = false;
                     try {
-                        mydb.beginTransaction();
+                        beginTransaction(readOnly);
 
                         queryResult = Arguments.createMap();
                         queryResult.putInt("rowsAffected", 0);
-                    } catch (SQLiteException ex) {
+                    } catch (Exception ex) {
                         errorMessage = ex.getMessage();
                         FLog.e(SQLitePlugin.TAG, "SQLiteDatabase.beginTransaction() failed", ex);
                     }
@@ -188,12 +399,11 @@ class SQLiteAndroidDatabase {
                 else if (queryType == QueryType.commit) {
                     needRawQuery = false;
                     try {
-                        mydb.setTransactionSuccessful();
-                        mydb.endTransaction();
+                        endTransaction(true);
 
                         queryResult = Arguments.createMap();
                         queryResult.putInt("rowsAffected", 0);
-                    } catch (SQLiteException ex) {
+                    } catch (Exception ex) {
                         errorMessage = ex.getMessage();
                         FLog.e(SQLitePlugin.TAG, "SQLiteDatabase.setTransactionSuccessful/endTransaction() failed", ex);
                     }
@@ -202,11 +412,11 @@ class SQLiteAndroidDatabase {
                 else if (queryType == QueryType.rollback) {
                     needRawQuery = false;
                     try {
-                        mydb.endTransaction();
+                        endTransaction(false);
 
                         queryResult = Arguments.createMap();
                         queryResult.putInt("rowsAffected", 0);
-                    } catch (SQLiteException ex) {
+                    } catch (Exception ex) {
                         errorMessage = ex.getMessage();
                         FLog.e(SQLitePlugin.TAG, "SQLiteDatabase.endTransaction() failed", ex);
                     }
@@ -214,47 +424,75 @@ class SQLiteAndroidDatabase {
 
                 // raw query for other statements:
                 if (needRawQuery) {
-                    queryResult = this.executeSqlStatementQuery(mydb, query, queryParams != null ? queryParams[i] : null, cbc);
+                    queryRows = this.executeSqlStatementQuery(mydb, query, queryType, params, cancellation, cbc);
+                    queryResult = Arguments.createMap();
 
                     if (needRowsAffectedCompat) {
                         queryResult.putInt("rowsAffected", rowsAffectedCompat);
                     }
                 }
+            } catch (OperationCanceledException ex) {
+                errorMessage = SQLitePlugin.REQUEST_CANCELLED;
             } catch (Exception ex) {
                 errorMessage = ex.getMessage();
                 FLog.e(SQLitePlugin.TAG, "SQLiteAndroidDatabase.executeSql[Batch]() failed", ex);
             }
-
-            if (queryResult != null) {
-                WritableMap r = Arguments.createMap();
-                r.putString("qid", query_id);
-
-                r.putString("type", "success");
-                r.putMap("result", queryResult);
-
-                batchResults.pushMap(r);
+            metrics.recordStatement(queryType, startedAt, queryResult == null, queryRows);
+            SQLiteTrace.end(traced);
+            logIfSlow(queryType, query, queryParams != null && queryParams[i] != null ? queryParams[i].size() : 0,
+                    startedAt, queryResult == null, queryRows);
+
+            if (queryRows != null) {
+                batchResults.success(query_id, queryResult, queryRows,
+                        queryFormats != null ? queryFormats[i] : ResultFormat.rows,
+                        queryBlobEncodings != null ? queryBlobEncodings[i] : SQLiteBlobEncoding.base64);
+            } else if (queryResult != null) {
+                batchResults.success(query_id, queryResult);
             } else {
-                WritableMap r = Arguments.createMap();
-                r.putString("qid", query_id);
-                r.putString("type", "error");
-
-                WritableMap er = Arguments.createMap();
-                er.putString("message", errorMessage);
-                r.putMap("result", er);
+                batchResults.error(query_id, errorMessage);
 
-                batchResults.pushMap(r);
+                if (failedIndex == -1) {
+                    failedIndex = i;
+                }
+                if (atomic) {
+                    break;
+                }
             }
         }
 
-        cbc.success(batchResults);
+        SQLiteTrace.end(batchTraced);
+
+        resultSerializer.execute(batchResults.sendTo(cbc, metrics));
+        return failedIndex;
+    }
+
+    /**
+     * Run a query with its parameters bound by type, as bindArgsToStatement does for writes.
+     *
+     * rawQuery only takes string arguments: an INTEGER key would be compared with TEXT
+     * (never matching values stored without affinity) and null turned into ''.
+     * The cursor reads into a window as configured by cursorSettings, cancellation
+     * (may be null) cancels the query while the window is filled.
+     */
+    private Cursor rawQueryTyped(SQLiteDatabase mydb, String query, final ReadableArray queryParams,
+                                 CancellationSignal cancellation) {
+        final SQLiteQueryCursor.Settings cursorSettings = this.cursorSettings;
+        return mydb.rawQueryWithFactory(new SQLiteDatabase.CursorFactory() {
+            @Override
+            public Cursor newCursor(SQLiteDatabase db, SQLiteCursorDriver driver, String editTable, SQLiteQuery sqliteQuery) {
+                bindArgsToStatement(sqliteQuery, queryParams);
+                return cursorSettings.newCursor(driver, editTable, sqliteQuery);
+            }
+        }, query, null, null, cancellation);
     }
 
-    private void bindArgsToStatement(SQLiteStatement myStatement, ReadableArray sqlArgs) {
+    private void bindArgsToStatement(SQLiteProgram myStatement, ReadableArray sqlArgs) {
         if (sqlArgs == null)
             return;
 
         for (int i = 0; i < sqlArgs.size(); i++) {
             ReadableType type = sqlArgs.getType(i);
+            byte[] blob;
             if (type == ReadableType.Number) {
                 double tmp = sqlArgs.getDouble(i);
                 if (tmp == (long) tmp) {
@@ -264,6 +502,8 @@ class SQLiteAndroidDatabase {
                 }
             } else if (sqlArgs.isNull(i)) {
                 myStatement.bindNull(i + 1);
+            } else if ((blob = SQLiteBlobEncoding.getBlob(sqlArgs, i)) != null) {
+                myStatement.bindBlob(i + 1, blob);
             } else {
                 myStatement.bindString(i + 1, sqlArgs.getString(i));
             }
@@ -273,103 +513,275 @@ class SQLiteAndroidDatabase {
     /**
      * Get rows results from query cursor.
      *
-     * @return results in string form
+     * @param queryType  kind of the query, for the metrics
+     * @return result rows, encoded later by the result serializer
+     * @throws OperationCanceledException if the request is cancelled meanwhile
      */
-    private WritableMap executeSqlStatementQuery(SQLiteDatabase mydb,
-                                                String query, ReadableArray queryParams,
-                                                CallbackContext cbc) throws Exception {
-        WritableMap rowsResult = Arguments.createMap();
-
+    private SQLiteRowBuffer executeSqlStatementQuery(SQLiteDatabase mydb,
+                                                     String query, QueryType queryType, ReadableArray queryParams,
+                                                     CancellationSignal cancellation,
+                                                     CallbackContext cbc) throws Exception {
         Cursor cur;
+        boolean traced = SQLiteTrace.begin("prepare");
         try {
-            String[] params = new String[0];
-            if (queryParams != null) {
-                int size = queryParams.size();
-                params = new String[size];
-                for (int j = 0; j < size; j++) {
-                    if (queryParams.isNull(j))
-                        params[j] = "";
-                    else
-                        params[j] = queryParams.getString(j);
-                }
-            }
-            cur = mydb.rawQuery(query, params);
+            // (the statement is prepared here, rows are only read by the first move)
+            long compileStartedAt = System.nanoTime();
+            cur = rawQueryTyped(mydb, query, queryParams, cancellation);
+            metrics.recordCompile(queryType, compileStartedAt);
         } catch (Exception ex) {
             FLog.e(SQLitePlugin.TAG, "SQLiteAndroidDatabase.executeSql[Batch]() failed", ex);
             throw ex;
+        } finally {
+            SQLiteTrace.end(traced);
         }
 
-        // If query result has rows
-        if (cur != null && cur.moveToFirst()) {
-            WritableArray rowsArrayResult = Arguments.createArray();
-            String key = "";
-            int colCount = cur.getColumnCount();
-
-            // Build up JSON result object for each row
-            do {
-                WritableMap row = Arguments.createMap();
-                for (int i = 0; i < colCount; ++i) {
-                    key = cur.getColumnName(i);
-                    bindRow(row, key, cur, i);
+        SQLiteRowBuffer rows;
+        traced = SQLiteTrace.begin("read rows");
+        try {
+            rows = new SQLiteRowBuffer(cur.getColumnNames());
+            while (cur.moveToNext()) {
+                rows.addRow(cur);
+            }
+
+            if (cur instanceof SQLiteQueryCursor) {
+                cursorSettings.recordRefills(query, (SQLiteQueryCursor) cur);
+            }
+        } finally {
+            cur.close();
+            SQLiteTrace.end(traced);
+        }
+
+        return rows;
+    }
+
+    /**
+     * Executes one statement for many parameter rows (in the current thread).
+     *
+     * The statement is compiled once and re-bound for every row. Unless a transaction
+     * is already open, all rows are executed in an implicit transaction which is rolled
+     * back if any row fails.
+     *
+     * @param query           Query string
+     * @param rows            Array of parameter arrays
+     * @param returnInsertIds Report the first and last insert id
+     * @return aggregate counts
+     */
+    WritableMap executeMany(String query, ReadableArray rows, boolean returnInsertIds) throws Exception {
+        if (mydb == null) {
+            throw new Exception("database has been closed");
+        }
+
+        int rowCount = rows == null ? 0 : rows.size();
+        boolean isInsert = SQLiteStatementInfo.getQueryType(query) == QueryType.insert;
+        boolean ownTransaction = !mydb.inTransaction();
+
+        long rowsAffected = 0;
+        long firstInsertId = -1;
+        long lastInsertId = -1;
+        int i = 0;
+
+        SQLiteStatement myStatement = null;
+        try {
+            if (ownTransaction) {
+                mydb.beginTransaction();
+            }
+            try {
+                myStatement = statementCache.acquire(mydb, query);
+                for (; i < rowCount; i++) {
+                    myStatement.clearBindings();
+                    bindArgsToStatement(myStatement, rows.getArray(i));
+                    if (isInsert) {
+                        long insertId = myStatement.executeInsert();
+                        if (insertId != -1) {
+                            rowsAffected++;
+                            if (firstInsertId == -1) {
+                                firstInsertId = insertId;
+                            }
+                            lastInsertId = insertId;
+                        }
+                    } else {
+                        rowsAffected += myStatement.executeUpdateDelete();
+                    }
+                }
+                if (ownTransaction) {
+                    mydb.setTransactionSuccessful();
                 }
+            } finally {
+                statementCache.release(query, myStatement);
+                if (ownTransaction) {
+                    mydb.endTransaction();
+                }
+            }
+        } catch (Exception ex) {
+            FLog.e(SQLitePlugin.TAG, "SQLitePlugin.executeMany() failed at row " + i, ex);
+            throw new Exception("row " + i + ": " + ex.getMessage());
+        }
+
+        return manyResult(rowCount, rowsAffected, returnInsertIds ? firstInsertId : -1, lastInsertId);
+    }
+
+    /**
+     * Executes a SQL script (in the current thread).
+     *
+     * The script is split into its statements natively. Unless a transaction is already
+     * open, they are executed in an implicit transaction which is rolled back if any
+     * statement fails.
+     *
+     * @param sql        The script
+     * @return summary: {statements, rowsAffected}
+     */
+    WritableMap executeScript(String sql) throws Exception {
+        List<String> statements = SQLiteStatementInfo.splitScript(sql);
+        boolean ownTransaction = !inTransaction();
+        long rowsAffected;
+        if (ownTransaction) {
+            beginTransaction(false);
+        }
+        boolean committed = false;
+        try {
+            rowsAffected = runScript(statements);
+            if (ownTransaction) {
+                endTransaction(true);
+                committed = true;
+            }
+        } finally {
+            if (ownTransaction && !committed && inTransaction()) {
+                endTransaction(false);
+            }
+        }
 
-                rowsArrayResult.pushMap(row);
-            } while (cur.moveToNext());
+        WritableMap result = Arguments.createMap();
+        result.putInt("statements", statements.size());
+        result.putDouble("rowsAffected", rowsAffected);
+        return result;
+    }
 
-            rowsResult.putArray("rows", rowsArrayResult);
+    /**
+     * Run the migrations of the open options ({version, sql} scripts) whose version is
+     * above the user_version of the database, in the order of their versions. Each
+     * migration runs in its own transaction which also sets user_version to its version.
+     *
+     * @return the user_version after the migrations
+     */
+    int migrate(ReadableArray migrations) throws Exception {
+        TreeMap<Integer, String> scripts = new TreeMap<>();
+        for (int i = 0; i < migrations.size(); i++) {
+            ReadableMap migration = migrations.getMap(i);
+            int version = SQLitePluginConverter.getInt(migration,"version",0);
+            if (version <= 0 || scripts.put(version, SQLitePluginConverter.getString(migration,"sql","")) != null) {
+                throw new Exception("invalid or duplicate migration version: " + version);
+            }
         }
 
-        if (cur != null) {
-            cur.close();
+        String value = queryValue("PRAGMA user_version");
+        int userVersion = value == null ? 0 : Integer.parseInt(value);
+        for (Map.Entry<Integer, String> migration : scripts.tailMap(userVersion, false).entrySet()) {
+            int version = migration.getKey();
+            beginTransaction(false);
+            boolean committed = false;
+            try {
+                runScript(SQLiteStatementInfo.splitScript(migration.getValue()));
+                execute("PRAGMA user_version = " + version);
+                endTransaction(true);
+                committed = true;
+            } catch (Exception ex) {
+                throw new Exception("migration to version " + version + " failed: " + ex.getMessage(), ex);
+            } finally {
+                if (!committed && inTransaction()) {
+                    endTransaction(false);
+                }
+            }
+            userVersion = version;
+            FLog.i(SQLitePlugin.TAG, "migrated to version " + version);
         }
+        return userVersion;
+    }
 
-        return rowsResult;
+    /**
+     * Execute the statements of a script one by one (in the current thread).
+     *
+     * @return number of rows changed by the statements
+     * @throws Exception naming the index of the failed statement
+     */
+    private long runScript(List<String> statements) throws Exception {
+        long changesBefore = Long.parseLong(queryValue("SELECT total_changes()"));
+        for (int i = 0; i < statements.size(); i++) {
+            String query = statements.get(i);
+            // (not cached, script statements are usually run once)
+            SQLiteStatementInfo info = SQLiteStatementInfo.classify(query);
+            try {
+                if (info.queryType == QueryType.begin || info.queryType == QueryType.commit || info.queryType == QueryType.rollback) {
+                    throw new Exception("transaction control statements are not allowed in a script");
+                }
+                if (info.readOnly || SQLiteStatementInfo.isPragma(query)) {
+                    // (the framework refuses to execute statements which return rows)
+                    queryValue(query);
+                } else {
+                    execute(query);
+                }
+            } catch (Exception ex) {
+                throw new Exception("statement " + i + ": " + ex.getMessage(), ex);
+            }
+        }
+        return Long.parseLong(queryValue("SELECT total_changes()")) - changesBefore;
     }
 
-    @SuppressLint("NewApi")
-    private void bindRow(WritableMap row, String key, Cursor cur, int i) {
-        int curType = cur.getType(i);
-
-        switch (curType) {
-            case Cursor.FIELD_TYPE_NULL:
-                row.putNull(key);
-                break;
-            case Cursor.FIELD_TYPE_INTEGER:
-                row.putDouble(key, cur.getLong(i));
-                break;
-            case Cursor.FIELD_TYPE_FLOAT:
-                row.putDouble(key, cur.getDouble(i));
-                break;
-            case Cursor.FIELD_TYPE_BLOB:
-                row.putString(key, new String(Base64.encode(cur.getBlob(i), Base64.DEFAULT)));
-                break;
-            case Cursor.FIELD_TYPE_STRING:
-            default:
-                row.putString(key, cur.getString(i));
-                break;
+    static WritableMap manyResult(int rowCount, long rowsAffected, long firstInsertId, long lastInsertId) {
+        WritableMap result = Arguments.createMap();
+        result.putInt("rowCount", rowCount);
+        result.putDouble("rowsAffected", rowsAffected);
+        if (firstInsertId != -1) {
+            result.putDouble("firstInsertId", firstInsertId);
+            result.putDouble("lastInsertId", lastInsertId);
+        }
+        return result;
+    }
+
+    /**
+     * Open a result cursor which is read in chunks by the db thread.
+     *
+     * @param cursorId    Id of the new cursor
+     * @param query       Query string
+     * @param queryParams Query parameters
+     * @param readAhead   Read the next chunk right after each fetch
+     * @param blobEncoding Transport of BLOB values
+     */
+    SQLiteResultCursor openCursor(int cursorId, String query, ReadableArray queryParams,
+                                  boolean readAhead, SQLiteBlobEncoding blobEncoding) throws Exception {
+        if (mydb == null) {
+            throw new Exception("database has been closed");
         }
+        Cursor cur = rawQueryTyped(mydb, query, queryParams, null);
+        return SQLiteResultCursor.fromCursor(cursorId, cur, readAhead, blobEncoding);
     }
 
-    static QueryType getQueryType(String query) {
-        Matcher matcher = FIRST_WORD.matcher(query);
-        if (matcher.find()) {
+    static WritableArray toWritableArray(String[] strings) {
+        WritableArray array = Arguments.createArray();
+        for (String string : strings) {
+            array.pushString(string);
+        }
+        return array;
+    }
+
+    static ResultFormat getResultFormat(String format) {
+        if (format != null) {
             try {
-                return QueryType.valueOf(matcher.group(1).toLowerCase(Locale.US));
+                return ResultFormat.valueOf(format);
             } catch (IllegalArgumentException ignore) {
-                // unknown verb
+                FLog.w(SQLitePlugin.TAG, "unknown result format: " + format + ", using rows");
             }
         }
-        return QueryType.other;
+        return ResultFormat.rows;
     }
 
-    static enum QueryType {
-        update,
-        insert,
-        delete,
-        select,
-        begin,
-        commit,
-        rollback,
-        other
+    /**
+     * Encoding of SELECT results sent back over the bridge:
+     * rows - one map per row (default), array - column names once and one
+     * positional array per row, columnar - column names once and one array per column
+     */
+    static enum ResultFormat {
+        rows,
+        array,
+        columnar
     }
 } /* vim: set expandtab : */
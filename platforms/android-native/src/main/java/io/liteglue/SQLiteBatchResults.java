@@ -0,0 +1,220 @@
+/*
+ * This library is available under the terms of the MIT License (2008).
+ * See http://opensource.org/licenses/alphabetical for full text.
+ */
+
+package io.liteglue;
+
+import android.util.Base64;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.ReadableType;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+
+import io.liteglue.SQLiteAndroidDatabase.ResultFormat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Results of the statements of a batch, collected by the db thread and turned
+ * into the batch result array by the result serializer.
+ *
+ * A parameter may refer to the result of an earlier statement of the batch with a
+ * {$ref: "index.name"} map: name is insertId or rowsAffected, or for a query the
+ * name of a column of its first row. References are resolved natively just before
+ * the statement is bound, so dependent statements run without a round trip to JS.
+ */
+class SQLiteBatchResults {
+
+    static final String REF_KEY = "$ref";
+
+    private static class Entry {
+        final String qid;
+        final WritableMap result;
+        final SQLiteRowBuffer rows;
+        final ResultFormat format;
+        final SQLiteBlobEncoding blobEncoding;
+        final String errorMessage;
+
+        Entry(String qid, WritableMap result, SQLiteRowBuffer rows, ResultFormat format,
+              SQLiteBlobEncoding blobEncoding, String errorMessage) {
+            this.qid = qid;
+            this.result = result;
+            this.rows = rows;
+            this.format = format;
+            this.blobEncoding = blobEncoding;
+            this.errorMessage = errorMessage;
+        }
+    }
+
+    private final List<Entry> entries;
+
+    SQLiteBatchResults(int size) {
+        this.entries = new ArrayList<>(size);
+    }
+
+    void success(String qid, WritableMap result) {
+        entries.add(new Entry(qid, result, null, null, null, null));
+    }
+
+    /**
+     * @param result  result map, the rows (if any) are added by the serializer
+     */
+    void success(String qid, WritableMap result, SQLiteRowBuffer rows, ResultFormat format,
+                 SQLiteBlobEncoding blobEncoding) {
+        entries.add(new Entry(qid, result, rows, format, blobEncoding, null));
+    }
+
+    void error(String qid, String errorMessage) {
+        entries.add(new Entry(qid, null, null, null, null, errorMessage));
+    }
+
+    /**
+     * @return params with references to earlier results replaced by their values
+     * (params itself if there are none)
+     * @throws Exception if a reference can't be resolved
+     */
+    ReadableArray resolveRefs(ReadableArray params) throws Exception {
+        if (params == null) {
+            return null;
+        }
+        WritableArray resolved = null;
+        int size = params.size();
+        for (int i = 0; i < size; i++) {
+            String ref = null;
+            if (params.getType(i) == ReadableType.Map) {
+                ReadableMap param = params.getMap(i);
+                if (param.hasKey(REF_KEY)) {
+                    ref = param.getString(REF_KEY);
+                }
+            }
+            if (ref != null && resolved == null) {
+                // copy the parameters before this one:
+                resolved = Arguments.createArray();
+                for (int j = 0; j < i; j++) {
+                    copyParam(resolved, params, j);
+                }
+            }
+            if (ref != null) {
+                pushValue(resolved, resolveRef(ref));
+            } else if (resolved != null) {
+                copyParam(resolved, params, i);
+            }
+        }
+        return resolved != null ? resolved : params;
+    }
+
+    private Object resolveRef(String ref) throws Exception {
+        int dot = ref.indexOf('.');
+        int index;
+        try {
+            index = Integer.parseInt(dot > 0 ? ref.substring(0, dot) : "");
+        } catch (NumberFormatException ex) {
+            throw new Exception("invalid result reference: " + ref);
+        }
+        if (index < 0 || index >= entries.size()) {
+            throw new Exception("result reference to a statement not run before in the batch: " + ref);
+        }
+        Entry entry = entries.get(index);
+        if (entry.errorMessage != null) {
+            throw new Exception("result reference to a failed statement: " + ref);
+        }
+        String name = ref.substring(dot + 1);
+        int column = entry.rows != null ? entry.rows.getColumnIndex(name) : -1;
+        if (column != -1) {
+            try {
+                return entry.rows.getFirstRowValue(column);
+            } catch (Exception ex) {
+                throw new Exception("result reference " + ref + ": " + ex.getMessage());
+            }
+        }
+        if (!entry.result.hasKey(name)) {
+            throw new Exception("result reference to a missing value: " + ref);
+        }
+        return entry.result.getDouble(name);
+    }
+
+    private static void pushValue(WritableArray params, Object value) {
+        if (value == null) {
+            params.pushNull();
+        } else if (value instanceof Long) {
+            params.pushDouble((Long) value);
+        } else if (value instanceof Double) {
+            params.pushDouble((Double) value);
+        } else if (value instanceof byte[]) {
+            WritableMap blob = Arguments.createMap();
+            blob.putString(SQLiteBlobEncoding.BLOB_KEY, Base64.encodeToString((byte[]) value, Base64.NO_WRAP));
+            params.pushMap(blob);
+        } else {
+            params.pushString(value.toString());
+        }
+    }
+
+    private static void copyParam(WritableArray params, ReadableArray from, int i) {
+        switch (from.getType(i)) {
+            case Null:
+                params.pushNull();
+                break;
+            case Boolean:
+                params.pushBoolean(from.getBoolean(i));
+                break;
+            case Number:
+                params.pushDouble(from.getDouble(i));
+                break;
+            case Map: {
+                WritableMap map = Arguments.createMap();
+                map.merge(from.getMap(i));
+                params.pushMap(map);
+                break;
+            }
+            default:
+                params.pushString(SQLitePluginConverter.getString(from, i, ""));
+                break;
+        }
+    }
+
+    WritableArray toArray() {
+        WritableArray batchResults = Arguments.createArray();
+        for (Entry entry : entries) {
+            WritableMap r = Arguments.createMap();
+            r.putString("qid", entry.qid);
+            if (entry.errorMessage == null) {
+                if (entry.rows != null) {
+                    entry.rows.putResult(entry.result, entry.format, entry.blobEncoding);
+                }
+                r.putString("type", "success");
+                r.putMap("result", entry.result);
+            } else {
+                r.putString("type", "error");
+
+                WritableMap er = Arguments.createMap();
+                er.putString("message", entry.errorMessage);
+                r.putMap("result", er);
+            }
+            batchResults.pushMap(r);
+        }
+        return batchResults;
+    }
+
+    /**
+     * @param metrics metrics of the database, the time to build the result array is recorded
+     * @return task sending the batch result array via cbc
+     */
+    Runnable sendTo(final CallbackContext cbc, final SQLiteMetrics metrics) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                boolean traced = SQLiteTrace.begin("serialize results");
+                long startedAt = System.nanoTime();
+                WritableArray batchResults = toArray();
+                metrics.serialization.record(startedAt);
+                SQLiteTrace.end(traced);
+                cbc.success(batchResults);
+            }
+        };
+    }
+}
@@ -8,6 +8,8 @@
 package io.liteglue;
 
 import android.content.Context;
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
 
 import com.facebook.common.logging.FLog;
 import com.facebook.react.bridge.Arguments;
@@ -21,15 +23,30 @@ import com.facebook.react.bridge.ReadableType;
 import com.facebook.react.bridge.WritableArray;
 import com.facebook.react.bridge.WritableMap;
 
+import io.liteglue.SQLiteStatementInfo.QueryType;
+
 import java.io.Closeable;
 import java.io.File;
 import java.io.FileInputStream;
 import java.lang.IllegalArgumentException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import java.io.FileOutputStream;
 import java.io.InputStream;
@@ -40,6 +57,23 @@ public class SQLitePlugin extends ReactContextBaseJavaModule {
 
     public static final String TAG = SQLitePlugin.class.getSimpleName();
 
+    /**
+     * Upper bound for the JS thread to wait on a synchronous request.
+     */
+    private static final int SYNC_TIMEOUT_SECONDS = 30;
+
+    private static final String SYNC_TIMED_OUT = "timed out waiting for the database";
+
+    /**
+     * Default number of atomic batches committed together with groupCommit: true.
+     */
+    private static final int GROUP_COMMIT_MAX_BATCHES = 32;
+
+    private static final String GROUP_SAVEPOINT = "group_commit";
+
+    // error of a request cancelled by the cancel action or dropped past its deadline:
+    static final String REQUEST_CANCELLED = "request cancelled";
+
     /**
      * Multiple database runner map (static).
      * NOTE: no public static accessor to db (runner) map since it would not work with db threading.
@@ -52,13 +86,39 @@ public class SQLitePlugin extends ReactContextBaseJavaModule {
      */
     static SQLiteConnector connector = new SQLiteConnector();
 
+    /**
+     * Source of the request IDs of synchronous requests, see executeSync().
+     */
+    private static final AtomicInteger nextSyncRequestId = new AtomicInteger();
+
+    /**
+     * Source of result cursor ids, unique across all databases.
+     */
+    private static final AtomicInteger nextCursorId = new AtomicInteger();
+
     protected ExecutorService threadPool;
     private Context context;
 
+    /**
+     * Worker threads the databases are multiplexed over, null for a thread per database
+     */
+    protected final SQLiteScheduler scheduler;
+
     public SQLitePlugin(ReactApplicationContext reactContext) {
+        this(reactContext, 0);
+    }
+
+    /**
+     * @param workerThreads  Number of worker threads shared by all databases (scheduler mode),
+     *                       0 for a thread per open database
+     */
+    public SQLitePlugin(ReactApplicationContext reactContext, int workerThreads) {
         super(reactContext);
         this.context = reactContext.getApplicationContext();
         this.threadPool = Executors.newCachedThreadPool();
+        this.scheduler = workerThreads > 0 ? new SQLiteScheduler(workerThreads) : null;
+        if (this.scheduler != null)
+            FLog.i(TAG, "Database scheduler enabled, worker threads: " + workerThreads);
     }
 
     /**
@@ -129,6 +189,126 @@ public class SQLitePlugin extends ReactContextBaseJavaModule {
         }
     }
 
+    @ReactMethod
+    public void executeTransaction(ReadableMap args, Callback success, Callback error) {
+        String actionAsString = "executeTransaction";
+        try {
+            this.execute(actionAsString, args, new CallbackContext(success, error));
+        } catch (Exception ex){
+            error.invoke("Unexpected error"+ex.getMessage());
+        }
+    }
+
+    @ReactMethod
+    public void executeMany(ReadableMap args, Callback success, Callback error) {
+        String actionAsString = "executeMany";
+        try {
+            this.execute(actionAsString, args, new CallbackContext(success, error));
+        } catch (Exception ex){
+            error.invoke("Unexpected error"+ex.getMessage());
+        }
+    }
+
+    @ReactMethod
+    public void executeScript(ReadableMap args, Callback success, Callback error) {
+        String actionAsString = "executeScript";
+        try {
+            this.execute(actionAsString, args, new CallbackContext(success, error));
+        } catch (Exception ex){
+            error.invoke("Unexpected error"+ex.getMessage());
+        }
+    }
+
+    @ReactMethod
+    public void openCursor(ReadableMap args, Callback success, Callback error) {
+        String actionAsString = "openCursor";
+        try {
+            this.execute(actionAsString, args, new CallbackContext(success, error));
+        } catch (Exception ex){
+            error.invoke("Unexpected error"+ex.getMessage());
+        }
+    }
+
+    @ReactMethod
+    public void fetch(ReadableMap args, Callback success, Callback error) {
+        String actionAsString = "fetch";
+        try {
+            this.execute(actionAsString, args, new CallbackContext(success, error));
+        } catch (Exception ex){
+            error.invoke("Unexpected error"+ex.getMessage());
+        }
+    }
+
+    @ReactMethod
+    public void closeCursor(ReadableMap args, Callback success, Callback error) {
+        String actionAsString = "closeCursor";
+        try {
+            this.execute(actionAsString, args, new CallbackContext(success, error));
+        } catch (Exception ex){
+            error.invoke("Unexpected error"+ex.getMessage());
+        }
+    }
+
+    @ReactMethod
+    public void cancel(ReadableMap args, Callback success, Callback error) {
+        String actionAsString = "cancel";
+        try {
+            this.execute(actionAsString, args, new CallbackContext(success, error));
+        } catch (Exception ex){
+            error.invoke("Unexpected error"+ex.getMessage());
+        }
+    }
+
+    @ReactMethod
+    public void getQueueStatus(ReadableMap args, Callback success, Callback error) {
+        String actionAsString = "getQueueStatus";
+        try {
+            this.execute(actionAsString, args, new CallbackContext(success, error));
+        } catch (Exception ex){
+            error.invoke("Unexpected error"+ex.getMessage());
+        }
+    }
+
+    @ReactMethod
+    public void getStats(ReadableMap args, Callback success, Callback error) {
+        String actionAsString = "getStats";
+        try {
+            this.execute(actionAsString, args, new CallbackContext(success, error));
+        } catch (Exception ex){
+            error.invoke("Unexpected error"+ex.getMessage());
+        }
+    }
+
+    @ReactMethod
+    public void resetStats(ReadableMap args, Callback success, Callback error) {
+        String actionAsString = "resetStats";
+        try {
+            this.execute(actionAsString, args, new CallbackContext(success, error));
+        } catch (Exception ex){
+            error.invoke("Unexpected error"+ex.getMessage());
+        }
+    }
+
+    @ReactMethod
+    public void getSlowQueries(ReadableMap args, Callback success, Callback error) {
+        String actionAsString = "getSlowQueries";
+        try {
+            this.execute(actionAsString, args, new CallbackContext(success, error));
+        } catch (Exception ex){
+            error.invoke("Unexpected error"+ex.getMessage());
+        }
+    }
+
+    @ReactMethod
+    public void setTracing(ReadableMap args, Callback success, Callback error) {
+        String actionAsString = "setTracing";
+        try {
+            this.execute(actionAsString, args, new CallbackContext(success, error));
+        } catch (Exception ex){
+            error.invoke("Unexpected error"+ex.getMessage());
+        }
+    }
+
     @ReactMethod
     public void echoStringValue(ReadableMap args, Callback success, Callback error) {
         String actionAsString = "echoStringValue";
@@ -139,6 +319,133 @@ public class SQLitePlugin extends ReactContextBaseJavaModule {
         }
     }
 
+    /**
+     * Synchronous variant of executeSqlBatch, called directly from the JS thread.
+     *
+     * The batch still runs on the database thread, the JS thread only blocks until the
+     * result is ready. This saves the asynchronous bridge round trip for small queries.
+     * It fails right away while requests are queued or the writer has a transaction open,
+     * so that the JS thread never waits behind them.
+     *
+     * @return {type: "success", result: [...]} or {type: "error", message}
+     */
+    @ReactMethod(isBlockingSynchronousMethod = true)
+    public WritableMap executeSqlBatchSync(ReadableMap args) {
+        return this.executeSync("executeSqlBatch", args);
+    }
+
+    private WritableMap executeSync(String actionAsString, ReadableMap args) {
+        final WritableMap response = Arguments.createMap();
+        final CountDownLatch done = new CountDownLatch(1);
+        final AtomicBoolean timedOut = new AtomicBoolean();
+
+        Callback success = new Callback() {
+            @Override
+            public void invoke(Object... result) {
+                response.putString("type", "success");
+                if (result.length > 0 && result[0] instanceof WritableArray) {
+                    response.putArray("result", (WritableArray) result[0]);
+                } else if (result.length > 0 && result[0] instanceof WritableMap) {
+                    response.putMap("result", (WritableMap) result[0]);
+                } else if (result.length > 0 && result[0] != null) {
+                    response.putString("result", result[0].toString());
+                }
+                done.countDown();
+            }
+        };
+        Callback error = new Callback() {
+            @Override
+            public void invoke(Object... result) {
+                String message = result.length > 0 && result[0] != null ? result[0].toString() : "unknown";
+                response.putString("type", "error");
+                response.putString("message", timedOut.get() && REQUEST_CANCELLED.equals(message) ? SYNC_TIMED_OUT : message);
+                done.countDown();
+            }
+        };
+
+        String dbname = SQLitePluginConverter.getString((ReadableMap) SQLitePluginConverter.get(args,"dbargs",null),"dbname","");
+        DBRunner r = dbrmap.get(dbname);
+        if (r != null && r.isBusy()) {
+            WritableMap busy = Arguments.createMap();
+            busy.putString("type", "error");
+            busy.putString("message", "database busy");
+            return busy;
+        }
+
+        CallbackContext cbc = new CallbackContext(success, error);
+        cbc.synchronous = true;
+        // (to cancel it on timeout)
+        cbc.requestId = "sync-" + nextSyncRequestId.incrementAndGet();
+        try {
+            this.execute(actionAsString, args, cbc);
+            if (!done.await(SYNC_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                FLog.e(TAG, "SQLitePlugin." + actionAsString + "Sync() timed out");
+                // a queued request is removed (and fails with SYNC_TIMED_OUT), a running one is
+                // interrupted, the result reported is its real outcome either way:
+                timedOut.set(true);
+                if (r != null) {
+                    r.cancel(cbc.requestId);
+                }
+                done.await();
+            }
+        } catch (Exception ex) {
+            FLog.e(TAG, "SQLitePlugin." + actionAsString + "Sync() failed", ex);
+            WritableMap failure = Arguments.createMap();
+            failure.putString("type", "error");
+            failure.putString("message", "Unexpected error: " + ex.getMessage());
+            return failure;
+        }
+        return response;
+    }
+
+    /**
+     * Statistics of an open database, as sent by the getStats action (e.g. for native code
+     * of the app to log or upload them).
+     *
+     * @param dbname The name of the database file
+     * @return the statistics, null if the database is not open
+     */
+    public static WritableMap getStats(String dbname) {
+        DBRunner r = dbrmap.get(dbname);
+        return r == null ? null : r.getStats();
+    }
+
+    /**
+     * Reset the statistics of an open database.
+     *
+     * @param dbname The name of the database file
+     * @return false if the database is not open
+     */
+    public static boolean resetStats(String dbname) {
+        DBRunner r = dbrmap.get(dbname);
+        if (r == null) {
+            return false;
+        }
+        r.resetStats();
+        return true;
+    }
+
+    /**
+     * Slow query log of an open database, as sent by the getSlowQueries action.
+     *
+     * @param dbname The name of the database file
+     * @return the logged statements, oldest first, null if the database is not open
+     */
+    public static WritableArray getSlowQueries(String dbname) {
+        DBRunner r = dbrmap.get(dbname);
+        return r == null ? null : r.getSlowQueries();
+    }
+
+    /**
+     * Switch the trace sections of all databases on or off, as the setTracing action
+     * (e.g. for native code of the app to trace its startup).
+     *
+     * @param enabled Emit trace sections while a trace is captured
+     */
+    public static void setTracing(boolean enabled) {
+        SQLiteTrace.setEnabled(enabled);
+    }
+
     protected ExecutorService getThreadPool(){
         return this.threadPool;
     }
@@ -208,13 +515,70 @@ public class SQLitePlugin extends ReactContextBaseJavaModule {
                 deleteDatabase(dbname, cbc);
                 break;
 
+            case cancel:
+                dbname = SQLitePluginConverter.getString((ReadableMap) SQLitePluginConverter.get(args,"dbargs",null),"dbname","");
+                DBRunner cancelRunner = dbrmap.get(dbname);
+                if (cancelRunner != null) {
+                    WritableMap cancelResult = Arguments.createMap();
+                    cancelResult.putInt("cancelled", cancelRunner.cancel(SQLitePluginConverter.getString(args,"requestId","")));
+                    cbc.success(cancelResult);
+                } else {
+                    cbc.error("database not open");
+                }
+                break;
+
+            case getQueueStatus:
+                dbname = SQLitePluginConverter.getString((ReadableMap) SQLitePluginConverter.get(args,"dbargs",null),"dbname","");
+                DBRunner statusRunner = dbrmap.get(dbname);
+                if (statusRunner != null) {
+                    cbc.success(statusRunner.getQueueStatus());
+                } else {
+                    cbc.error("database not open");
+                }
+                break;
+
+            case getStats:
+            case resetStats:
+                dbname = SQLitePluginConverter.getString((ReadableMap) SQLitePluginConverter.get(args,"dbargs",null),"dbname","");
+                DBRunner statsRunner = dbrmap.get(dbname);
+                if (statsRunner == null) {
+                    cbc.error("database not open");
+                } else if (action == Action.getStats) {
+                    cbc.success(statsRunner.getStats());
+                } else {
+                    statsRunner.resetStats();
+                    cbc.success("stats reset");
+                }
+                break;
+
+            case getSlowQueries:
+                dbname = SQLitePluginConverter.getString((ReadableMap) SQLitePluginConverter.get(args,"dbargs",null),"dbname","");
+                DBRunner slowQueryRunner = dbrmap.get(dbname);
+                if (slowQueryRunner != null) {
+                    cbc.success(slowQueryRunner.getSlowQueries());
+                } else {
+                    cbc.error("database not open");
+                }
+                break;
+
+            case setTracing:
+                boolean tracing = SQLitePluginConverter.getBoolean(args,"enabled",false);
+                SQLiteTrace.setEnabled(tracing);
+                cbc.success(tracing ? "tracing enabled" : "tracing disabled");
+                break;
+
             case executeSqlBatch:
             case backgroundExecuteSqlBatch:
+            case executeTransaction:
                 String [] queries;
                 String [] queryIDs = null;
                 ReadableArray[] queryParams = null;
+                SQLiteAndroidDatabase.ResultFormat[] queryFormats = null;
+                SQLiteBlobEncoding[] queryBlobEncodings = null;
                 ReadableMap dbArgs = (ReadableMap) SQLitePluginConverter.get(args,"dbargs",null);
                 dbname = SQLitePluginConverter.getString(dbArgs,"dbname","");
+                boolean readOnly = SQLitePluginConverter.getBoolean(args,"readOnly",false);
+                boolean atomic = SQLitePluginConverter.getBoolean(args,"atomic",false);
                 ReadableArray txArgs = (ReadableArray) SQLitePluginConverter.get(args,"executes",null);
 
                 if (txArgs.isNull(0)) {
@@ -224,21 +588,67 @@ public class SQLitePlugin extends ReactContextBaseJavaModule {
                     queries = new String[len];
                     queryIDs = new String[len];
                     queryParams = new ReadableArray[len];
+                    queryFormats = new SQLiteAndroidDatabase.ResultFormat[len];
+                    queryBlobEncodings = new SQLiteBlobEncoding[len];
 
                     for (int i = 0; i < len; i++) {
                         ReadableMap queryArgs = (ReadableMap) SQLitePluginConverter.get(txArgs,i,null);
                         queries[i] = SQLitePluginConverter.getString(queryArgs,"sql","");
                         queryIDs[i] = SQLitePluginConverter.getString(queryArgs,"qid","");
                         queryParams[i] = (ReadableArray) SQLitePluginConverter.get(queryArgs,"params",null);
+                        queryFormats[i] = SQLiteAndroidDatabase.getResultFormat(SQLitePluginConverter.getString(queryArgs,"format",null));
+                        queryBlobEncodings[i] = SQLiteBlobEncoding.fromString(SQLitePluginConverter.getString(queryArgs,"blobs",null));
                     }
                 }
 
                 // put db query in the queue to be executed in the db thread:
-                DBQuery q = new DBQuery(queries, queryIDs, queryParams, cbc);
+                DBQuery q;
+                boolean pureRead = SQLiteStatementInfo.isReadOnly(queries);
+                if (action == Action.executeTransaction) {
+                    // (only a read transaction of JS is read-only, as with BEGIN/COMMIT batches)
+                    q = new DBQuery(action, queries, queryIDs, queryParams, queryFormats, queryBlobEncodings, false, readOnly, cbc);
+                    pureRead = false;
+                } else {
+                    q = new DBQuery(Action.executeSqlBatch, queries, queryIDs, queryParams, queryFormats, queryBlobEncodings, atomic, readOnly, cbc);
+                }
+                setRequestOptions(q, action, args);
                 DBRunner r = dbrmap.get(dbname);
                 if (r != null) {
+                    // only standalone reads can be dropped (dropOldestRead policy of the queue limit),
+                    // not a batch of a transaction open on the writer or on a reader:
+                    q.read = action == Action.executeTransaction ? readOnly
+                            : pureRead && !r.inTransaction && r.pinnedReader == null;
+                    try {
+                        // atomic batches are executed by the writer, they are part of its group commit:
+                        r.submit(q, args, readOnly, !atomic && pureRead);
+                    } catch(Exception ex) {
+                        FLog.e(TAG, "couldn't add to queue", ex);
+                        cbc.error("couldn't add to queue");
+                    }
+                } else {
+                    cbc.error("database not open");
+                }
+                break;
+
+            case executeMany:
+            case executeScript:
+            case openCursor:
+            case fetch:
+            case closeCursor:
+                dbname = SQLitePluginConverter.getString((ReadableMap) SQLitePluginConverter.get(args,"dbargs",null),"dbname","");
+                DBRunner runner = dbrmap.get(dbname);
+                if (runner != null) {
                     try {
-                        r.q.put(q);
+                        // cursors live on the db thread, every cursor request goes through the queue
+                        // (as does executeMany, to keep its order with the batches):
+                        DBQuery query = new DBQuery(action, args, cbc);
+                        setRequestOptions(query, action, args);
+                        // (a cursor is always closed, also when the queues are full)
+                        if (action == Action.closeCursor) {
+                            runner.post(query);
+                        } else {
+                            runner.submit(query, args, false, false);
+                        }
                     } catch(Exception ex) {
                         FLog.e(TAG, "couldn't add to queue", ex);
                         cbc.error("couldn't add to queue");
@@ -252,6 +662,17 @@ public class SQLitePlugin extends ReactContextBaseJavaModule {
         return true;
     }
 
+    /**
+     * Stop the worker threads of the scheduler (if any) once they have run their queued requests.
+     */
+    @Override
+    public void onCatalystInstanceDestroy() {
+        super.onCatalystInstanceDestroy();
+        if (scheduler != null) {
+            scheduler.shutdown();
+        }
+    }
+
     /**
      * Clean up and close all open databases.
      */
@@ -264,7 +685,7 @@ public class SQLitePlugin extends ReactContextBaseJavaModule {
             DBRunner r = dbrmap.get(dbname);
             try {
                 // stop the db runner thread:
-                r.q.put(new DBQuery());
+                r.post(new DBQuery());
             } catch(Exception ex) {
                 FLog.e(TAG, "couldn't stop db thread for db: " + dbname,ex);
             }
@@ -292,7 +713,11 @@ public class SQLitePlugin extends ReactContextBaseJavaModule {
         } else {
             r = new DBRunner(dbname, options, cbc);
             dbrmap.put(dbname, r);
-            this.getThreadPool().execute(r);
+            if (scheduler != null) {
+                r.start(scheduler.assign());
+            } else {
+                this.getThreadPool().execute(r);
+            }
         }
     }
 
@@ -301,9 +726,10 @@ public class SQLitePlugin extends ReactContextBaseJavaModule {
      *
      * @param dbname   The name of the database file
      */
-    private SQLiteAndroidDatabase openDatabase(String dbname, String assetFilePath, int openFlags, CallbackContext cbc, boolean old_impl) throws Exception {
+    private SQLiteAndroidDatabase openDatabase(String dbname, String assetFilePath, int openFlags, boolean old_impl) throws Exception {
         InputStream in = null;
         File dbfile = null;
+        boolean traced = SQLiteTrace.begin("openDatabase", dbname);
         try {
             boolean assetImportError = false;
             boolean assetImportRequested = assetFilePath != null && assetFilePath.length() > 0;
@@ -374,12 +800,10 @@ public class SQLitePlugin extends ReactContextBaseJavaModule {
             SQLiteAndroidDatabase mydb = old_impl ? new SQLiteAndroidDatabase() : new SQLiteDatabaseNDK();
             mydb.open(dbfile, openFlags);
 
-            if (cbc != null)
-                cbc.success("database open");
-
             return mydb;
         } finally {
             closeQuietly(in);
+            SQLiteTrace.end(traced);
         }
     }
 
@@ -394,6 +818,7 @@ public class SQLitePlugin extends ReactContextBaseJavaModule {
     private void createFromAssets(String dbName, File dbfile, InputStream assetFileInputStream) throws Exception
     {
         OutputStream out = null;
+        boolean traced = SQLiteTrace.begin("createFromAssets", dbName);
         try {
             String dbPath = dbfile.getAbsolutePath();
             dbPath = dbPath.substring(0, dbPath.lastIndexOf("/") + 1);
@@ -415,6 +840,7 @@ public class SQLitePlugin extends ReactContextBaseJavaModule {
             FLog.v(TAG, "Copied pre-populated DB content to: " + newDbFile.getAbsolutePath());
         } finally {
             closeQuietly(out);
+            SQLiteTrace.end(traced);
         }
     }
 
@@ -427,7 +853,7 @@ public class SQLitePlugin extends ReactContextBaseJavaModule {
         DBRunner r = dbrmap.get(dbname);
         if (r != null) {
             try {
-                r.q.put(new DBQuery(false, cbc));
+                r.post(new DBQuery(false, cbc));
             } catch(Exception ex) {
                 if (cbc != null) {
                     cbc.error("couldn't close database" + ex);
@@ -452,64 +878,298 @@ public class SQLitePlugin extends ReactContextBaseJavaModule {
         if (r != null) {
             SQLiteAndroidDatabase mydb = r.mydb;
 
+            // open cursors must be released before the connection goes away
+            closeCursors(r);
+
             if (mydb != null)
                 mydb.closeDatabaseNow();
         }
     }
 
     /**
-     * Attach a database
+     * Executes a batch as one transaction (executeTransaction) and sends the result via cbc:
+     * {results: batch result array, failedIndex: index of the failed statement or -1}.
      *
-     * @param dbName - The name of the database file
-     * @param dbNameToAttach - The name of the database file to attach
-     * @param dbAlias - The alias of the attached database
-     * @param cbc - JS callback
+     * The transaction stops at the first failed statement and is rolled back, otherwise
+     * committed (see SQLiteAndroidDatabase.beginTransaction() for the locking).
+     *
+     * @param mydb       The database connection to execute on.
+     * @param readOnly   Read-only transaction (its statements are checked by JS, as in a
+     *                   read transaction of batches)
+     * @param cancellation cancellation signal of the request (may be null), see executeSqlBatch
+     * @param cbc        Callback context from Cordova API
      */
-    private void attachDatabase(String dbName, String dbNameToAttach, String dbAlias, CallbackContext cbc) {
-        DBRunner runner = dbrmap.get(dbName);
-        if (runner != null) {
-            File dbfile = this.getContext().getDatabasePath(dbNameToAttach);
-            String filePathToAttached = dbfile.getAbsolutePath();
-            String stmt = "ATTACH DATABASE '" + filePathToAttached + "' AS " + dbAlias;
-            // TODO: remove qid it's hardcoded in js to be 1111 always anyway
-            DBQuery query = new DBQuery(new String[]{stmt}, new String[]{"1111"}, null, cbc);
-            try {
-                runner.q.put(query);
-            } catch (InterruptedException ex) {
-                cbc.error("Can't put querry into the queue");
+    private void executeTransaction(SQLiteAndroidDatabase mydb, String[] queries, ReadableArray[] queryParams,
+                                    String[] queryIDs, SQLiteAndroidDatabase.ResultFormat[] queryFormats,
+                                    SQLiteBlobEncoding[] queryBlobEncodings, boolean readOnly,
+                                    CancellationSignal cancellation, SQLiteResultSerializer resultSerializer,
+                                    CallbackContext cbc) {
+        String transactionError = null;
+        for (int i = 0; i < queries.length && transactionError == null; i++) {
+            SQLiteStatementInfo info = SQLiteStatementInfo.get(queries[i]);
+            if (info.queryType == QueryType.begin || info.queryType == QueryType.commit || info.queryType == QueryType.rollback) {
+                transactionError = "statement " + i + ": transaction control statements are not allowed in a transaction";
             }
-        } else {
-            cbc.error("Can't attach to database - it's not open yet");
         }
-    }
+        if (transactionError == null && mydb.inTransaction()) {
+            transactionError = "a transaction is already open";
+        }
 
-    private void deleteDatabase(String dbname, CallbackContext cbc) {
-        DBRunner r = dbrmap.get(dbname);
-        if (r != null) {
+        DeferredResult result = new DeferredResult();
+        int failedIndex = -1;
+        if (transactionError == null) {
+            boolean traced = SQLiteTrace.begin("executeTransaction");
+            long startedAt = System.nanoTime();
             try {
-                r.q.put(new DBQuery(true, cbc));
-            } catch(Exception ex) {
-                if (cbc != null) {
-                    cbc.error("couldn't close database" + ex);
+                mydb.beginTransaction(readOnly);
+                boolean committed = false;
+                try {
+                    failedIndex = mydb.executeSqlBatch(queries, queryParams, queryIDs, queryFormats, queryBlobEncodings,
+                            true, readOnly, cancellation, resultSerializer, result.cbc);
+                    if (failedIndex == -1) {
+                        mydb.endTransaction(true);
+                        committed = true;
+                    }
+                } finally {
+                    if (!committed && mydb.inTransaction()) {
+                        mydb.endTransaction(false);
+                    }
+                    mydb.metrics.recordTransaction(startedAt, committed);
                 }
-                FLog.e(TAG, "couldn't close database", ex);
-            }
-        } else {
-            boolean deleteResult = this.deleteDatabaseNow(dbname);
-            if (deleteResult) {
-                cbc.success("database deleted");
-            } else {
-                cbc.error("couldn't delete database");
+            } catch (Exception ex) {
+                FLog.e(TAG, "SQLitePlugin.executeTransaction() failed", ex);
+                transactionError = "transaction failed: " + ex.getMessage();
             }
+            SQLiteTrace.end(traced);
         }
+
+        // (queued behind the encoding of the results)
+        resultSerializer.execute(result.deliverTransactionTo(cbc, failedIndex, transactionError));
     }
 
     /**
-     * Delete a database.
-     *
-     * @param dbname   The name of the database file
-     *
-     * @return true if successful or false if an exception was encountered
+     * Executes a request queued outside of executeSqlBatch (in the db thread).
+     */
+    private void executeAction(DBRunner runner, Action action, ReadableMap args, CallbackContext cbc) {
+        if (action == Action.executeMany) {
+            try {
+                String query = SQLitePluginConverter.getString(args,"sql","");
+                ReadableArray rows = (ReadableArray) SQLitePluginConverter.get(args,"rows",null);
+                boolean returnInsertIds = SQLitePluginConverter.getBoolean(args,"returnInsertIds",false);
+                cbc.success(runner.mydb.executeMany(query, rows, returnInsertIds));
+            } catch (Exception ex) {
+                cbc.error(ex.getMessage());
+            }
+        } else if (action == Action.executeScript) {
+            try {
+                cbc.success(runner.mydb.executeScript(SQLitePluginConverter.getString(args,"sql","")));
+            } catch (Exception ex) {
+                FLog.e(TAG, "SQLitePlugin.executeScript() failed", ex);
+                cbc.error(ex.getMessage());
+            }
+        } else {
+            executeCursorAction(runner, action, args, cbc);
+        }
+    }
+
+    /**
+     * Executes a result cursor request (in the db thread) and sends the results via cbc.
+     *
+     * @param runner     The db runner owning the cursors
+     * @param action     openCursor, fetch or closeCursor
+     * @param args       Arguments from JS
+     * @param cbc        Callback context from Cordova API
+     */
+    private void executeCursorAction(DBRunner runner, Action action, ReadableMap args, CallbackContext cbc) {
+        SQLiteResultCursor cursor = null;
+        boolean needPrefetch = false;
+
+        try {
+            switch (action) {
+                case openCursor: {
+                    String query = SQLitePluginConverter.getString(args,"sql","");
+                    ReadableArray queryParams = (ReadableArray) SQLitePluginConverter.get(args,"params",null);
+                    boolean readAhead = SQLitePluginConverter.getBoolean(args,"readAhead",false);
+                    SQLiteBlobEncoding blobEncoding = SQLiteBlobEncoding.fromString(SQLitePluginConverter.getString(args,"blobs",null));
+
+                    cursor = runner.mydb.openCursor(nextCursorId.incrementAndGet(), query, queryParams, readAhead, blobEncoding);
+                    runner.cursors.put(cursor.id, cursor);
+
+                    WritableMap result = Arguments.createMap();
+                    result.putInt("cursorId", cursor.id);
+                    result.putArray("columns", SQLiteAndroidDatabase.toWritableArray(cursor.getColumnNames()));
+                    cbc.success(result);
+                    break;
+                }
+
+                case fetch: {
+                    int cursorId = SQLitePluginConverter.getInt(args,"cursorId",-1);
+                    int count = SQLitePluginConverter.getInt(args,"count",100);
+                    cursor = runner.cursors.get(cursorId);
+                    if (cursor == null) {
+                        cbc.error("cursor is not open");
+                        return;
+                    }
+
+                    WritableArray rows = cursor.fetch(count);
+                    boolean done = cursor.isDone();
+                    if (done) {
+                        runner.cursors.remove(cursorId);
+                        cursor.closeNow();
+                    }
+
+                    WritableMap result = Arguments.createMap();
+                    result.putArray("rows", rows);
+                    result.putBoolean("done", done);
+                    cbc.success(result);
+                    needPrefetch = !done;
+                    break;
+                }
+
+                case closeCursor: {
+                    int cursorId = SQLitePluginConverter.getInt(args,"cursorId",-1);
+                    cursor = runner.cursors.remove(cursorId);
+                    if (cursor != null) {
+                        cursor.closeNow();
+                    }
+                    cbc.success("cursor closed");
+                    break;
+                }
+            }
+        } catch (Exception ex) {
+            FLog.e(TAG, "SQLitePlugin." + action + "() failed", ex);
+            if (cursor != null && action != Action.openCursor) {
+                runner.cursors.remove(cursor.id);
+                cursor.closeNow();
+            }
+            cbc.error(ex.getMessage());
+            return;
+        }
+
+        if (needPrefetch) {
+            // read the next chunk while JS is busy with this one:
+            try {
+                cursor.prefetch();
+            } catch (Exception ex) {
+                // reported by the next fetch
+                FLog.w(TAG, "SQLitePlugin.fetch() read ahead failed", ex);
+            }
+        }
+    }
+
+    /**
+     * Statements used to apply a performance profile to a database connection.
+     */
+    private static SQLitePerformanceProfile.Connection profileConnection(final SQLiteAndroidDatabase mydb) {
+        return new SQLitePerformanceProfile.Connection() {
+            @Override
+            public String query(String sql) throws Exception {
+                return mydb.queryValue(sql);
+            }
+
+            @Override
+            public boolean enableWriteAheadLogging() throws Exception {
+                return mydb.enableWriteAheadLogging();
+            }
+        };
+    }
+
+    /**
+     * Close all result cursors of a db runner.
+     */
+    private void closeCursors(DBRunner runner) {
+        for (SQLiteResultCursor cursor : runner.cursors.values()) {
+            cursor.closeNow();
+        }
+        runner.cursors.clear();
+    }
+
+    /**
+     * @return true if a request goes in the background lane of the writer queue:
+     * by the priority hint of the request ("interactive" or "background") if there is one,
+     * otherwise executeSqlBatch requests are interactive and all others background
+     */
+    private boolean isBackground(Action action, ReadableMap args) {
+        String priority = SQLitePluginConverter.getString(args,"priority",null);
+        if (priority != null) {
+            return !priority.equals("interactive");
+        }
+        return action != Action.executeSqlBatch;
+    }
+
+    /**
+     * Set the lane, request ID (for the cancel action) and deadline of a request
+     * from its args. The deadline is the timeout (ms) after the request was received.
+     */
+    private void setRequestOptions(DBQuery dbq, Action action, ReadableMap args) {
+        dbq.background = isBackground(action, args);
+        dbq.requestId = SQLitePluginConverter.getString(args,"requestId",dbq.cbc.requestId);
+        if (dbq.requestId != null) {
+            dbq.cancellation = new CancellationSignal();
+        }
+        int timeout = SQLitePluginConverter.getInt(args,"timeout",0);
+        if (timeout > 0) {
+            dbq.deadline = dbq.enqueuedAt + TimeUnit.MILLISECONDS.toNanos(timeout);
+        }
+    }
+
+    /**
+     * Attach a database
+     *
+     * @param dbName - The name of the database file
+     * @param dbNameToAttach - The name of the database file to attach
+     * @param dbAlias - The alias of the attached database
+     * @param cbc - JS callback
+     */
+    private void attachDatabase(String dbName, String dbNameToAttach, String dbAlias, CallbackContext cbc) {
+        DBRunner runner = dbrmap.get(dbName);
+        if (runner != null) {
+            File dbfile = this.getContext().getDatabasePath(dbNameToAttach);
+            String filePathToAttached = dbfile.getAbsolutePath();
+            String stmt = "ATTACH DATABASE '" + filePathToAttached + "' AS " + dbAlias;
+            // reader connections attach lazily, before their next batch:
+            runner.attachStatements.add(stmt);
+            // TODO: remove qid it's hardcoded in js to be 1111 always anyway
+            DBQuery query = new DBQuery(new String[]{stmt}, new String[]{"1111"}, null, cbc);
+            // ahead of waiting background requests, which may already use the attached database:
+            query.background = false;
+            try {
+                runner.post(query);
+            } catch (InterruptedException ex) {
+                cbc.error("Can't put querry into the queue");
+            }
+        } else {
+            cbc.error("Can't attach to database - it's not open yet");
+        }
+    }
+
+    private void deleteDatabase(String dbname, CallbackContext cbc) {
+        DBRunner r = dbrmap.get(dbname);
+        if (r != null) {
+            try {
+                r.post(new DBQuery(true, cbc));
+            } catch(Exception ex) {
+                if (cbc != null) {
+                    cbc.error("couldn't close database" + ex);
+                }
+                FLog.e(TAG, "couldn't close database", ex);
+            }
+        } else {
+            boolean deleteResult = this.deleteDatabaseNow(dbname);
+            if (deleteResult) {
+                cbc.success("database deleted");
+            } else {
+                cbc.error("couldn't delete database");
+            }
+        }
+    }
+
+    /**
+     * Delete a database.
+     *
+     * @param dbname   The name of the database file
+     *
+     * @return true if successful or false if an exception was encountered
      */
     private boolean deleteDatabaseNow(String dbname) {
         File dbfile = this.getContext().getDatabasePath(dbname);
@@ -535,7 +1195,11 @@ public class SQLitePlugin extends ReactContextBaseJavaModule {
     // NOTE: class hierarchy is ugly, done to reduce number of modules for manual installation.
     // FUTURE TBD SQLiteDatabaseNDK class belongs in its own module.
     class SQLiteDatabaseNDK extends SQLiteAndroidDatabase {
+        // rows read between checks for the cancellation of a running query:
+        private static final int CANCEL_CHECK_ROWS = 64;
+
         SQLiteConnection mydb;
+        private boolean transactionOpen;
 
         /**
          * Open a database.
@@ -554,9 +1218,100 @@ public class SQLitePlugin extends ReactContextBaseJavaModule {
          */
         @Override
         void open(File dbFile, int mode) throws Exception {
+            this.dbFile = dbFile;
+            this.openFlags = mode;
             mydb = connector.newSQLiteConnection(dbFile.getAbsolutePath(),mode);
         }
 
+        /**
+         * Switch the database to write-ahead logging.
+         *
+         * @return true if WAL is enabled
+         */
+        @Override
+        boolean enableWriteAheadLogging() {
+            SQLiteStatement myStatement = null;
+            try {
+                myStatement = mydb.prepareStatement("PRAGMA journal_mode=WAL");
+                return myStatement.step() && "wal".equalsIgnoreCase(myStatement.getColumnTextNativeString(0));
+            } catch (Exception ex) {
+                FLog.e(TAG, "couldn't enable WAL", ex);
+                return false;
+            } finally {
+                if (myStatement != null) {
+                    try {
+                        myStatement.dispose();
+                    } catch (Exception ignore) { }
+                }
+            }
+        }
+
+        @Override
+        public List<String> explainQueryPlan(String sql) throws Exception {
+            List<String> steps = new ArrayList<>();
+            SQLiteStatement myStatement = mydb.prepareStatement("EXPLAIN QUERY PLAN " + sql);
+            try {
+                // (detail is the last column)
+                int detail = myStatement.getColumnCount() - 1;
+                while (myStatement.step()) {
+                    steps.add(myStatement.getColumnTextNativeString(detail));
+                }
+            } finally {
+                myStatement.dispose();
+            }
+            return steps;
+        }
+
+        /**
+         * NOTE: sqlite-connector does not expose sqlite3_get_autocommit,
+         * the transaction state is tracked from the executed statements.
+         */
+        @Override
+        boolean inTransaction() {
+            return transactionOpen;
+        }
+
+        @Override
+        void beginTransaction(boolean readOnly) throws Exception {
+            if (mydb == null) {
+                throw new Exception("database has been closed");
+            }
+            execute(readOnly ? "BEGIN DEFERRED" : "BEGIN IMMEDIATE");
+            transactionOpen = true;
+        }
+
+        @Override
+        void endTransaction(boolean commit) throws Exception {
+            // (a failed COMMIT leaves the transaction open)
+            execute(commit ? "COMMIT" : "ROLLBACK");
+            transactionOpen = false;
+        }
+
+        @Override
+        void execute(String sql) throws Exception {
+            SQLiteStatement myStatement = mydb.prepareStatement(sql);
+            try {
+                myStatement.step();
+            } finally {
+                myStatement.dispose();
+            }
+        }
+
+        @Override
+        void rollbackTo(String savepoint) throws Exception {
+            execute("ROLLBACK TO " + savepoint);
+        }
+
+        @Override
+        String queryValue(String sql) throws Exception {
+            SQLiteStatement myStatement = mydb.prepareStatement(sql);
+            try {
+                return myStatement.step() ? myStatement.getColumnTextNativeString(0) : null;
+            } finally {
+                myStatement.dispose();
+            }
+        }
+
         /**
          * Close a database (in the current thread).
          */
@@ -570,6 +1325,14 @@ public class SQLitePlugin extends ReactContextBaseJavaModule {
             }
         }
 
+        /**
+         * NOTE: the compiled statement cache is not supported by the NDK version
+         * since sqlite-connector does not expose sqlite3_reset/sqlite3_clear_bindings
+         * and a prepared statement cannot be re-bound after it was stepped.
+         */
+        @Override
+        void setStatementCacheSize(int size) { }
+
         /**
          * Ignore Android bug workaround for NDK version
          */
@@ -582,35 +1345,66 @@ public class SQLitePlugin extends ReactContextBaseJavaModule {
          * @param queryarr   Array of query strings
          * @param queryParams Array of JSON query parameters
          * @param queryIDs   Array of query ids
+         * @param queryFormats Array of requested result formats (may be null)
+         * @param queryBlobEncodings Array of requested BLOB encodings, ignored: sqlite-connector
+         *                   can only read BLOB columns as text
+         * @param atomic     Stop at the first failed statement (atomic batch of a group commit)
+         * @param readOnly   Batch of a read transaction, ignored: BEGIN is passed to SQLite as is
+         * @param cancellation cancellation signal of the request (may be null): sqlite-connector
+         *                   has no sqlite3_interrupt, a running query stops at its next row and
+         *                   the statements after it fail without being executed
+         * @param resultSerializer result serializer of the database
          * @param cbc        Callback context from Cordova API
+         * @return index of the first failed statement, -1 if all statements succeeded
          */
         @Override
-        void executeSqlBatch( String[] queryarr, ReadableArray[]  queryParams,
-                              String[] queryIDs, CallbackContext cbc) {
+        int executeSqlBatch( String[] queryarr, ReadableArray[]  queryParams,
+                              String[] queryIDs, ResultFormat[] queryFormats,
+                              SQLiteBlobEncoding[] queryBlobEncodings, boolean atomic,
+                              boolean readOnly, CancellationSignal cancellation,
+                              SQLiteResultSerializer resultSerializer, CallbackContext cbc) {
 
             if (mydb == null) {
                 // not allowed - can only happen if someone has closed (and possibly deleted) a database and then re-used the database
                 cbc.error("database has been closed");
-                return;
+                return 0;
             }
 
+            int failedIndex = -1;
+
             int len = queryarr.length;
-            WritableArray batchResults = Arguments.createArray();
+            SQLiteBatchResults batchResults = new SQLiteBatchResults(len);
+            boolean batchTraced = SQLiteTrace.begin("executeSqlBatch");
 
             for (int i = 0; i < len; i++) {
                 String query_id = queryIDs[i];
+                String query = queryarr[i];
+                QueryType queryType = SQLiteStatementInfo.getQueryType(query);
+                // (section named after the statement kind)
+                boolean traced = SQLiteTrace.begin(queryType.name());
+                long startedAt = System.nanoTime();
 
                 WritableMap queryResult = null;
+                SQLiteRowBuffer queryRows = null;
                 String errorMessage = "unknown";
 
                 try {
-                    String query = queryarr[i];
+                    if (cancellation != null) {
+                        cancellation.throwIfCanceled();
+                    }
+                    ReadableArray params = queryParams != null ? batchResults.resolveRefs(queryParams[i]) : null;
 
                     long lastTotal = mydb.getTotalChanges();
-                    queryResult = this.executeSqlStatementNDK(query, queryParams != null ? queryParams[i] : null, cbc);
+                    queryRows = this.executeSqlStatementNDK(query, queryType, params, cancellation, cbc);
+                    if (queryType == QueryType.begin) {
+                        transactionOpen = true;
+                    } else if (queryType == QueryType.commit || queryType == QueryType.rollback) {
+                        transactionOpen = false;
+                    }
                     long newTotal = mydb.getTotalChanges();
                     long rowsAffected = newTotal - lastTotal;
 
+                    queryResult = Arguments.createMap();
                     queryResult.putDouble("rowsAffected", rowsAffected);
                     if (rowsAffected > 0) {
                         long insertId = mydb.getLastInsertRowid();
@@ -618,123 +1412,273 @@ public class SQLitePlugin extends ReactContextBaseJavaModule {
                             queryResult.putDouble("insertId", insertId);
                         }
                     }
+                } catch (OperationCanceledException ex) {
+                    errorMessage = REQUEST_CANCELLED;
                 } catch (Exception ex) {
                     errorMessage = ex.getMessage();
                     FLog.e(TAG, "SQLitePlugin.executeSql[Batch]() failed", ex);
                 }
+                metrics.recordStatement(queryType, startedAt, queryResult == null, queryRows);
+                SQLiteTrace.end(traced);
+                logIfSlow(queryType, query, queryParams != null && queryParams[i] != null ? queryParams[i].size() : 0,
+                        startedAt, queryResult == null, queryRows);
+
+                if (queryResult != null) {
+                    batchResults.success(query_id, queryResult, queryRows,
+                            queryFormats != null ? queryFormats[i] : ResultFormat.rows,
+                            SQLiteBlobEncoding.base64);
+                } else {
+                    batchResults.error(query_id, errorMessage);
 
-                try {
-                    if (queryResult != null) {
-                        WritableMap r = Arguments.createMap();
-                        r.putString("qid", query_id);
-
-                        r.putString("type", "success");
-                        r.putMap("result", queryResult);
-
-                        batchResults.pushMap(r);
-                    } else {
-                        WritableMap r = Arguments.createMap();
-                        r.putString("qid", query_id);
-                        r.putString("type", "error");
-
-                        WritableMap er = Arguments.createMap();
-                        er.putString("message", errorMessage);
-                        r.putMap("result", er);
-
-                        batchResults.pushMap(r);
+                    if (failedIndex == -1) {
+                        failedIndex = i;
+                    }
+                    if (atomic) {
+                        break;
                     }
-                } catch (Exception ex) {
-                    FLog.e(TAG, "SQLitePlugin.executeSql[Batch]() failed", ex);
                 }
             }
 
-            cbc.success(batchResults);
+            SQLiteTrace.end(batchTraced);
+
+            resultSerializer.execute(batchResults.sendTo(cbc, metrics));
+            return failedIndex;
         }
 
         /**
          * Get rows results from query cursor.
          *
-         * @return results in string form
+         * @param queryType  kind of the query, for the metrics
+         * @return result rows, encoded later by the result serializer
+         * @throws OperationCanceledException if the request is cancelled meanwhile
+         * (checked every CANCEL_CHECK_ROWS rows)
          */
-        private WritableMap executeSqlStatementNDK(String query, ReadableArray queryArgs,
-                                                   CallbackContext cbc) throws Exception {
-            WritableMap rowsResult = Arguments.createMap();
+        private SQLiteRowBuffer executeSqlStatementNDK(String query, QueryType queryType, ReadableArray queryArgs,
+                                                       CancellationSignal cancellation,
+                                                       CallbackContext cbc) throws Exception {
+            SQLiteRowBuffer rows;
 
             boolean hasRows;
 
             SQLiteStatement myStatement = null;
+            // (open section: prepare, then read rows)
+            boolean traced = false;
             try {
                 try {
+                    traced = SQLiteTrace.begin("prepare");
+                    long compileStartedAt = System.nanoTime();
                     myStatement = mydb.prepareStatement(query);
-                    if (queryArgs != null) {
-                        for (int i = 0; i < queryArgs.size(); ++i) {
-                            ReadableType type = queryArgs.getType(i);
-                            if (type == ReadableType.Number){
-                                double tmp = queryArgs.getDouble(i);
-                                if (tmp == (long) tmp) {
-                                    myStatement.bindLong(i + 1, (long) tmp);
-                                } else {
-                                    myStatement.bindDouble(i + 1, tmp);
-                                }
-                            } else if (queryArgs.isNull(i)) {
-                                myStatement.bindNull(i + 1);
-                            } else {
-                                myStatement.bindTextNativeString(i + 1, SQLitePluginConverter.getString(queryArgs,i,""));
-                            }
-                        }
-                    }
+                    metrics.recordCompile(queryType, compileStartedAt);
+                    bindArgsNDK(myStatement, queryArgs);
+                    SQLiteTrace.end(traced);
 
+                    traced = SQLiteTrace.begin("read rows");
                     hasRows = myStatement.step();
                 } catch (Exception ex) {
                     FLog.e(TAG, "SQLitePlugin.executeSql[Batch]() failed", ex);
                     throw ex;
                 }
 
+                // (column names are known once prepared, also without rows)
+                int colCount = myStatement.getColumnCount();
+                String[] columnNames = new String[colCount];
+                for (int i = 0; i < colCount; ++i) {
+                    columnNames[i] = myStatement.getColumnName(i);
+                }
+                rows = new SQLiteRowBuffer(columnNames);
+
                 // If query result has rows
                 if (hasRows) {
-                    WritableArray rowsArrayResult = Arguments.createArray();
-                    String key;
-                    int colCount = myStatement.getColumnCount();
-
-                    // Build up JSON result object for each row
                     do {
-                        WritableMap row = Arguments.createMap();
                         for (int i = 0; i < colCount; ++i) {
-                            key = myStatement.getColumnName(i);
-
                             switch (myStatement.getColumnType(i)) {
                                 case SQLColumnType.NULL:
-                                    row.putNull(key);
+                                    rows.addNull();
                                     break;
 
                                 case SQLColumnType.REAL:
-                                    row.putDouble(key, myStatement.getColumnDouble(i));
+                                    rows.addDouble(myStatement.getColumnDouble(i));
                                     break;
 
                                 case SQLColumnType.INTEGER:
-                                    row.putDouble(key, myStatement.getColumnLong(i));
+                                    rows.addLong(myStatement.getColumnLong(i));
                                     break;
 
                                 case SQLColumnType.BLOB:
                                 case SQLColumnType.TEXT:
                                 default:
-                                    row.putString(key, myStatement.getColumnTextNativeString(i));
+                                    rows.addString(myStatement.getColumnTextNativeString(i));
                             }
-
                         }
-
-                        rowsArrayResult.pushMap(row);
+                        rows.endRow();
+                        if (cancellation != null && rows.getRowCount() % CANCEL_CHECK_ROWS == 0) {
+                            cancellation.throwIfCanceled();
+                        }
                     } while (myStatement.step());
-
-                    rowsResult.putArray("rows", rowsArrayResult);
                 }
             } finally {
+                SQLiteTrace.end(traced);
                 if (myStatement != null) {
                     myStatement.dispose();
                 }
             }
 
-            return rowsResult;
+            return rows;
+        }
+
+        /**
+         * Executes one statement for many parameter rows (in the current thread).
+         *
+         * NOTE: sqlite-connector does not expose sqlite3_reset, so the statement is
+         * prepared again for every row. Bridge traffic and result encoding are
+         * still done once for all rows.
+         */
+        @Override
+        WritableMap executeMany(String query, ReadableArray rows, boolean returnInsertIds) throws Exception {
+            if (mydb == null) {
+                throw new Exception("database has been closed");
+            }
+
+            int rowCount = rows == null ? 0 : rows.size();
+            boolean isInsert = SQLiteStatementInfo.getQueryType(query) == QueryType.insert;
+            boolean ownTransaction = !transactionOpen;
+
+            long rowsAffected = 0;
+            long firstInsertId = -1;
+            long lastInsertId = -1;
+            int i = 0;
+
+            try {
+                if (ownTransaction) {
+                    execute("BEGIN");
+                }
+                try {
+                    for (; i < rowCount; i++) {
+                        long lastTotal = mydb.getTotalChanges();
+                        SQLiteStatement myStatement = mydb.prepareStatement(query);
+                        try {
+                            bindArgsNDK(myStatement, rows.getArray(i));
+                            myStatement.step();
+                        } finally {
+                            myStatement.dispose();
+                        }
+                        long changes = mydb.getTotalChanges() - lastTotal;
+                        rowsAffected += changes;
+                        if (changes > 0 && returnInsertIds && isInsert) {
+                            long insertId = mydb.getLastInsertRowid();
+                            if (firstInsertId == -1) {
+                                firstInsertId = insertId;
+                            }
+                            lastInsertId = insertId;
+                        }
+                    }
+                    if (ownTransaction) {
+                        execute("COMMIT");
+                        ownTransaction = false;
+                    }
+                } finally {
+                    if (ownTransaction) {
+                        execute("ROLLBACK");
+                    }
+                }
+            } catch (Exception ex) {
+                FLog.e(TAG, "SQLitePlugin.executeMany() failed at row " + i, ex);
+                throw new Exception("row " + i + ": " + ex.getMessage());
+            }
+
+            return manyResult(rowCount, rowsAffected, firstInsertId, lastInsertId);
+        }
+
+        /**
+         * Open a result cursor which is read in chunks by the db thread.
+         */
+        @Override
+        SQLiteResultCursor openCursor(int cursorId, String query, ReadableArray queryArgs,
+                                      boolean readAhead, SQLiteBlobEncoding blobEncoding) throws Exception {
+            if (mydb == null) {
+                throw new Exception("database has been closed");
+            }
+
+            final SQLiteStatement myStatement = mydb.prepareStatement(query);
+            try {
+                bindArgsNDK(myStatement, queryArgs);
+            } catch (Exception ex) {
+                myStatement.dispose();
+                throw ex;
+            }
+
+            return new SQLiteResultCursor(cursorId, readAhead) {
+                private String[] columnNames;
+
+                @Override
+                String[] getColumnNames() throws Exception {
+                    if (columnNames == null) {
+                        int colCount = myStatement.getColumnCount();
+                        columnNames = new String[colCount];
+                        for (int i = 0; i < colCount; ++i) {
+                            columnNames[i] = myStatement.getColumnName(i);
+                        }
+                    }
+                    return columnNames;
+                }
+
+                @Override
+                boolean step() throws Exception {
+                    return myStatement.step();
+                }
+
+                @Override
+                Object getValue(int i) throws Exception {
+                    switch (myStatement.getColumnType(i)) {
+                        case SQLColumnType.NULL:
+                            return null;
+
+                        case SQLColumnType.REAL:
+                            return myStatement.getColumnDouble(i);
+
+                        case SQLColumnType.INTEGER:
+                            return (double) myStatement.getColumnLong(i);
+
+                        case SQLColumnType.BLOB:
+                        case SQLColumnType.TEXT:
+                        default:
+                            return myStatement.getColumnTextNativeString(i);
+                    }
+                }
+
+                @Override
+                void closeNow() {
+                    try {
+                        myStatement.dispose();
+                    } catch (Exception ex) {
+                        FLog.e(TAG, "couldn't dispose cursor statement, ignoring", ex);
+                    }
+                }
+            };
+        }
+
+        private void bindArgsNDK(SQLiteStatement myStatement, ReadableArray queryArgs) throws Exception {
+            if (queryArgs == null)
+                return;
+
+            for (int i = 0; i < queryArgs.size(); ++i) {
+                ReadableType type = queryArgs.getType(i);
+                if (type == ReadableType.Number){
+                    double tmp = queryArgs.getDouble(i);
+                    if (tmp == (long) tmp) {
+                        myStatement.bindLong(i + 1, (long) tmp);
+                    } else {
+                        myStatement.bindDouble(i + 1, tmp);
+                    }
+                } else if (queryArgs.isNull(i)) {
+                    myStatement.bindNull(i + 1);
+                } else if (SQLiteBlobEncoding.getBlob(queryArgs, i) != null) {
+                    // sqlite-connector has no sqlite3_bind_blob
+                    throw new Exception("BLOB parameters are not supported by the NDK implementation");
+                } else {
+                    myStatement.bindTextNativeString(i + 1, SQLitePluginConverter.getString(queryArgs,i,""));
+                }
+            }
         }
     }
 
@@ -743,9 +1687,50 @@ public class SQLitePlugin extends ReactContextBaseJavaModule {
         private String assetFilename;
         private boolean oldImpl;
         private boolean androidLockWorkaround;
+        private int statementCacheSize;
         final int openFlags;
-        final BlockingQueue<DBQuery> q;
+        final SQLitePriorityQueue<DBQuery> q;
         final CallbackContext openCbc;
+        final Map<Integer, SQLiteResultCursor> cursors = new HashMap<>();
+
+        // WAL reader connection pool, all readers take from the reader lane rq:
+        final int readerPoolSize;
+        final BlockingQueue<DBQuery> rq;
+        final List<ReaderRunner> readers = new ArrayList<>();
+        final List<String> attachStatements = new CopyOnWriteArrayList<>();
+        final SQLiteQueueStats writerStats = new SQLiteQueueStats("writer");
+        final SQLiteQueueStats readerStats = new SQLiteQueueStats("reader");
+        // requests with a request ID, from being queued until they have run, see cancel():
+        final Set<DBQuery> cancellable = Collections.newSetFromMap(new ConcurrentHashMap<DBQuery, Boolean>());
+        final SQLitePerformanceProfile performanceProfile;
+        final SQLiteQueryCursor.Settings cursorSettings;
+        final SQLiteResultSerializer resultSerializer = new SQLiteResultSerializer(getThreadPool());
+        final SQLiteMetrics metrics = new SQLiteMetrics();
+        // begin of the transaction left open by a batch (BEGIN sent by JS), for the metrics:
+        private long transactionStartedAt;
+        // versioned migrations run at open time, see SQLiteAndroidDatabase.migrate():
+        final ReadableArray migrations;
+        // bound of the waiting requests, null for unbounded queues:
+        final SQLiteQueueLimit queueLimit;
+        // requests waiting for room under the block policy, in order, see submit():
+        private final ArrayDeque<DBQuery> blocked = new ArrayDeque<>();
+        // null unless requested by the open options:
+        final SQLiteSlowQueryLog slowQueryLog;
+        final SQLiteIoStats ioStats;
+        volatile boolean readersActive;
+        volatile boolean inTransaction;
+        // reader in a read transaction (JS sends them one at a time), see ReaderRunner.pin():
+        volatile ReaderRunner pinnedReader;
+
+        // group commit of atomic batches:
+        final int groupCommitMaxBatches;
+        final long groupCommitMaxDelayNanos;
+        private DBQuery heldOver;
+
+        // scheduler mode, see start():
+        private SQLiteScheduler.Worker worker;
+        private boolean drainScheduled;
+        private volatile boolean finished;
 
         SQLiteAndroidDatabase mydb;
 
@@ -767,41 +1752,815 @@ public class SQLitePlugin extends ReactContextBaseJavaModule {
             this.androidLockWorkaround = this.oldImpl && SQLitePluginConverter.getBoolean(options,"androidLockWorkaround",false);
             if (this.androidLockWorkaround)
                 FLog.i(TAG, "Android db closing/locking workaround applied");
-
-            this.q = new LinkedBlockingQueue<>();
+            this.statementCacheSize = SQLitePluginConverter.getInt(options,"statementCacheSize",0);
+            if (this.oldImpl && this.statementCacheSize > 0)
+                FLog.i(TAG, "Compiled statement cache enabled, size: " + this.statementCacheSize);
+            this.readerPoolSize = SQLitePluginConverter.getInt(options,"readerPoolSize",0);
+            this.rq = new LinkedBlockingQueue<>();
+            this.performanceProfile = SQLitePerformanceProfile.fromOptions(options);
+            this.cursorSettings = new SQLiteQueryCursor.Settings(SQLitePluginConverter.getInt(options,"cursorWindowSize",0));
+            if (this.oldImpl && this.cursorSettings.windowSize > 0)
+                FLog.i(TAG, "Cursor window size: " + this.cursorSettings.windowSize);
+
+            Object groupCommit = SQLitePluginConverter.get(options,"groupCommit",null);
+            if (groupCommit instanceof ReadableMap) {
+                this.groupCommitMaxBatches = Math.max(1, SQLitePluginConverter.getInt((ReadableMap) groupCommit,"maxBatches",GROUP_COMMIT_MAX_BATCHES));
+                this.groupCommitMaxDelayNanos = TimeUnit.MILLISECONDS.toNanos(SQLitePluginConverter.getInt((ReadableMap) groupCommit,"maxDelayMs",0));
+            } else {
+                this.groupCommitMaxBatches = Boolean.TRUE.equals(groupCommit) ? GROUP_COMMIT_MAX_BATCHES : 1;
+                this.groupCommitMaxDelayNanos = 0;
+            }
+            if (this.groupCommitMaxBatches > 1)
+                FLog.i(TAG, "Group commit enabled, max batches: " + this.groupCommitMaxBatches);
+
+            this.migrations = (ReadableArray) SQLitePluginConverter.get(options,"migrations",null);
+
+            this.queueLimit = SQLiteQueueLimit.fromOptions(options);
+            if (this.queueLimit != null)
+                FLog.i(TAG, "Queue limit: " + this.queueLimit.maxRequests + " requests, " + this.queueLimit.maxBytes
+                        + " bytes, policy: " + this.queueLimit.policy);
+
+            this.slowQueryLog = SQLiteSlowQueryLog.fromOptions(options);
+            if (this.slowQueryLog != null)
+                FLog.i(TAG, "Slow query log: " + TimeUnit.NANOSECONDS.toMillis(this.slowQueryLog.thresholdNanos) + " ms, "
+                        + this.slowQueryLog.maxEntries + " entries");
+
+            this.ioStats = SQLiteIoStats.fromOptions(options);
+            if (this.ioStats != null)
+                FLog.i(TAG, "I/O stats enabled");
+
+            this.q = new SQLitePriorityQueue<>();
             this.openCbc = cbc;
         }
 
-        public void run() {
+        /**
+         * Put a batch in the writer queue or, when the reader pool is running, in the reader lane.
+         *
+         * @param dbq        The batch
+         * @param readOnly   Batch of a read transaction (marked by JS)
+         * @param pureRead   Batch consists of read-only statements only
+         */
+        void enqueue(DBQuery dbq, boolean readOnly, boolean pureRead) throws InterruptedException {
+            ReaderRunner reader = pinnedReader;
+            if (readOnly && reader != null && dbq.action == Action.executeSqlBatch) {
+                // next batch of the read transaction open on a reader, so it reads the same snapshot:
+                queued(dbq);
+                reader.pinned.put(dbq);
+            } else if (readersActive && (readOnly || (pureRead && !inTransaction))) {
+                // plain reads must see uncommitted writes of an open transaction, so they only
+                // go to the readers while the writer is not in a transaction:
+                queued(dbq);
+                rq.put(dbq);
+            } else {
+                post(dbq);
+            }
+        }
+
+        /**
+         * Put a request in the writer queue.
+         */
+        void post(DBQuery dbq) throws InterruptedException {
+            queued(dbq);
+            q.put(dbq);
+            if (worker != null) {
+                schedule();
+            }
+        }
+
+        /**
+         * A request is put in a queue: it can be cancelled (if it has a request ID) and
+         * its queue wait slice begins (when tracing), see release().
+         */
+        private void queued(DBQuery dbq) {
+            if (dbq.requestId != null) {
+                cancellable.add(dbq);
+            }
+            if (!dbq.stop && SQLiteTrace.isEnabled()) {
+                dbq.traceName = dbname + " " + dbq.action + (dbq.requestId != null ? " " + dbq.requestId : "");
+                dbq.traceCookie = SQLiteTrace.beginAsync(dbq.traceName);
+            }
+        }
+
+        /**
+         * @return true while requests are queued or the writer has a transaction open
+         */
+        boolean isBusy() {
+            return inTransaction || q.size() > 0 || !rq.isEmpty();
+        }
+
+        /**
+         * Cancel the requests with the given request ID. A queued request is removed from
+         * its queue, a running one is interrupted: its running query is stopped and the
+         * statements after it are not executed. Their callbacks get a "request cancelled" error.
+         *
+         * @return number of requests cancelled
+         */
+        int cancel(String requestId) {
+            int count = 0;
+            for (DBQuery dbq : cancellable) {
+                if (!requestId.equals(dbq.requestId)) {
+                    continue;
+                }
+                dbq.cancellation.cancel();
+                // (a request already taken from its queue sees the signal)
+                if (q.remove(dbq) || rq.remove(dbq) || unblock(dbq)) {
+                    release(dbq);
+                    cancellable.remove(dbq);
+                    dbq.cbc.error(REQUEST_CANCELLED);
+                }
+                count++;
+            }
+            return count;
+        }
+
+        /**
+         * Queue a request (see enqueue()) under the queue limit of the open options (if any).
+         * With the block policy a request finding no room is kept in the blocked requests,
+         * in order, until release() makes room for it or blockTimeoutMs is over: the calling
+         * thread never waits for room.
+         *
+         * @param dbq        The request
+         * @param args       Its arguments, for their estimated size
+         * @param readOnly   Batch of a read transaction (marked by JS)
+         * @param pureRead   Batch consists of read-only statements only
+         */
+        void submit(DBQuery dbq, ReadableMap args, boolean readOnly, boolean pureRead) throws InterruptedException {
+            if (queueLimit == null) {
+                enqueue(dbq, readOnly, pureRead);
+                return;
+            }
+            dbq.queuedBytes = queueLimit.isByteLimited() ? SQLiteQueueLimit.estimateSize(args) : 0;
+            // (a synchronous request fails right away instead, its result is awaited on the JS thread)
+            if (queueLimit.policy == SQLiteQueueLimit.Policy.block && !dbq.cbc.synchronous) {
+                synchronized (blocked) {
+                    // behind the requests already blocked, to keep the order:
+                    if (!blocked.isEmpty() || !queueLimit.acquire(dbq.queuedBytes)) {
+                        block(dbq, readOnly, pureRead);
+                        return;
+                    }
+                    dbq.admitted = true;
+                    enqueue(dbq, readOnly, pureRead);
+                }
+                return;
+            }
+            while (!queueLimit.acquire(dbq.queuedBytes)) {
+                if (queueLimit.policy != SQLiteQueueLimit.Policy.dropOldestRead || !dropOldestRead()) {
+                    queueLimit.rejected();
+                    dbq.cbc.error(SQLiteQueueLimit.QUEUE_FULL);
+                    return;
+                }
+            }
+            dbq.admitted = true;
+            enqueue(dbq, readOnly, pureRead);
+        }
+
+        /**
+         * Keep a request waiting for room (block policy), it fails once blockTimeoutMs is over.
+         * Called with the blocked requests locked.
+         */
+        private void block(final DBQuery dbq, boolean readOnly, boolean pureRead) {
+            dbq.blockedReadOnly = readOnly;
+            dbq.blockedPureRead = pureRead;
+            if (dbq.requestId != null) {
+                cancellable.add(dbq);
+            }
+            blocked.add(dbq);
+            dbq.blockTimeout = queueLimit.scheduleTimeout(new Runnable() {
+                @Override
+                public void run() {
+                    if (unblock(dbq)) {
+                        done(dbq);
+                        queueLimit.rejected();
+                        dbq.cbc.error(SQLiteQueueLimit.QUEUE_FULL);
+                        // (the requests behind it may fit)
+                        admitBlocked();
+                    }
+                }
+            });
+        }
+
+        /**
+         * Queue the blocked requests which fit in the queues now, in order.
+         */
+        private void admitBlocked() {
+            synchronized (blocked) {
+                DBQuery dbq;
+                while ((dbq = blocked.peek()) != null && queueLimit.acquire(dbq.queuedBytes)) {
+                    blocked.poll();
+                    dbq.blockTimeout.cancel(false);
+                    dbq.admitted = true;
+                    try {
+                        enqueue(dbq, dbq.blockedReadOnly, dbq.blockedPureRead);
+                    } catch (InterruptedException ex) {
+                        FLog.e(TAG, "couldn't add to queue", ex);
+                        release(dbq);
+                        done(dbq);
+                        dbq.cbc.error("couldn't add to queue");
+                    }
+                }
+            }
+        }
+
+        /**
+         * Take a request out of the blocked requests (block policy).
+         *
+         * @return false if it is not blocked (anymore)
+         */
+        private boolean unblock(DBQuery dbq) {
+            synchronized (blocked) {
+                if (!blocked.remove(dbq)) {
+                    return false;
+                }
+                dbq.blockTimeout.cancel(false);
+                return true;
+            }
+        }
+
+        /**
+         * Fail the requests still blocked when the database is closed (block policy).
+         */
+        private void failBlocked() {
+            synchronized (blocked) {
+                for (DBQuery dbq : blocked) {
+                    dbq.blockTimeout.cancel(false);
+                    done(dbq);
+                    dbq.cbc.error("database not open");
+                }
+                blocked.clear();
+            }
+        }
+
+        /**
+         * Give back the room of a request taken from (or removed from) the queues
+         * and end its queue wait slice.
+         */
+        void release(DBQuery dbq) {
+            if (dbq.traceCookie != 0) {
+                SQLiteTrace.endAsync(dbq.traceName, dbq.traceCookie);
+                dbq.traceCookie = 0;
+            }
+            if (dbq.admitted) {
+                dbq.admitted = false;
+                queueLimit.release(dbq.queuedBytes);
+                if (queueLimit.policy == SQLiteQueueLimit.Policy.block) {
+                    admitBlocked();
+                }
+            }
+        }
+
+        /**
+         * Drop the read request waiting longest in the queues (dropOldestRead policy).
+         *
+         * @return false if there is none
+         */
+        private boolean dropOldestRead() {
+            DBQuery oldest = q.peekOldestRead();
+            // (the reader lane only holds reads)
+            DBQuery read = rq.peek();
+            if (read != null && !read.stop && (oldest == null || read.enqueuedAt - oldest.enqueuedAt < 0)) {
+                oldest = read;
+            }
+            if (oldest == null) {
+                return false;
+            }
+            // (unless a connection has taken it meanwhile)
+            if (q.remove(oldest) || rq.remove(oldest)) {
+                release(oldest);
+                done(oldest);
+                queueLimit.dropped();
+                oldest.cbc.error("request dropped: " + SQLiteQueueLimit.QUEUE_FULL);
+            }
+            return true;
+        }
+
+        /**
+         * @return depth of the queues, with the queue limit (if any) its bounds and counters
+         */
+        WritableMap getQueueStatus() {
+            if (queueLimit != null) {
+                WritableMap status = queueLimit.toMap();
+                synchronized (blocked) {
+                    status.putInt("blocked", blocked.size());
+                }
+                return status;
+            }
+            WritableMap status = Arguments.createMap();
+            status.putInt("depth", q.size() + rq.size());
+            status.putDouble("rejected", 0);
+            status.putDouble("dropped", 0);
+            return status;
+        }
+
+        /**
+         * @return the metrics of the database with its queue wait, queue status,
+         * statement cache and cursor window counters and its I/O (if accounted)
+         */
+        WritableMap getStats() {
+            WritableMap queueWait = Arguments.createMap();
+            queueWait.putMap("writer", writerStats.toMap());
+            queueWait.putMap("reader", readerStats.toMap());
+            queueWait.putMap("interactive", q.interactiveStats.toMap());
+            queueWait.putMap("background", q.backgroundStats.toMap());
+
+            WritableMap stats = metrics.toMap();
+            stats.putMap("queueWait", queueWait);
+            stats.putMap("queue", getQueueStatus());
+            SQLiteAndroidDatabase db = mydb;
+            if (db != null) {
+                SQLiteStatementCache statementCache = db.statementCache;
+                WritableMap cache = Arguments.createMap();
+                cache.putInt("maxSize", statementCache.getMaxSize());
+                cache.putDouble("hits", statementCache.getHitCount());
+                cache.putDouble("misses", statementCache.getMissCount());
+                cache.putDouble("evictions", statementCache.getEvictionCount());
+                stats.putMap("statementCache", cache);
+            }
+            stats.putDouble("cursorWindowRefills", cursorSettings.getWindowRefills());
+            if (ioStats != null) {
+                stats.putMap("io", ioStats.toMap());
+            }
+            return stats;
+        }
+
+        void resetStats() {
+            metrics.reset();
+            writerStats.reset();
+            readerStats.reset();
+            q.interactiveStats.reset();
+            q.backgroundStats.reset();
+            SQLiteAndroidDatabase db = mydb;
+            if (db != null) {
+                db.statementCache.resetCounts();
+            }
+            cursorSettings.resetWindowRefills();
+            if (queueLimit != null) {
+                queueLimit.resetCounters();
+            }
+            if (slowQueryLog != null) {
+                slowQueryLog.clear();
+            }
+            if (ioStats != null) {
+                ioStats.reset();
+            }
+        }
+
+        /**
+         * @return the slow query log entries, oldest first (none without a slow query log)
+         */
+        WritableArray getSlowQueries() {
+            return slowQueryLog != null ? slowQueryLog.toArray() : Arguments.createArray();
+        }
+
+        /**
+         * Drop a request taken from a queue if it has been cancelled or is past its deadline.
+         *
+         * @return true if the request was dropped, its callback got the error
+         */
+        boolean dropExpired(DBQuery dbq) {
+            String error;
+            if (dbq.cancellation != null && dbq.cancellation.isCanceled()) {
+                error = REQUEST_CANCELLED;
+            } else if (dbq.deadline != 0 && System.nanoTime() - dbq.deadline > 0) {
+                error = REQUEST_CANCELLED + ": deadline exceeded";
+            } else {
+                return false;
+            }
+            done(dbq);
+            dbq.cbc.error(error);
+            return true;
+        }
+
+        /**
+         * A request has run, it can no longer be cancelled.
+         */
+        void done(DBQuery dbq) {
+            if (dbq.requestId != null) {
+                cancellable.remove(dbq);
+            }
+        }
+
+        /**
+         * Run the database on a worker of the scheduler: open it, then drain the writer
+         * queue whenever requests arrive.
+         */
+        void start(SQLiteScheduler.Worker worker) {
+            this.worker = worker;
+            worker.execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (!openWriter()) {
+                        finished = true;
+                        scheduler.release(DBRunner.this.worker);
+                    }
+                }
+            });
+            // (requests posted during the open are drained after it)
+            schedule();
+        }
+
+        private synchronized void schedule() {
+            if (!drainScheduled) {
+                drainScheduled = true;
+                worker.execute(drain);
+            }
+        }
+
+        /**
+         * @return the next request of the writer queue without waiting, null if there is none
+         */
+        private synchronized DBQuery poll() {
+            DBQuery dbq = heldOver;
+            if (dbq != null) {
+                heldOver = null;
+                return dbq;
+            }
+            dbq = q.poll();
+            if (dbq == null) {
+                drainScheduled = false;
+            }
+            return dbq;
+        }
+
+        /**
+         * Execute the requests of the writer queue until it is empty (scheduler mode,
+         * in the worker thread), taking turns with the other databases of the worker.
+         */
+        private final Runnable drain = new Runnable() {
+            @Override
+            public void run() {
+                int turn = 0;
+                // (with too many results waiting to be delivered the turn ends, still scheduled)
+                while (finished || resultSerializer.hasRoom(resume)) {
+                    DBQuery dbq = poll();
+                    if (dbq == null) {
+                        return;
+                    }
+                    if (finished) {
+                        // (database failed to open or is closed)
+                        reject(dbq);
+                        continue;
+                    }
+                    if (dbq.stop) {
+                        finished = true;
+                        finishAsync(dbq);
+                        continue;
+                    }
+                    try {
+                        executeRequest(dbq);
+                    } catch (Exception ex) {
+                        FLog.e(TAG, "unexpected error", ex);
+                    }
+                    // (still scheduled, the rest of the queue is drained in the next turn)
+                    if (++turn == SQLiteScheduler.MAX_TURN_REQUESTS && worker.tryExecute(this)) {
+                        return;
+                    }
+                }
+            }
+        };
+
+        /**
+         * Next turn of a drain which ended on undelivered results, see SQLiteResultSerializer.hasRoom().
+         */
+        private final Runnable resume = new Runnable() {
+            @Override
+            public void run() {
+                worker.tryExecute(drain);
+            }
+        };
+
+        /**
+         * Fail a request left in the writer queue of a database which failed to open or
+         * is closed (scheduler mode).
+         */
+        private void reject(DBQuery dbq) {
+            release(dbq);
+            done(dbq);
+            if (dbq.cbc != null) {
+                dbq.cbc.error("database not open");
+            }
+        }
+
+        /**
+         * Apply the performance profile of the open options (if any) to the writer connection.
+         *
+         * @return the settings in effect, null without a performance profile
+         */
+        private WritableMap applyPerformanceProfile() {
+            if (this.performanceProfile == null) {
+                return null;
+            }
+            return this.performanceProfile.apply(profileConnection(this.mydb));
+        }
+
+        /**
+         * @return the next request of the writer queue, a request held over by the group commit goes first
+         */
+        private DBQuery take() throws InterruptedException {
+            DBQuery dbq = heldOver;
+            if (dbq != null) {
+                heldOver = null;
+                return dbq;
+            }
+            return q.take();
+        }
+
+        /**
+         * Execute an atomic batch together with the atomic batches already waiting
+         * behind it (group commit).
+         *
+         * All batches of the group share one transaction, each batch runs within its own
+         * savepoint so a failed batch is rolled back without affecting the others. The
+         * results are only sent after the shared commit.
+         */
+        private void executeAtomicGroup(DBQuery first) throws InterruptedException {
+            List<DBQuery> group = new ArrayList<>();
+            group.add(first);
+            long deadline = System.nanoTime() + groupCommitMaxDelayNanos;
+            while (group.size() < groupCommitMaxBatches) {
+                // (a worker of the scheduler is shared, only batches already waiting join the group)
+                long wait = worker == null ? deadline - System.nanoTime() : 0;
+                DBQuery next = wait > 0 ? q.poll(wait, TimeUnit.NANOSECONDS) : q.poll();
+                if (next == null) {
+                    break;
+                }
+                if (!next.atomic) {
+                    // keep the queue order, the request is executed after the group:
+                    heldOver = next;
+                    break;
+                }
+                writerStats.record(next.enqueuedAt);
+                release(next);
+                if (!dropExpired(next)) {
+                    group.add(next);
+                }
+            }
+
+            List<DeferredResult> results = new ArrayList<>(group.size());
+            for (int i = 0; i < group.size(); i++) {
+                results.add(new DeferredResult());
+            }
+            String groupError = null;
+            // (the group joins a transaction left open by a plain batch)
+            boolean outer = !mydb.inTransaction();
+            boolean traced = SQLiteTrace.begin("group commit");
+            long startedAt = System.nanoTime();
+            try {
+                if (outer) {
+                    mydb.execute("BEGIN");
+                }
+                try {
+                    for (int i = 0; i < group.size(); i++) {
+                        DBQuery dbq = group.get(i);
+                        DeferredResult result = results.get(i);
+                        mydb.execute("SAVEPOINT " + GROUP_SAVEPOINT);
+                        if (mydb.executeSqlBatch(dbq.queries, dbq.queryParams, dbq.queryIDs, dbq.queryFormats,
+                                dbq.queryBlobEncodings, true, false, dbq.cancellation, resultSerializer, result.cbc) != -1) {
+                            mydb.rollbackTo(GROUP_SAVEPOINT);
+                        }
+                        mydb.execute("RELEASE " + GROUP_SAVEPOINT);
+                    }
+                    if (outer) {
+                        mydb.execute("COMMIT");
+                    }
+                } catch (Exception ex) {
+                    if (outer) {
+                        try {
+                            mydb.execute("ROLLBACK");
+                        } catch (Exception ignore) { }
+                    }
+                    throw ex;
+                }
+            } catch (Exception ex) {
+                FLog.e(TAG, "group commit failed", ex);
+                groupError = "group commit failed: " + ex.getMessage();
+            }
+            SQLiteTrace.end(traced);
+            if (outer) {
+                metrics.recordTransaction(startedAt, groupError == null);
+            }
+            inTransaction = mydb.inTransaction();
+
+            // (queued behind the encoding of the results)
+            for (int i = 0; i < group.size(); i++) {
+                done(group.get(i));
+                resultSerializer.execute(results.get(i).deliverTo(group.get(i).cbc, groupError));
+            }
+            if (group.size() > 1) {
+                FLog.v(TAG, "group commit of " + group.size() + " batches for db " + dbname);
+            }
+        }
+
+        private void startReaders() {
+            boolean walEnabled = false;
             try {
-                this.mydb = openDatabase(dbname, this.assetFilename, this.openFlags, this.openCbc, this.oldImpl);
+                walEnabled = this.mydb.enableWriteAheadLogging();
+            } catch (Exception ex) {
+                FLog.e(TAG, "couldn't enable WAL for db: " + dbname, ex);
+            }
+            if (!walEnabled) {
+                FLog.w(TAG, "WAL is not available for db: " + dbname + ", reader pool disabled");
+                return;
+            }
+
+            for (int i = 0; i < readerPoolSize; i++) {
+                ReaderRunner reader = new ReaderRunner(this, this.mydb.dbFile, this.oldImpl);
+                readers.add(reader);
+                getThreadPool().execute(reader);
+            }
+            readersActive = true;
+            FLog.i(TAG, "Reader connection pool started, size: " + readerPoolSize);
+        }
+
+        private void stopReaders() {
+            readersActive = false;
+            try {
+                for (ReaderRunner reader : readers) {
+                    rq.put(new DBQuery());
+                    // (a reader in a read transaction takes from its own queue)
+                    reader.pinned.put(new DBQuery());
+                }
+                for (ReaderRunner reader : readers) {
+                    reader.stopped.await();
+                }
+            } catch (InterruptedException ex) {
+                FLog.e(TAG, "interrupted while stopping reader connections", ex);
+            }
+            readers.clear();
+            FLog.v(TAG, "queue wait for db " + dbname + ": " + writerStats + ", " + readerStats
+                    + ", " + q.interactiveStats + ", " + q.backgroundStats
+                    + (queueLimit != null ? ", queue limit: " + queueLimit : ""));
+        }
+
+        /**
+         * Open the writer connection and send the open result (in the db thread).
+         *
+         * @return false if the database could not be opened
+         */
+        private boolean openWriter() {
+            try {
+                this.mydb = openDatabase(dbname, this.assetFilename, this.openFlags, this.oldImpl);
+                this.mydb.setStatementCacheSize(this.statementCacheSize);
+                this.mydb.setCursorSettings(this.cursorSettings);
+                this.mydb.setMetrics(this.metrics);
+                this.mydb.setSlowQueryLog(this.slowQueryLog);
+                WritableMap performance = applyPerformanceProfile();
+                int userVersion = 0;
+                if (this.migrations != null) {
+                    try {
+                        userVersion = this.mydb.migrate(this.migrations);
+                    } catch (Exception ex) {
+                        closeDatabaseNow(dbname);
+                        throw ex;
+                    }
+                }
+                if (this.readerPoolSize > 0 && this.mydb.openFlags != SQLiteOpenFlags.READONLY) {
+                    startReaders();
+                }
+
+                if (this.openCbc != null) {
+                    if (performance == null && this.migrations == null) {
+                        this.openCbc.success("database open");
+                    } else {
+                        WritableMap result = Arguments.createMap();
+                        result.putString("message", "database open");
+                        if (performance != null) {
+                            result.putMap("performance", performance);
+                        }
+                        if (this.migrations != null) {
+                            result.putInt("userVersion", userVersion);
+                        }
+                        this.openCbc.success(result);
+                    }
+                }
             } catch (Exception ex) {
                 FLog.e(TAG, "Error opening database, stopping db thread", ex);
                 if (this.openCbc != null) {
                     this.openCbc.error("Can't open database." + ex);
                 }
                 dbrmap.remove(dbname);
-                return;
+                return false;
             }
 
-            DBQuery dbq = null;
+            return true;
+        }
 
+        /**
+         * Execute a request of the writer queue (in the db thread).
+         */
+        private void executeRequest(DBQuery dbq) throws Exception {
+            writerStats.record(dbq.enqueuedAt);
+            release(dbq);
+            if (dropExpired(dbq)) {
+                return;
+            }
+            boolean traced = SQLiteTrace.begin(dbq.action.name(), dbq.requestId);
+            SQLiteIoStats.Sample ioBefore = ioStats != null ? ioStats.begin() : null;
             try {
-                dbq = q.take();
+                executeRequestNow(dbq);
+            } finally {
+                if (ioBefore != null) {
+                    ioStats.end(ioBefore);
+                }
+                SQLiteTrace.end(traced);
+                done(dbq);
+            }
+        }
 
-                while (!dbq.stop) {
-                    mydb.executeSqlBatch(dbq.queries, dbq.queryParams, dbq.queryIDs, dbq.cbc);
+        private void executeRequestNow(DBQuery dbq) throws Exception {
+            if (dbq.action == Action.executeTransaction) {
+                executeTransaction(mydb, dbq.queries, dbq.queryParams, dbq.queryIDs, dbq.queryFormats,
+                        dbq.queryBlobEncodings, dbq.readOnly, dbq.cancellation, resultSerializer, dbq.cbc);
+                return;
+            }
 
-                    // NOTE: androidLock[Bug]Workaround is not necessary and IGNORED for sqlite4java (NDK version).
-                    if (this.androidLockWorkaround && dbq.queries.length == 1 && dbq.queries[0].equals("COMMIT"))
-                        mydb.bugWorkaround();
+            if (dbq.action != Action.executeSqlBatch) {
+                executeAction(this, dbq.action, dbq.args, dbq.cbc);
+                return;
+            }
+
+            if (dbq.atomic) {
+                executeAtomicGroup(dbq);
+                return;
+            }
 
-                    dbq = q.take();
+            long startedAt = System.nanoTime();
+            mydb.executeSqlBatch(dbq.queries, dbq.queryParams, dbq.queryIDs, dbq.queryFormats, dbq.queryBlobEncodings, false, dbq.readOnly, dbq.cancellation, resultSerializer, dbq.cbc);
+            boolean wasInTransaction = inTransaction;
+            inTransaction = mydb.inTransaction();
+            recordTransaction(dbq, wasInTransaction, startedAt);
+
+            // NOTE: androidLock[Bug]Workaround is not necessary and IGNORED for sqlite4java (NDK version).
+            if (this.androidLockWorkaround && dbq.queries.length == 1 && dbq.queries[0].equals("COMMIT")) {
+                closeCursors(this);
+                mydb.bugWorkaround();
+                applyPerformanceProfile();
+            }
+        }
+
+        /**
+         * Record a transaction begun and ended by batches (BEGIN and COMMIT or ROLLBACK sent by JS).
+         */
+        private void recordTransaction(DBQuery dbq, boolean wasInTransaction, long startedAt) {
+            if (!wasInTransaction && inTransaction) {
+                transactionStartedAt = startedAt;
+            } else if (wasInTransaction && !inTransaction && dbq.queries.length > 0) {
+                String last = dbq.queries[dbq.queries.length - 1];
+                metrics.recordTransaction(transactionStartedAt, SQLiteStatementInfo.getQueryType(last) == QueryType.commit);
+            }
+        }
+
+        /**
+         * Stop the readers and close or delete the database as requested by the
+         * stop request dbq (in the db thread).
+         */
+        private void finish(DBQuery dbq) {
+            quiesce();
+            closeOrDelete(dbq);
+        }
+
+        /**
+         * Finish the database as requested by the stop request dbq (scheduler mode) without
+         * holding up the shared worker: the readers and the pending results are awaited on
+         * a pool thread, the writer connection is then closed back on the worker.
+         */
+        private void finishAsync(final DBQuery dbq) {
+            getThreadPool().execute(new Runnable() {
+                @Override
+                public void run() {
+                    quiesce();
+                    Runnable close = new Runnable() {
+                        @Override
+                        public void run() {
+                            closeOrDelete(dbq);
+                            scheduler.release(worker);
+                        }
+                    };
+                    // (closed right here if the scheduler has been shut down meanwhile)
+                    if (!worker.tryExecute(close)) {
+                        close.run();
+                    }
                 }
-            } catch (Exception ex) {
-                FLog.e(TAG, "unexpected error", ex);
+            });
+        }
+
+        /**
+         * Fail the blocked requests, then wait for the readers to finish their queued
+         * batches and for the results to be delivered, before the database is closed.
+         */
+        private void quiesce() {
+            failBlocked();
+            stopReaders();
+            try {
+                resultSerializer.await();
+            } catch (InterruptedException ex) {
+                FLog.e(TAG, "interrupted while delivering results", ex);
             }
+        }
 
+        /**
+         * Close or delete the database as requested by the stop request dbq.
+         */
+        private void closeOrDelete(DBQuery dbq) {
             if (dbq != null && dbq.close) {
                 try {
                     closeDatabaseNow(dbname);
@@ -831,25 +2590,306 @@ public class SQLitePlugin extends ReactContextBaseJavaModule {
                 }
             }
         }
+
+        public void run() {
+            // (names the pool thread in traces and thread dumps)
+            Thread thread = Thread.currentThread();
+            String threadName = thread.getName();
+            thread.setName("SQLite " + dbname);
+            try {
+                runWriter();
+            } finally {
+                thread.setName(threadName);
+            }
+        }
+
+        private void runWriter() {
+            if (!openWriter()) {
+                return;
+            }
+
+            DBQuery dbq = null;
+
+            try {
+                dbq = take();
+
+                while (!dbq.stop) {
+                    executeRequest(dbq);
+                    dbq = take();
+                }
+            } catch (Exception ex) {
+                FLog.e(TAG, "unexpected error", ex);
+            }
+
+            finish(dbq);
+        }
+    }
+
+    /**
+     * Read-only connection of a DBRunner reader pool, executes batches from the reader lane.
+     *
+     * The batches of a read transaction (from its BEGIN to its COMMIT or ROLLBACK) all go
+     * to the reader which took the first one, see pin().
+     */
+    private class ReaderRunner implements Runnable {
+        final DBRunner owner;
+        final File dbFile;
+        final boolean oldImpl;
+        final CountDownLatch stopped = new CountDownLatch(1);
+        // next batches of the read transaction this reader is in:
+        final BlockingQueue<DBQuery> pinned = new LinkedBlockingQueue<>();
+        private int attached;
+
+        SQLiteAndroidDatabase mydb;
+
+        ReaderRunner(DBRunner owner, File dbFile, boolean oldImpl) {
+            this.owner = owner;
+            this.dbFile = dbFile;
+            this.oldImpl = oldImpl;
+        }
+
+        private void attachPending() {
+            List<String> statements = owner.attachStatements;
+            while (attached < statements.size()) {
+                String statement = statements.get(attached++);
+                try {
+                    mydb.execute(statement);
+                } catch (Exception ex) {
+                    FLog.e(TAG, "reader connection couldn't attach database", ex);
+                }
+            }
+        }
+
+        /**
+         * Keep the read transaction begun by a batch on this reader until a batch ends it
+         * (also if a batch is dropped, as JS still ends the transaction).
+         */
+        private void pin(DBQuery dbq) {
+            if (dbq.action != Action.executeSqlBatch) {
+                return;
+            }
+            for (String query : dbq.queries) {
+                QueryType queryType = SQLiteStatementInfo.getQueryType(query);
+                if (queryType == QueryType.begin) {
+                    owner.pinnedReader = this;
+                } else if (queryType == QueryType.commit || queryType == QueryType.rollback) {
+                    owner.pinnedReader = null;
+                }
+            }
+        }
+
+        public void run() {
+            Thread thread = Thread.currentThread();
+            String threadName = thread.getName();
+            thread.setName("SQLite reader " + owner.dbname);
+            try {
+                runReader();
+            } finally {
+                thread.setName(threadName);
+            }
+        }
+
+        private void runReader() {
+            try {
+                SQLiteAndroidDatabase reader = oldImpl ? new SQLiteAndroidDatabase() : new SQLiteDatabaseNDK();
+                reader.open(dbFile, SQLiteOpenFlags.READONLY);
+                reader.setCursorSettings(owner.cursorSettings);
+                reader.setMetrics(owner.metrics);
+                reader.setSlowQueryLog(owner.slowQueryLog);
+                if (owner.performanceProfile != null) {
+                    owner.performanceProfile.applyConnectionSettings(profileConnection(reader), Arguments.createMap());
+                }
+                this.mydb = reader;
+            } catch (Exception ex) {
+                FLog.e(TAG, "couldn't open reader connection, reads go to the writer", ex);
+            }
+
+            try {
+                DBQuery dbq = owner.rq.take();
+
+                while (!dbq.stop) {
+                    owner.readerStats.record(dbq.enqueuedAt);
+                    owner.release(dbq);
+                    pin(dbq);
+
+                    if (owner.dropExpired(dbq)) {
+                        // (cancelled or past its deadline)
+                    } else if (this.mydb == null) {
+                        owner.post(dbq);
+                    } else {
+                        attachPending();
+                        boolean traced = SQLiteTrace.begin(dbq.action.name(), dbq.requestId);
+                        SQLiteIoStats.Sample ioBefore = owner.ioStats != null ? owner.ioStats.begin() : null;
+                        if (dbq.action == Action.executeTransaction) {
+                            executeTransaction(mydb, dbq.queries, dbq.queryParams, dbq.queryIDs, dbq.queryFormats,
+                                    dbq.queryBlobEncodings, true, dbq.cancellation, owner.resultSerializer, dbq.cbc);
+                        } else {
+                            mydb.executeSqlBatch(dbq.queries, dbq.queryParams, dbq.queryIDs, dbq.queryFormats, dbq.queryBlobEncodings, false, dbq.readOnly, dbq.cancellation, owner.resultSerializer, dbq.cbc);
+                        }
+                        if (ioBefore != null) {
+                            owner.ioStats.end(ioBefore);
+                        }
+                        SQLiteTrace.end(traced);
+                        owner.done(dbq);
+                    }
+
+                    dbq = owner.pinnedReader == this ? pinned.take() : owner.rq.take();
+                }
+            } catch (Exception ex) {
+                FLog.e(TAG, "unexpected error", ex);
+            } finally {
+                if (this.mydb != null) {
+                    this.mydb.closeDatabaseNow();
+                    this.mydb = null;
+                }
+                stopped.countDown();
+            }
+        }
     }
 
-    private final class DBQuery {
+    /**
+     * Keeps the result of an atomic batch until its group has been committed.
+     */
+    private static class DeferredResult {
+        private Object result;
+        private boolean error;
+
+        final CallbackContext cbc = new CallbackContext(new Callback() {
+            @Override
+            public void invoke(Object... args) {
+                result = args[0];
+            }
+        }, new Callback() {
+            @Override
+            public void invoke(Object... args) {
+                result = args[0];
+                error = true;
+            }
+        });
+
+        /**
+         * @param groupError error of the group commit, sent instead of the result
+         * @return task sending the result (once it has been set) via target
+         */
+        Runnable deliverTo(final CallbackContext target, final String groupError) {
+            return new Runnable() {
+                @Override
+                public void run() {
+                    if (groupError != null) {
+                        target.error(groupError);
+                    } else if (error) {
+                        target.error(String.valueOf(result));
+                    } else {
+                        target.success((WritableArray) result);
+                    }
+                }
+            };
+        }
+
+        /**
+         * @param failedIndex index of the failed statement, -1 if the transaction was committed
+         * @param transactionError error of the transaction itself, sent instead of the result
+         * @return task sending the result of executeTransaction (once it has been set) via target
+         */
+        Runnable deliverTransactionTo(final CallbackContext target, final int failedIndex, final String transactionError) {
+            return new Runnable() {
+                @Override
+                public void run() {
+                    if (transactionError != null) {
+                        target.error(transactionError);
+                    } else if (error) {
+                        target.error(String.valueOf(result));
+                    } else {
+                        WritableMap transactionResult = Arguments.createMap();
+                        transactionResult.putArray("results", (WritableArray) result);
+                        transactionResult.putInt("failedIndex", failedIndex);
+                        target.success(transactionResult);
+                    }
+                }
+            };
+        }
+    }
+
+    private final class DBQuery implements SQLitePriorityQueue.Request {
         // XXX TODO replace with DBRunner action enum:
         final boolean stop;
         final boolean close;
         final boolean delete;
+        final Action action;
+        final ReadableMap args;
         final String[] queries;
         final String[] queryIDs;
         final ReadableArray[] queryParams;
+        final SQLiteAndroidDatabase.ResultFormat[] queryFormats;
+        final SQLiteBlobEncoding[] queryBlobEncodings;
+        // self-contained transaction sent in a single batch, see DBRunner.executeAtomicGroup():
+        final boolean atomic;
+        // read-only transaction of executeTransaction, batch of a read transaction:
+        final boolean readOnly;
         final CallbackContext cbc;
+        final long enqueuedAt = System.nanoTime();
+        // lane of the writer queue, close and stop requests go after all waiting requests:
+        boolean background = true;
+        // set for requests which can be cancelled, see DBRunner.cancel():
+        String requestId;
+        CancellationSignal cancellation;
+        // System.nanoTime() after which the request is dropped before it runs, 0 for none:
+        long deadline;
+        // read request outside of a transaction, see SQLiteQueueLimit.Policy.dropOldestRead:
+        boolean read;
+        // room taken under the queue limit, see DBRunner.submit():
+        boolean admitted;
+        long queuedBytes;
+        // lane and timeout of a request waiting for room (block policy), see DBRunner.block():
+        boolean blockedReadOnly;
+        boolean blockedPureRead;
+        Future<?> blockTimeout;
+        // queue wait slice (when tracing), see DBRunner.queued():
+        String traceName;
+        int traceCookie;
 
         DBQuery(String[] myqueries, String[] qids, ReadableArray[] params, CallbackContext c) {
+            this(myqueries, qids, params, null, null, false, c);
+        }
+
+        DBQuery(String[] myqueries, String[] qids, ReadableArray[] params,
+                SQLiteAndroidDatabase.ResultFormat[] formats, SQLiteBlobEncoding[] blobEncodings,
+                boolean atomic, CallbackContext c) {
+            this(Action.executeSqlBatch, myqueries, qids, params, formats, blobEncodings, atomic, false, c);
+        }
+
+        DBQuery(Action action, String[] myqueries, String[] qids, ReadableArray[] params,
+                SQLiteAndroidDatabase.ResultFormat[] formats, SQLiteBlobEncoding[] blobEncodings,
+                boolean atomic, boolean readOnly, CallbackContext c) {
             this.stop = false;
             this.close = false;
             this.delete = false;
+            this.atomic = atomic;
+            this.readOnly = readOnly;
+            this.action = action;
+            this.args = null;
             this.queries = myqueries;
             this.queryIDs = qids;
             this.queryParams = params;
+            this.queryFormats = formats;
+            this.queryBlobEncodings = blobEncodings;
+            this.cbc = c;
+        }
+
+        // request handled by the db thread outside of executeSqlBatch:
+        DBQuery(Action action, ReadableMap args, CallbackContext c) {
+            this.stop = false;
+            this.close = false;
+            this.delete = false;
+            this.atomic = false;
+            this.readOnly = false;
+            this.action = action;
+            this.args = args;
+            this.queries = null;
+            this.queryIDs = null;
+            this.queryParams = null;
+            this.queryFormats = null;
+            this.queryBlobEncodings = null;
             this.cbc = c;
         }
 
@@ -857,9 +2897,15 @@ public class SQLitePlugin extends ReactContextBaseJavaModule {
             this.stop = true;
             this.close = true;
             this.delete = delete;
+            this.atomic = false;
+            this.readOnly = false;
+            this.action = null;
+            this.args = null;
             this.queries = null;
             this.queryIDs = null;
             this.queryParams = null;
+            this.queryFormats = null;
+            this.queryBlobEncodings = null;
             this.cbc = cbc;
         }
 
@@ -868,11 +2914,32 @@ public class SQLitePlugin extends ReactContextBaseJavaModule {
             this.stop = true;
             this.close = false;
             this.delete = false;
+            this.atomic = false;
+            this.readOnly = false;
+            this.action = null;
+            this.args = null;
             this.queries = null;
             this.queryIDs = null;
             this.queryParams = null;
+            this.queryFormats = null;
+            this.queryBlobEncodings = null;
             this.cbc = null;
         }
+
+        @Override
+        public boolean isBackground() {
+            return background;
+        }
+
+        @Override
+        public boolean isRead() {
+            return read;
+        }
+
+        @Override
+        public long getEnqueuedAt() {
+            return enqueuedAt;
+        }
     }
 
     private enum Action {
@@ -882,6 +2949,18 @@ public class SQLitePlugin extends ReactContextBaseJavaModule {
         delete,
         executeSqlBatch,
         backgroundExecuteSqlBatch,
+        executeTransaction,
+        executeMany,
+        executeScript,
+        openCursor,
+        fetch,
+        closeCursor,
+        cancel,
+        getQueueStatus,
+        getStats,
+        resetStats,
+        getSlowQueries,
+        setTracing,
         echoStringValue
     }
 }
@@ -85,6 +85,35 @@ public abstract class SQLitePluginConverter {
         }
     }
 
+    /**
+     * Returns the value at {@code key} if it exists, coercing it if
+     * necessary.
+     */
+    static int getInt(ReadableMap map, String key, int defaultValue) {
+        if (map == null){
+            return defaultValue;
+        }
+        try {
+            ReadableType type = map.getType(key);
+            switch (type) {
+                case Number:
+                    return (int) map.getDouble(key);
+                case Boolean:
+                    return map.getBoolean(key) ? 1 : 0;
+                case String:
+                    try {
+                        return Integer.parseInt(map.getString(key).trim());
+                    } catch (NumberFormatException ex) {
+                        return defaultValue;
+                    }
+                default:
+                    return defaultValue;
+            }
+        } catch(NoSuchKeyException ex){
+            return defaultValue;
+        }
+    }
+
     /**
      * Returns the value at {@code index} if it exists, coercing it if
      * necessary.
@@ -19,6 +19,8 @@ import java.util.List;
 
 public class SQLitePluginPackage implements ReactPackage {
 
+    private final int workerThreads;
+
     /**
      * @deprecated Please use version without activity parameter
      * activity parameter is ignored
@@ -28,13 +30,23 @@ public class SQLitePluginPackage implements ReactPackage {
     }
 
     public SQLitePluginPackage(){
+        this(0);
+    }
+
+    /**
+     * @param workerThreads number of worker threads shared by all open databases
+     *                      (e.g. Runtime.getRuntime().availableProcessors()),
+     *                      0 for a thread per open database
+     */
+    public SQLitePluginPackage(int workerThreads) {
+        this.workerThreads = workerThreads;
     }
 
     @Override
     public List<NativeModule> createNativeModules(
                                 ReactApplicationContext reactContext) {
       List<NativeModule> modules = new ArrayList<>();
-      modules.add(new SQLitePlugin(reactContext));
+      modules.add(new SQLitePlugin(reactContext, workerThreads));
       return modules;
     }
 
@@ -0,0 +1,49 @@
+/*
+ * This library is available under the terms of the MIT License (2008).
+ * See http://opensource.org/licenses/alphabetical for full text.
+ */
+
+package io.liteglue;
+
+import com.facebook.react.bridge.WritableMap;
+
+/**
+ * Queue wait time of the requests taken from one DBRunner queue (lane).
+ */
+class SQLiteQueueStats {
+
+    final String lane;
+
+    private final SQLiteMetrics.Histogram wait = new SQLiteMetrics.Histogram();
+
+    SQLiteQueueStats(String lane) {
+        this.lane = lane;
+    }
+
+    /**
+     * Record a request taken from the queue.
+     *
+     * @param enqueuedAt System.nanoTime() when the request was put in the queue
+     */
+    void record(long enqueuedAt) {
+        wait.record(enqueuedAt);
+    }
+
+    void reset() {
+        wait.reset();
+    }
+
+    /**
+     * @return the wait time histogram of the lane
+     */
+    WritableMap toMap() {
+        WritableMap map = wait.toMap();
+        map.putString("lane", lane);
+        return map;
+    }
+
+    @Override
+    public String toString() {
+        return lane + ": " + wait;
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * This library is available under the terms of the MIT License (2008).
+ * See http://opensource.org/licenses/alphabetical for full text.
+ */
+
+package io.liteglue;
+
+import android.annotation.SuppressLint;
+import android.database.Cursor;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableArray;
+
+import java.util.ArrayDeque;
+
+/**
+ * Result set kept open on the database thread and read in chunks.
+ *
+ * Rows are returned as positional arrays; the column names are sent once when
+ * the cursor is opened. Rows read ahead of a fetch are kept as plain java values
+ * until they are handed to JS.
+ *
+ * NOTE: not thread safe, it is only ever used from the owning DBRunner thread.
+ */
+abstract class SQLiteResultCursor {
+
+    final int id;
+    final boolean readAhead;
+    final SQLiteBlobEncoding blobEncoding;
+
+    private final ArrayDeque<Object[]> buffer = new ArrayDeque<Object[]>();
+    private boolean exhausted;
+    private int lastFetchCount;
+
+    SQLiteResultCursor(int id, boolean readAhead) {
+        this(id, readAhead, SQLiteBlobEncoding.base64);
+    }
+
+    SQLiteResultCursor(int id, boolean readAhead, SQLiteBlobEncoding blobEncoding) {
+        this.id = id;
+        this.readAhead = readAhead;
+        this.blobEncoding = blobEncoding;
+    }
+
+    abstract String[] getColumnNames() throws Exception;
+
+    /**
+     * Move to the next row of the result.
+     *
+     * @return false once the result is exhausted
+     */
+    abstract boolean step() throws Exception;
+
+    /**
+     * @return the value of column i of the current row as Double, String, byte[] (BLOB) or null
+     */
+    abstract Object getValue(int i) throws Exception;
+
+    abstract void closeNow();
+
+    /**
+     * Read up to {@code count} rows, taking read-ahead rows first.
+     *
+     * @return the rows as an array of positional arrays
+     */
+    WritableArray fetch(int count) throws Exception {
+        WritableArray rows = Arguments.createArray();
+        int n = 0;
+
+        while (n < count && !buffer.isEmpty()) {
+            rows.pushArray(toWritableArray(buffer.poll()));
+            n++;
+        }
+        while (n < count && !exhausted) {
+            if (!step()) {
+                exhausted = true;
+                break;
+            }
+            rows.pushArray(toWritableArray(readRow()));
+            n++;
+        }
+
+        lastFetchCount = count;
+        return rows;
+    }
+
+    /**
+     * Read the next chunk (same size as the last fetch) into memory so it is
+     * ready when JS asks for it.
+     */
+    void prefetch() throws Exception {
+        if (!readAhead) {
+            return;
+        }
+        while (buffer.size() < lastFetchCount && !exhausted) {
+            if (!step()) {
+                exhausted = true;
+                break;
+            }
+            buffer.add(readRow());
+        }
+    }
+
+    boolean isDone() {
+        return exhausted && buffer.isEmpty();
+    }
+
+    private Object[] readRow() throws Exception {
+        int colCount = getColumnNames().length;
+        Object[] row = new Object[colCount];
+        for (int i = 0; i < colCount; ++i) {
+            row[i] = getValue(i);
+        }
+        return row;
+    }
+
+    private WritableArray toWritableArray(Object[] row) {
+        WritableArray values = Arguments.createArray();
+        for (Object value : row) {
+            if (value == null) {
+                values.pushNull();
+            } else if (value instanceof Double) {
+                values.pushDouble((Double) value);
+            } else if (value instanceof byte[]) {
+                blobEncoding.push(values, (byte[]) value);
+            } else {
+                values.pushString(value.toString());
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Cursor over an Android framework query result.
+     *
+     * NOTE: the framework does not step the statement row by row: it fills a cursor window,
+     * counting all rows of the result on the first fill, and every refill runs the query
+     * again from the start (forward only with cursorWindowSize, see SQLiteQueryCursor).
+     * Only the rows of the window are held, not the whole result.
+     */
+    static SQLiteResultCursor fromCursor(int id, final Cursor cur, boolean readAhead, SQLiteBlobEncoding blobEncoding) {
+        return new SQLiteResultCursor(id, readAhead, blobEncoding) {
+            private boolean started;
+            private String[] columnNames;
+
+            @Override
+            String[] getColumnNames() {
+                if (columnNames == null) {
+                    columnNames = cur.getColumnNames();
+                }
+                return columnNames;
+            }
+
+            @Override
+            boolean step() {
+                if (!started) {
+                    started = true;
+                    return cur.moveToFirst();
+                }
+                return cur.moveToNext();
+            }
+
+            @Override
+            @SuppressLint("NewApi")
+            Object getValue(int i) {
+                switch (cur.getType(i)) {
+                    case Cursor.FIELD_TYPE_NULL:
+                        return null;
+                    case Cursor.FIELD_TYPE_INTEGER:
+                        return (double) cur.getLong(i);
+                    case Cursor.FIELD_TYPE_FLOAT:
+                        return cur.getDouble(i);
+                    case Cursor.FIELD_TYPE_BLOB:
+                        return cur.getBlob(i);
+                    case Cursor.FIELD_TYPE_STRING:
+                    default:
+                        return cur.getString(i);
+                }
+            }
+
+            @Override
+            void closeNow() {
+                cur.close();
+            }
+        };
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * This library is available under the terms of the MIT License (2008).
+ * See http://opensource.org/licenses/alphabetical for full text.
+ */
+
+package io.liteglue;
+
+import com.facebook.common.logging.FLog;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+
+/**
+ * Second stage of the result pipeline of a database.
+ *
+ * The connections of a database submit the encoding and delivery of their results
+ * (see SQLiteBatchResults) and go on with the next request. The tasks run one at a
+ * time in the order submitted, on a thread of the plugin thread pool while there
+ * is work. At most MAX_PENDING tasks wait, a connection producing results faster
+ * than they are delivered waits for the serializer to catch up. A connection on a
+ * shared scheduler worker never waits: its database ends its turn instead, see hasRoom().
+ */
+class SQLiteResultSerializer implements Executor {
+
+    static final int MAX_PENDING = 16;
+
+    private final Executor executor;
+    private final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+    private boolean running;
+    // run once fewer than MAX_PENDING tasks wait, see hasRoom():
+    private Runnable resume;
+
+    private final Runnable drain = new Runnable() {
+        @Override
+        public void run() {
+            while (true) {
+                Runnable task;
+                Runnable room = null;
+                synchronized (SQLiteResultSerializer.this) {
+                    task = tasks.poll();
+                    SQLiteResultSerializer.this.notifyAll();
+                    if (resume != null && tasks.size() < MAX_PENDING) {
+                        room = resume;
+                        resume = null;
+                    }
+                    if (task == null) {
+                        running = false;
+                    }
+                }
+                if (room != null) {
+                    room.run();
+                }
+                if (task == null) {
+                    return;
+                }
+                try {
+                    task.run();
+                } catch (Exception ex) {
+                    FLog.e(SQLitePlugin.TAG, "couldn't deliver result", ex);
+                }
+            }
+        }
+    };
+
+    SQLiteResultSerializer(Executor executor) {
+        this.executor = executor;
+    }
+
+    @Override
+    public synchronized void execute(Runnable task) {
+        boolean interrupted = false;
+        while (tasks.size() >= MAX_PENDING && !SQLiteScheduler.isWorkerThread()) {
+            try {
+                wait();
+            } catch (InterruptedException ex) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        tasks.add(task);
+        if (!running) {
+            running = true;
+            executor.execute(drain);
+        }
+    }
+
+    /**
+     * Check for room without waiting (scheduler mode).
+     *
+     * @param resume run once fewer than MAX_PENDING tasks wait, if there is no room now
+     * @return false if MAX_PENDING tasks wait
+     */
+    synchronized boolean hasRoom(Runnable resume) {
+        if (tasks.size() < MAX_PENDING) {
+            return true;
+        }
+        this.resume = resume;
+        return false;
+    }
+
+    /**
+     * Wait until all submitted tasks have run.
+     */
+    synchronized void await() throws InterruptedException {
+        while (running) {
+            wait();
+        }
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * This library is available under the terms of the MIT License (2008).
+ * See http://opensource.org/licenses/alphabetical for full text.
+ */
+
+package io.liteglue;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Fixed pool of worker threads the open databases are multiplexed over (scheduler mode).
+ *
+ * Without a scheduler every open database has a thread of its own, blocked in its
+ * queue while idle. With a scheduler a database runs its requests as serial tasks
+ * on one worker thread while it has work. A database stays on the worker it was
+ * assigned at open time (the least loaded one): the framework binds a transaction
+ * to the thread which began it, so a connection must only ever be used from one thread.
+ * The databases of a worker take turns: a database runs at most MAX_TURN_REQUESTS
+ * requests, then goes back to the end of the worker queue.
+ */
+class SQLiteScheduler {
+
+    /**
+     * Requests a database runs before the other databases of its worker get their turn.
+     */
+    static final int MAX_TURN_REQUESTS = 8;
+
+    /**
+     * Worker thread shared by the databases assigned to it.
+     */
+    static class Worker implements Executor {
+        private final ExecutorService thread;
+        private int databases;
+
+        /**
+         * @param name  Name of the worker thread (in traces and thread dumps)
+         */
+        Worker(final String name) {
+            this.thread = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    return new WorkerThread(runnable, name);
+                }
+            });
+        }
+
+        @Override
+        public void execute(Runnable task) {
+            thread.execute(task);
+        }
+
+        /**
+         * @return false if the worker has been shut down, the task is not executed then
+         */
+        boolean tryExecute(Runnable task) {
+            try {
+                thread.execute(task);
+                return true;
+            } catch (RejectedExecutionException ex) {
+                return false;
+            }
+        }
+    }
+
+    private static class WorkerThread extends Thread {
+        WorkerThread(Runnable runnable, String name) {
+            super(runnable, name);
+        }
+    }
+
+    /**
+     * @return true on a worker thread, which must never wait for another database
+     */
+    static boolean isWorkerThread() {
+        return Thread.currentThread() instanceof WorkerThread;
+    }
+
+    private final Worker[] workers;
+
+    /**
+     * @param size  Number of worker threads
+     */
+    SQLiteScheduler(int size) {
+        this.workers = new Worker[size];
+        for (int i = 0; i < size; i++) {
+            workers[i] = new Worker("SQLite worker " + i);
+        }
+    }
+
+    int size() {
+        return workers.length;
+    }
+
+    /**
+     * @return the worker with the fewest databases, for a database being opened
+     */
+    synchronized Worker assign() {
+        Worker worker = workers[0];
+        for (Worker candidate : workers) {
+            if (candidate.databases < worker.databases) {
+                worker = candidate;
+            }
+        }
+        worker.databases++;
+        return worker;
+    }
+
+    /**
+     * Release the worker of a closed database.
+     */
+    synchronized void release(Worker worker) {
+        worker.databases--;
+    }
+
+    /**
+     * Stop the worker threads once they have run the tasks already queued
+     * (when the module is destroyed).
+     */
+    void shutdown() {
+        for (Worker worker : workers) {
+            worker.thread.shutdown();
+        }
+    }
+}
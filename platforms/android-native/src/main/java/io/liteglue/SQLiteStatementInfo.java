@@ -0,0 +1,324 @@
+/*
+ * This library is available under the terms of the MIT License (2008).
+ * See http://opensource.org/licenses/alphabetical for full text.
+ */
+
+package io.liteglue;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * What the plugin needs to know about a SQL statement before executing it,
+ * classified once per distinct statement text and cached.
+ *
+ * The classifier scans the text without regular expressions or temporary strings:
+ * leading comments are skipped, WITH clauses are classified by the statement they
+ * introduce, REPLACE and INSERT OR ... count as insert, END as commit and
+ * ROLLBACK TO (a savepoint) as other. The same scanner splits SQL scripts into
+ * their statements.
+ */
+class SQLiteStatementInfo {
+
+    enum QueryType {
+        update,
+        insert,
+        delete,
+        select,
+        begin,
+        commit,
+        rollback,
+        other
+    }
+
+    /**
+     * Bound of the statement cache, least recently used statements are evicted first
+     * (so statement texts with literal values don't push out the ones in use).
+     */
+    private static final int MAX_CACHE_SIZE = 512;
+
+    // (shared by all connections, synchronized on itself)
+    private static final Map<String, SQLiteStatementInfo> cache =
+            new LinkedHashMap<String, SQLiteStatementInfo>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, SQLiteStatementInfo> eldest) {
+                    return size() > MAX_CACHE_SIZE;
+                }
+            };
+
+    final QueryType queryType;
+
+    /**
+     * The statement does not write to the database, as sqlite3_stmt_readonly
+     * except that transaction control statements are not read-only here
+     * since they change the state of the connection.
+     */
+    final boolean readOnly;
+
+    private SQLiteStatementInfo(QueryType queryType, boolean readOnly) {
+        this.queryType = queryType;
+        this.readOnly = readOnly;
+    }
+
+    /**
+     * @return the (cached) information about a statement
+     */
+    static SQLiteStatementInfo get(String sql) {
+        SQLiteStatementInfo info;
+        synchronized (cache) {
+            info = cache.get(sql);
+        }
+        if (info == null) {
+            info = classify(sql);
+            synchronized (cache) {
+                cache.put(sql, info);
+            }
+        }
+        return info;
+    }
+
+    static QueryType getQueryType(String sql) {
+        return get(sql).queryType;
+    }
+
+    /**
+     * @return true if all statements of a batch are read-only
+     */
+    static boolean isReadOnly(String[] queries) {
+        if (queries.length == 0) {
+            return false;
+        }
+        for (String query : queries) {
+            if (!get(query).readOnly) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return true for a PRAGMA statement (which may return a row)
+     */
+    static boolean isPragma(String sql) {
+        return isKeyword(sql, skipSpace(sql, 0), "PRAGMA");
+    }
+
+    /**
+     * Split a script into its statements, as stepping through it with the tail pointer
+     * of sqlite3_prepare would: at semicolons outside of string literals, quoted
+     * identifiers and comments, and within CREATE TRIGGER only at the END of the
+     * trigger body (CASE ... END expressions in the body are skipped). Empty
+     * statements are left out.
+     */
+    static List<String> splitScript(String sql) {
+        List<String> statements = new ArrayList<>();
+        int len = sql.length();
+        int start = skipSpace(sql, 0);
+        int i = start;
+        boolean statementStart = true;
+        boolean trigger = false;
+        boolean triggerBody = false;
+        int caseDepth = 0;
+        while (i < len) {
+            char c = sql.charAt(i);
+            if (c == ';') {
+                i++;
+                if (!triggerBody) {
+                    if (i - 1 > start) {
+                        statements.add(sql.substring(start, i - 1));
+                    }
+                    i = start = skipSpace(sql, i);
+                    statementStart = true;
+                    trigger = false;
+                }
+            } else if (c == '\'' || c == '"' || c == '`' || c == '[') {
+                i = skipQuoted(sql, i);
+            } else if (c == '-' || c == '/') {
+                int next = skipComment(sql, i);
+                i = next == i ? i + 1 : next;
+            } else if (isIdentifierChar(c)) {
+                int end = i;
+                while (end < len && isIdentifierChar(sql.charAt(end))) {
+                    end++;
+                }
+                if (statementStart) {
+                    trigger = isKeyword(sql, i, "CREATE") && isTrigger(sql, end);
+                    statementStart = false;
+                } else if (trigger && !triggerBody && isKeyword(sql, i, "BEGIN")) {
+                    triggerBody = true;
+                } else if (triggerBody && isKeyword(sql, i, "CASE")) {
+                    caseDepth++;
+                } else if (triggerBody && isKeyword(sql, i, "END")) {
+                    if (caseDepth > 0) {
+                        caseDepth--;
+                    } else {
+                        triggerBody = false;
+                    }
+                }
+                i = end;
+            } else {
+                i++;
+            }
+        }
+        if (start < len) {
+            statements.add(sql.substring(start));
+        }
+        return statements;
+    }
+
+    /**
+     * @return true if CREATE at the given end is followed by [TEMP|TEMPORARY] TRIGGER
+     */
+    private static boolean isTrigger(String sql, int i) {
+        i = skipSpace(sql, i);
+        if (isKeyword(sql, i, "TEMP")) {
+            i = skipSpace(sql, i + "TEMP".length());
+        } else if (isKeyword(sql, i, "TEMPORARY")) {
+            i = skipSpace(sql, i + "TEMPORARY".length());
+        }
+        return isKeyword(sql, i, "TRIGGER");
+    }
+
+    static SQLiteStatementInfo classify(String sql) {
+        int i = skipSpace(sql, 0);
+        QueryType queryType = QueryType.other;
+        boolean readOnly = false;
+
+        if (isKeyword(sql, i, "SELECT") || isKeyword(sql, i, "VALUES")) {
+            queryType = QueryType.select;
+        } else if (isKeyword(sql, i, "INSERT") || isKeyword(sql, i, "REPLACE")) {
+            queryType = QueryType.insert;
+        } else if (isKeyword(sql, i, "UPDATE")) {
+            queryType = QueryType.update;
+        } else if (isKeyword(sql, i, "DELETE")) {
+            queryType = QueryType.delete;
+        } else if (isKeyword(sql, i, "BEGIN")) {
+            queryType = QueryType.begin;
+        } else if (isKeyword(sql, i, "COMMIT") || isKeyword(sql, i, "END")) {
+            queryType = QueryType.commit;
+        } else if (isKeyword(sql, i, "ROLLBACK")) {
+            int next = skipSpace(sql, i + "ROLLBACK".length());
+            if (isKeyword(sql, next, "TRANSACTION")) {
+                next = skipSpace(sql, next + "TRANSACTION".length());
+            }
+            queryType = isKeyword(sql, next, "TO") ? QueryType.other : QueryType.rollback;
+        } else if (isKeyword(sql, i, "WITH")) {
+            queryType = getMainQueryType(sql, i + "WITH".length());
+        } else if (isKeyword(sql, i, "EXPLAIN")) {
+            readOnly = true;
+        }
+
+        if (queryType == QueryType.select) {
+            readOnly = true;
+        }
+        return new SQLiteStatementInfo(queryType, readOnly);
+    }
+
+    /**
+     * Find the statement following the common table expressions of a WITH clause:
+     * the first keyword outside of parentheses which starts a statement.
+     */
+    private static QueryType getMainQueryType(String sql, int i) {
+        int len = sql.length();
+        int depth = 0;
+        while (i < len) {
+            char c = sql.charAt(i);
+            if (c == '(') {
+                depth++;
+                i++;
+            } else if (c == ')') {
+                depth--;
+                i++;
+            } else if (c == '\'' || c == '"' || c == '`' || c == '[') {
+                i = skipQuoted(sql, i);
+            } else if (c == '-' || c == '/') {
+                int next = skipComment(sql, i);
+                i = next == i ? i + 1 : next;
+            } else if (isIdentifierChar(c)) {
+                if (depth == 0 && (i == 0 || !isIdentifierChar(sql.charAt(i - 1)))) {
+                    if (isKeyword(sql, i, "SELECT") || isKeyword(sql, i, "VALUES")) {
+                        return QueryType.select;
+                    } else if (isKeyword(sql, i, "INSERT") || isKeyword(sql, i, "REPLACE")) {
+                        return QueryType.insert;
+                    } else if (isKeyword(sql, i, "UPDATE")) {
+                        return QueryType.update;
+                    } else if (isKeyword(sql, i, "DELETE")) {
+                        return QueryType.delete;
+                    }
+                }
+                i++;
+            } else {
+                i++;
+            }
+        }
+        return QueryType.other;
+    }
+
+    private static int skipSpace(String sql, int i) {
+        int len = sql.length();
+        while (i < len) {
+            char c = sql.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else {
+                int next = skipComment(sql, i);
+                if (next == i) {
+                    break;
+                }
+                i = next;
+            }
+        }
+        return i;
+    }
+
+    /**
+     * @return the index after a comment starting at i, i if there is none
+     */
+    private static int skipComment(String sql, int i) {
+        int len = sql.length();
+        if (i + 1 >= len) {
+            return i;
+        }
+        if (sql.charAt(i) == '-' && sql.charAt(i + 1) == '-') {
+            int end = sql.indexOf('\n', i + 2);
+            return end < 0 ? len : end + 1;
+        }
+        if (sql.charAt(i) == '/' && sql.charAt(i + 1) == '*') {
+            int end = sql.indexOf("*/", i + 2);
+            return end < 0 ? len : end + 2;
+        }
+        return i;
+    }
+
+    /**
+     * @return the index after a quoted string or identifier starting at i
+     */
+    private static int skipQuoted(String sql, int i) {
+        int len = sql.length();
+        char close = sql.charAt(i) == '[' ? ']' : sql.charAt(i);
+        i++;
+        while (i < len) {
+            if (sql.charAt(i++) == close) {
+                // a doubled quote is an escaped quote:
+                if (close != ']' && i < len && sql.charAt(i) == close) {
+                    i++;
+                } else {
+                    return i;
+                }
+            }
+        }
+        return len;
+    }
+
+    private static boolean isKeyword(String sql, int i, String keyword) {
+        int end = i + keyword.length();
+        return sql.regionMatches(true, i, keyword, 0, keyword.length())
+                && (end == sql.length() || !isIdentifierChar(sql.charAt(end)));
+    }
+
+    private static boolean isIdentifierChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '$' || c > 0x7f;
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * This library is available under the terms of the MIT License (2008).
+ * See http://opensource.org/licenses/alphabetical for full text.
+ */
+
+package io.liteglue;
+
+import android.annotation.SuppressLint;
+import android.os.Build;
+import android.os.Trace;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * android.os.Trace sections around the execution stages of the plugin, shown in the
+ * Systrace and Perfetto traces of the app.
+ *
+ * Tracing is off by default and switched at runtime (setTracing action). Sections are
+ * only emitted while it is on and, on Android 10 and newer, while a trace is being
+ * captured; otherwise a stage costs a volatile read. Section names are constants or
+ * only built while tracing. The wait of a request in the queues of a database is an
+ * async slice (Android 10 and newer) named after its request ID, so it can be matched
+ * with the spans of the JS side.
+ */
+class SQLiteTrace {
+
+    // limit of android.os.Trace:
+    private static final int MAX_NAME_LENGTH = 127;
+
+    private static volatile boolean enabled;
+
+    private static final AtomicInteger nextCookie = new AtomicInteger();
+
+    static void setEnabled(boolean enabled) {
+        SQLiteTrace.enabled = enabled;
+    }
+
+    @SuppressLint("NewApi")
+    static boolean isEnabled() {
+        if (!enabled) {
+            return false;
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            return Trace.isEnabled();
+        }
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2;
+    }
+
+    /**
+     * Begin a section on the current thread.
+     *
+     * @return true if the section was begun, to be passed to end()
+     */
+    @SuppressLint("NewApi")
+    static boolean begin(String name) {
+        if (!isEnabled()) {
+            return false;
+        }
+        Trace.beginSection(truncate(name));
+        return true;
+    }
+
+    /**
+     * Begin a section named after a stage and the request ID (may be null) of a request.
+     */
+    static boolean begin(String name, String requestId) {
+        if (!isEnabled()) {
+            return false;
+        }
+        return begin(requestId != null ? name + " " + requestId : name);
+    }
+
+    /**
+     * @param begun result of the begin() of the section
+     */
+    @SuppressLint("NewApi")
+    static void end(boolean begun) {
+        if (begun) {
+            Trace.endSection();
+        }
+    }
+
+    /**
+     * Begin an async slice, which may end on another thread.
+     *
+     * @return cookie to end the slice with, 0 if none was begun
+     */
+    @SuppressLint("NewApi")
+    static int beginAsync(String name) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.Q || !isEnabled()) {
+            return 0;
+        }
+        int cookie = nextCookie.incrementAndGet();
+        if (cookie == 0) {
+            cookie = nextCookie.incrementAndGet();
+        }
+        Trace.beginAsyncSection(truncate(name), cookie);
+        return cookie;
+    }
+
+    /**
+     * @param name   name the slice was begun with
+     * @param cookie result of the beginAsync() of the slice
+     */
+    @SuppressLint("NewApi")
+    static void endAsync(String name, int cookie) {
+        if (cookie != 0) {
+            Trace.endAsyncSection(truncate(name), cookie);
+        }
+    }
+
+    private static String truncate(String name) {
+        return name.length() > MAX_NAME_LENGTH ? name.substring(0, MAX_NAME_LENGTH) : name;
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * This library is available under the terms of the MIT License (2008).
+ * See http://opensource.org/licenses/alphabetical for full text.
+ */
+
+package org.pgsqlite;
+
+import android.util.Base64;
+
+import com.facebook.common.logging.FLog;
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.ReadableType;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+
+/**
+ * Transport of BLOB values over the bridge.
+ *
+ * base64 - Base64 string with line breaks (default, as sent by earlier versions),
+ * compact - Base64 string without line breaks,
+ * arraybuffer - {blob: compact Base64} map which JS turns into an ArrayBuffer.
+ *
+ * BLOB parameters are sent by JS as {blob: Base64} maps.
+ */
+enum SQLiteBlobEncoding {
+    base64,
+    compact,
+    arraybuffer;
+
+    static final String BLOB_KEY = "blob";
+
+    static SQLiteBlobEncoding fromString(String encoding) {
+        if (encoding != null) {
+            try {
+                return SQLiteBlobEncoding.valueOf(encoding);
+            } catch (IllegalArgumentException ignore) {
+                FLog.w(SQLitePlugin.TAG, "unknown blob encoding: " + encoding + ", using base64");
+            }
+        }
+        return base64;
+    }
+
+    private String encode(byte[] blob) {
+        return new String(Base64.encode(blob, this == base64 ? Base64.DEFAULT : Base64.NO_WRAP));
+    }
+
+    private WritableMap toMap(byte[] blob) {
+        WritableMap value = Arguments.createMap();
+        value.putString(BLOB_KEY, encode(blob));
+        return value;
+    }
+
+    void put(WritableMap map, String key, byte[] blob) {
+        if (this == arraybuffer) {
+            map.putMap(key, toMap(blob));
+        } else {
+            map.putString(key, encode(blob));
+        }
+    }
+
+    void push(WritableArray array, byte[] blob) {
+        if (this == arraybuffer) {
+            array.pushMap(toMap(blob));
+        } else {
+            array.pushString(encode(blob));
+        }
+    }
+
+    /**
+     * @return the bytes of a BLOB parameter, null if parameter i is not a BLOB
+     */
+    static byte[] getBlob(ReadableArray params, int i) {
+        if (params.getType(i) != ReadableType.Map) {
+            return null;
+        }
+        ReadableMap param = params.getMap(i);
+        if (!param.hasKey(BLOB_KEY)) {
+            return null;
+        }
+        return Base64.decode(param.getString(BLOB_KEY), Base64.DEFAULT);
+    }
+}
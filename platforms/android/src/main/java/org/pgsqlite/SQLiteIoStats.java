@@ -0,0 +1,161 @@
+/*
+ * This library is available under the terms of the MIT License (2008).
+ * See http://opensource.org/licenses/alphabetical for full text.
+ */
+
+package org.pgsqlite;
+
+import android.os.Debug;
+import android.os.Process;
+
+import com.facebook.common.logging.FLog;
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.WritableMap;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+
+/**
+ * I/O accounting of the connections of a database, requested with the {@code ioStats}
+ * open option and reported by the getStats action.
+ *
+ * SQLite does its file I/O (syncs and checkpoints included) synchronously in the thread
+ * running the statement. The I/O counters the kernel keeps for that thread and its CPU
+ * time, sampled before and after each request, attribute the I/O to the database:
+ * bytes and calls of reads and writes, bytes read from and written to storage, and
+ * the time the thread spent blocked (wall time minus CPU time), which is mostly the
+ * time spent waiting for storage and its syncs.
+ */
+class SQLiteIoStats {
+
+    // fields of /proc/<pid>/task/<tid>/io, reported under the names below:
+    private static final String[] FIELDS = {
+            "rchar", "wchar", "syscr", "syscw", "read_bytes", "write_bytes"
+    };
+    private static final String[] NAMES = {
+            "readBytes", "writtenBytes", "readCalls", "writeCalls", "storageReadBytes", "storageWrittenBytes"
+    };
+
+    /**
+     * Counters of the current thread before a request.
+     */
+    static class Sample {
+        final long startedAt = System.nanoTime();
+        final long cpuNanos = Debug.threadCpuTimeNanos();
+        final long[] counters;
+
+        Sample(long[] counters) {
+            this.counters = counters;
+        }
+    }
+
+    private final long[] totals = new long[FIELDS.length];
+    private long requests;
+    private long wallNanos;
+    private long cpuNanos;
+    // cleared if the counters can't be read on this device:
+    private volatile boolean available = true;
+
+    /**
+     * @return the accounting of the open options, null unless ioStats is set
+     */
+    static SQLiteIoStats fromOptions(ReadableMap options) {
+        return SQLitePluginConverter.getBoolean(options, "ioStats", false) ? new SQLiteIoStats() : null;
+    }
+
+    /**
+     * @return the counters of the current thread before a request, null if they can't be read
+     */
+    Sample begin() {
+        if (!available) {
+            return null;
+        }
+        long[] counters = readCounters();
+        return counters != null ? new Sample(counters) : null;
+    }
+
+    /**
+     * Account the I/O of the current thread since before the request.
+     */
+    void end(Sample before) {
+        long[] counters = readCounters();
+        if (counters == null) {
+            return;
+        }
+        long wall = System.nanoTime() - before.startedAt;
+        long cpu = Debug.threadCpuTimeNanos() - before.cpuNanos;
+        synchronized (this) {
+            for (int i = 0; i < totals.length; i++) {
+                totals[i] += counters[i] - before.counters[i];
+            }
+            requests++;
+            wallNanos += wall;
+            // (-1 where thread CPU time is not supported)
+            cpuNanos += before.cpuNanos >= 0 ? cpu : 0;
+        }
+    }
+
+    synchronized void reset() {
+        for (int i = 0; i < totals.length; i++) {
+            totals[i] = 0;
+        }
+        requests = 0;
+        wallNanos = 0;
+        cpuNanos = 0;
+    }
+
+    /**
+     * @return {available, requests, readBytes, writtenBytes, readCalls, writeCalls,
+     * storageReadBytes, storageWrittenBytes, wallMs, cpuMs, blockedMs}
+     */
+    synchronized WritableMap toMap() {
+        WritableMap map = Arguments.createMap();
+        map.putBoolean("available", available);
+        map.putDouble("requests", requests);
+        for (int i = 0; i < totals.length; i++) {
+            map.putDouble(NAMES[i], totals[i]);
+        }
+        map.putDouble("wallMs", wallNanos / 1e6);
+        map.putDouble("cpuMs", cpuNanos / 1e6);
+        map.putDouble("blockedMs", Math.max(0, wallNanos - cpuNanos) / 1e6);
+        return map;
+    }
+
+    /**
+     * @return the I/O counters of the current thread, null if they can't be read
+     */
+    private long[] readCounters() {
+        long[] counters = new long[FIELDS.length];
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new FileReader("/proc/" + Process.myPid() + "/task/" + Process.myTid() + "/io"));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int colon = line.indexOf(':');
+                if (colon == -1) {
+                    continue;
+                }
+                String field = line.substring(0, colon);
+                for (int i = 0; i < FIELDS.length; i++) {
+                    if (FIELDS[i].equals(field)) {
+                        counters[i] = Long.parseLong(line.substring(colon + 1).trim());
+                        break;
+                    }
+                }
+            }
+            return counters;
+        } catch (Exception ex) {
+            FLog.w(SQLitePlugin.TAG, "thread I/O counters not available, I/O stats disabled: " + ex.getMessage());
+            available = false;
+            return null;
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException ignore) { }
+            }
+        }
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * This library is available under the terms of the MIT License (2008).
+ * See http://opensource.org/licenses/alphabetical for full text.
+ */
+
+package org.pgsqlite;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableMap;
+
+import org.pgsqlite.SQLiteStatementInfo.QueryType;
+
+/**
+ * Counters and latency histograms of a database, reported by the getStats action.
+ *
+ * Per statement kind: statements, errors, compile and execute time, rows returned and
+ * the estimated size of the result rows. Per database: result serialization and
+ * transaction time. The connections of the database and its result serializer record
+ * into preallocated counters only, recording does not allocate so it can stay enabled.
+ */
+class SQLiteMetrics {
+
+    /**
+     * Latency histogram with power of two buckets: bucket i counts durations below
+     * 2^i microseconds, the last one all longer durations.
+     */
+    static class Histogram {
+        private static final int BUCKETS = 32;
+
+        private final long[] buckets = new long[BUCKETS];
+        private long count;
+        private long totalNanos;
+        private long maxNanos;
+
+        /**
+         * @param startedAt System.nanoTime() when the measured operation started
+         */
+        void record(long startedAt) {
+            recordNanos(System.nanoTime() - startedAt);
+        }
+
+        synchronized void recordNanos(long nanos) {
+            long micros = nanos / 1000;
+            int bucket = micros <= 0 ? 0 : 64 - Long.numberOfLeadingZeros(micros);
+            buckets[Math.min(bucket, BUCKETS - 1)]++;
+            count++;
+            totalNanos += nanos;
+            if (nanos > maxNanos) {
+                maxNanos = nanos;
+            }
+        }
+
+        synchronized long getCount() {
+            return count;
+        }
+
+        synchronized void reset() {
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets[i] = 0;
+            }
+            count = 0;
+            totalNanos = 0;
+            maxNanos = 0;
+        }
+
+        /**
+         * @return upper bound of the bucket of the given percentile (at most the maximum)
+         */
+        private double percentileMs(double percentile) {
+            long rank = (long) Math.ceil(count * percentile);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += buckets[i];
+                if (seen >= rank) {
+                    return Math.min((1L << i) / 1e3, maxNanos / 1e6);
+                }
+            }
+            return maxNanos / 1e6;
+        }
+
+        synchronized WritableMap toMap() {
+            WritableMap map = Arguments.createMap();
+            map.putDouble("count", count);
+            map.putDouble("totalMs", totalNanos / 1e6);
+            map.putDouble("avgMs", count == 0 ? 0 : totalNanos / 1e6 / count);
+            map.putDouble("maxMs", maxNanos / 1e6);
+            map.putDouble("p50Ms", count == 0 ? 0 : percentileMs(0.5));
+            map.putDouble("p90Ms", count == 0 ? 0 : percentileMs(0.9));
+            map.putDouble("p99Ms", count == 0 ? 0 : percentileMs(0.99));
+            return map;
+        }
+
+        @Override
+        public synchronized String toString() {
+            return "count=" + count
+                    + " avgMs=" + (count == 0 ? 0 : totalNanos / 1e6 / count)
+                    + " maxMs=" + maxNanos / 1e6;
+        }
+    }
+
+    /**
+     * Statements of one kind. The execute time includes the compile time.
+     */
+    static class StatementStats {
+        final Histogram compile = new Histogram();
+        final Histogram execute = new Histogram();
+        private long errors;
+        private long rows;
+        private long resultBytes;
+
+        synchronized void record(boolean failed, SQLiteRowBuffer result) {
+            if (failed) {
+                errors++;
+            } else if (result != null) {
+                rows += result.getRowCount();
+                resultBytes += result.getByteCount();
+            }
+        }
+
+        synchronized void reset() {
+            compile.reset();
+            execute.reset();
+            errors = 0;
+            rows = 0;
+            resultBytes = 0;
+        }
+
+        synchronized WritableMap toMap() {
+            WritableMap map = Arguments.createMap();
+            map.putDouble("count", execute.getCount());
+            map.putDouble("errors", errors);
+            map.putDouble("rows", rows);
+            map.putDouble("resultBytes", resultBytes);
+            map.putMap("compile", compile.toMap());
+            map.putMap("execute", execute.toMap());
+            return map;
+        }
+    }
+
+    private final StatementStats[] statements = new StatementStats[QueryType.values().length];
+    final Histogram serialization = new Histogram();
+    final Histogram transactions = new Histogram();
+    private long rollbacks;
+
+    SQLiteMetrics() {
+        for (int i = 0; i < statements.length; i++) {
+            statements[i] = new StatementStats();
+        }
+    }
+
+    /**
+     * Record the compilation of a statement.
+     *
+     * @param startedAt System.nanoTime() before the statement was compiled
+     */
+    void recordCompile(QueryType queryType, long startedAt) {
+        statements[queryType.ordinal()].compile.record(startedAt);
+    }
+
+    /**
+     * Record an executed (or failed) statement.
+     *
+     * @param startedAt System.nanoTime() before the statement was compiled
+     * @param result    rows of a query, null for other statements
+     */
+    void recordStatement(QueryType queryType, long startedAt, boolean failed, SQLiteRowBuffer result) {
+        StatementStats stats = statements[queryType.ordinal()];
+        stats.execute.record(startedAt);
+        stats.record(failed, result);
+    }
+
+    /**
+     * Record a transaction from its begin to its commit or rollback.
+     */
+    void recordTransaction(long startedAt, boolean committed) {
+        transactions.record(startedAt);
+        if (!committed) {
+            synchronized (this) {
+                rollbacks++;
+            }
+        }
+    }
+
+    void reset() {
+        for (StatementStats stats : statements) {
+            stats.reset();
+        }
+        serialization.reset();
+        transactions.reset();
+        synchronized (this) {
+            rollbacks = 0;
+        }
+    }
+
+    /**
+     * @return {statements: {kind: stats} (kinds executed only), serialization, transactions}
+     */
+    WritableMap toMap() {
+        WritableMap byKind = Arguments.createMap();
+        for (QueryType queryType : QueryType.values()) {
+            StatementStats stats = statements[queryType.ordinal()];
+            if (stats.execute.getCount() > 0) {
+                byKind.putMap(queryType.name(), stats.toMap());
+            }
+        }
+        WritableMap transactionMap = transactions.toMap();
+        synchronized (this) {
+            transactionMap.putDouble("rollbacks", rollbacks);
+        }
+
+        WritableMap map = Arguments.createMap();
+        map.putMap("statements", byKind);
+        map.putMap("serialization", serialization.toMap());
+        map.putMap("transactions", transactionMap);
+        return map;
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * This library is available under the terms of the MIT License (2008).
+ * See http://opensource.org/licenses/alphabetical for full text.
+ */
+
+package org.pgsqlite;
+
+import com.facebook.common.logging.FLog;
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.WritableMap;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Connection settings requested with the {@code performance} block of the open options.
+ *
+ * The settings are applied natively every time a connection is opened (or reopened
+ * by the Android locking workaround) and the values which actually took effect are
+ * read back from SQLite.
+ */
+class SQLitePerformanceProfile {
+
+    /**
+     * The statements the profile needs from a database connection.
+     */
+    interface Connection {
+        /**
+         * @return the first column of the first result row as string, null if there is no row
+         */
+        String query(String sql) throws Exception;
+
+        /**
+         * @return true if the database is in WAL mode afterwards
+         */
+        boolean enableWriteAheadLogging() throws Exception;
+    }
+
+    private static final List<String> JOURNAL_MODES = Arrays.asList("DELETE", "TRUNCATE", "PERSIST", "MEMORY", "WAL", "OFF");
+    private static final List<String> SYNCHRONOUS_LEVELS = Arrays.asList("OFF", "NORMAL", "FULL", "EXTRA");
+    private static final List<String> TEMP_STORES = Arrays.asList("DEFAULT", "FILE", "MEMORY");
+
+    private static final int UNSET = Integer.MIN_VALUE;
+
+    String journalMode;
+    String synchronous;
+    int cacheSize = UNSET;
+    int mmapSize = UNSET;
+    int pageSize = UNSET;
+    String tempStore;
+    Boolean exclusiveLocking;
+    int chunkSize = UNSET;
+
+    /**
+     * @return the profile of the open options, null if no performance block was sent
+     */
+    static SQLitePerformanceProfile fromOptions(ReadableMap options) {
+        ReadableMap performance = (ReadableMap) SQLitePluginConverter.get(options, "performance", null);
+        if (performance == null) {
+            return null;
+        }
+
+        SQLitePerformanceProfile profile = new SQLitePerformanceProfile();
+        profile.journalMode = getKeyword(performance, "journalMode", JOURNAL_MODES);
+        profile.synchronous = getKeyword(performance, "synchronous", SYNCHRONOUS_LEVELS);
+        profile.cacheSize = SQLitePluginConverter.getInt(performance, "cacheSize", UNSET);
+        profile.mmapSize = SQLitePluginConverter.getInt(performance, "mmapSize", UNSET);
+        profile.pageSize = SQLitePluginConverter.getInt(performance, "pageSize", UNSET);
+        profile.tempStore = getKeyword(performance, "tempStore", TEMP_STORES);
+        if (SQLitePluginConverter.get(performance, "exclusiveLocking", null) != null) {
+            profile.exclusiveLocking = SQLitePluginConverter.getBoolean(performance, "exclusiveLocking", false);
+        }
+        profile.chunkSize = SQLitePluginConverter.getInt(performance, "chunkSize", UNSET);
+        return profile;
+    }
+
+    /**
+     * Keywords end up in PRAGMA statements, only accept the documented values.
+     */
+    private static String getKeyword(ReadableMap map, String key, List<String> allowed) {
+        String value = SQLitePluginConverter.getString(map, key, null);
+        if (value == null) {
+            return null;
+        }
+        value = value.trim().toUpperCase(Locale.US);
+        if (!allowed.contains(value)) {
+            FLog.w(SQLitePlugin.TAG, "ignoring invalid performance setting " + key + ": " + value);
+            return null;
+        }
+        return value;
+    }
+
+    /**
+     * Apply the profile to the writer connection.
+     *
+     * page_size and locking_mode go first since they only take effect before the
+     * journal mode is switched to WAL.
+     *
+     * @return the settings in effect after applying the profile
+     */
+    WritableMap apply(Connection db) {
+        WritableMap effective = Arguments.createMap();
+
+        if (pageSize != UNSET) {
+            putNumber(effective, "pageSize", pragma(db, "page_size", String.valueOf(pageSize)));
+        }
+        if (exclusiveLocking != null) {
+            String lockingMode = pragma(db, "locking_mode", exclusiveLocking ? "EXCLUSIVE" : "NORMAL");
+            effective.putBoolean("exclusiveLocking", "exclusive".equalsIgnoreCase(lockingMode));
+        }
+        if (journalMode != null) {
+            if (journalMode.equals("WAL")) {
+                try {
+                    db.enableWriteAheadLogging();
+                } catch (Exception ex) {
+                    FLog.w(SQLitePlugin.TAG, "couldn't enable WAL", ex);
+                }
+                effective.putString("journalMode", pragma(db, "journal_mode", null));
+            } else {
+                effective.putString("journalMode", pragma(db, "journal_mode", journalMode));
+            }
+        }
+        if (synchronous != null) {
+            int level = toInt(pragma(db, "synchronous", synchronous));
+            effective.putString("synchronous", level >= 0 && level < SYNCHRONOUS_LEVELS.size() ? SYNCHRONOUS_LEVELS.get(level) : null);
+        }
+        applyConnectionSettings(db, effective);
+        if (chunkSize != UNSET) {
+            // SQLITE_FCNTL_CHUNK_SIZE is a file control, neither the Android framework
+            // nor sqlite-connector give access to sqlite3_file_control:
+            FLog.w(SQLitePlugin.TAG, "performance setting chunkSize is not supported, ignored");
+            effective.putNull("chunkSize");
+        }
+
+        FLog.v(SQLitePlugin.TAG, "performance profile applied: " + effective);
+        return effective;
+    }
+
+    /**
+     * Apply the settings which are kept per connection, also used for the reader connections.
+     */
+    void applyConnectionSettings(Connection db, WritableMap effective) {
+        if (cacheSize != UNSET) {
+            putNumber(effective, "cacheSize", pragma(db, "cache_size", String.valueOf(cacheSize)));
+        }
+        if (mmapSize != UNSET) {
+            putNumber(effective, "mmapSize", pragma(db, "mmap_size", String.valueOf(mmapSize)));
+        }
+        if (tempStore != null) {
+            int store = toInt(pragma(db, "temp_store", tempStore));
+            effective.putString("tempStore", store >= 0 && store < TEMP_STORES.size() ? TEMP_STORES.get(store) : null);
+        }
+    }
+
+    /**
+     * Set a pragma (if value is not null) and read back the value in effect.
+     */
+    private static String pragma(Connection db, String name, String value) {
+        if (value != null) {
+            try {
+                db.query("PRAGMA " + name + "=" + value);
+            } catch (Exception ex) {
+                FLog.w(SQLitePlugin.TAG, "couldn't set PRAGMA " + name + "=" + value, ex);
+            }
+        }
+        try {
+            return db.query("PRAGMA " + name);
+        } catch (Exception ex) {
+            FLog.w(SQLitePlugin.TAG, "couldn't read PRAGMA " + name, ex);
+            return null;
+        }
+    }
+
+    private static void putNumber(WritableMap map, String key, String value) {
+        try {
+            map.putDouble(key, Long.parseLong(value.trim()));
+        } catch (Exception ex) {
+            map.putNull(key);
+        }
+    }
+
+    private static int toInt(String value) {
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException ex) {
+            return -1;
+        }
+    }
+}
@@ -9,24 +9,39 @@ package org.pgsqlite;
 
 import android.annotation.SuppressLint;
 import android.database.Cursor;
+import android.database.sqlite.SQLiteCursorDriver;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteException;
+import android.database.sqlite.SQLiteProgram;
+import android.database.sqlite.SQLiteQuery;
 import android.database.sqlite.SQLiteStatement;
 import android.content.Context;
-import android.util.Base64;
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
 
 import java.io.Closeable;
 import java.io.File;
 import java.io.FileInputStream;
 import java.lang.IllegalArgumentException;
-import java.util.Locale;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.facebook.common.logging.FLog;
 import com.facebook.react.bridge.Arguments;
@@ -40,6 +55,8 @@ import com.facebook.react.bridge.ReadableType;
 import com.facebook.react.bridge.WritableArray;
 import com.facebook.react.bridge.WritableMap;
 
+import org.pgsqlite.SQLiteStatementInfo.QueryType;
+
 import java.io.FileOutputStream;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -50,10 +67,27 @@ public class SQLitePlugin extends ReactContextBaseJavaModule {
 
     public static final String TAG = SQLitePlugin.class.getSimpleName();
 
+    /**
+     * Upper bound for the JS thread to wait on a synchronous request.
+     */
+    private static final int SYNC_TIMEOUT_SECONDS = 30;
+
+    private static final String SYNC_TIMED_OUT = "timed out waiting for the database";
+
     private static final String PLUGIN_NAME = "SQLite";
 
-    private static final Pattern FIRST_WORD = Pattern.compile("^\\s*(\\S+)",
-            Pattern.CASE_INSENSITIVE);
+    /**
+     * Default number of atomic batches committed together with groupCommit: true.
+     */
+    private static final int GROUP_COMMIT_MAX_BATCHES = 32;
+
+    private static final String GROUP_SAVEPOINT = "group_commit";
+
+    // deferred read-only transaction of executeTransaction and of read transactions on readers:
+    private static final String READ_SAVEPOINT = "read_transaction";
+
+    // error of a request cancelled by the cancel action or dropped past its deadline:
+    private static final String REQUEST_CANCELLED = "request cancelled";
 
     /**
      * Multiple database runner map (static).
@@ -62,6 +96,16 @@ public class SQLitePlugin extends ReactContextBaseJavaModule {
      */
     static ConcurrentHashMap<String, DBRunner> dbrmap = new ConcurrentHashMap<String, DBRunner>();
 
+    /**
+     * Source of the request IDs of synchronous requests, see executeSync().
+     */
+    private static final AtomicInteger nextSyncRequestId = new AtomicInteger();
+
+    /**
+     * Source of result cursor ids, unique across all databases.
+     */
+    private static final AtomicInteger nextCursorId = new AtomicInteger();
+
     /**
      * Linked activity
      */
@@ -72,10 +116,26 @@ public class SQLitePlugin extends ReactContextBaseJavaModule {
      */
     protected ExecutorService threadPool;
 
+    /**
+     * Worker threads the databases are multiplexed over, null for a thread per database
+     */
+    protected final SQLiteScheduler scheduler;
+
     public SQLitePlugin(ReactApplicationContext reactContext) {
+        this(reactContext, 0);
+    }
+
+    /**
+     * @param workerThreads  Number of worker threads shared by all databases (scheduler mode),
+     *                       0 for a thread per open database
+     */
+    public SQLitePlugin(ReactApplicationContext reactContext, int workerThreads) {
         super(reactContext);
         this.context = reactContext.getApplicationContext();
         this.threadPool = Executors.newCachedThreadPool();
+        this.scheduler = workerThreads > 0 ? new SQLiteScheduler(workerThreads) : null;
+        if (this.scheduler != null)
+            FLog.i(TAG, "Database scheduler enabled, worker threads: " + workerThreads);
     }
 
     /**
@@ -146,6 +206,126 @@ public class SQLitePlugin extends ReactContextBaseJavaModule {
         }
     }
 
+    @ReactMethod
+    public void executeTransaction(ReadableMap args, Callback success, Callback error) {
+        String actionAsString = "executeTransaction";
+        try {
+            this.execute(actionAsString, args, new CallbackContext(success, error));
+        } catch (Exception ex){
+            error.invoke("Unexpected error"+ex.getMessage());
+        }
+    }
+
+    @ReactMethod
+    public void executeMany(ReadableMap args, Callback success, Callback error) {
+        String actionAsString = "executeMany";
+        try {
+            this.execute(actionAsString, args, new CallbackContext(success, error));
+        } catch (Exception ex){
+            error.invoke("Unexpected error"+ex.getMessage());
+        }
+    }
+
+    @ReactMethod
+    public void executeScript(ReadableMap args, Callback success, Callback error) {
+        String actionAsString = "executeScript";
+        try {
+            this.execute(actionAsString, args, new CallbackContext(success, error));
+        } catch (Exception ex){
+            error.invoke("Unexpected error"+ex.getMessage());
+        }
+    }
+
+    @ReactMethod
+    public void openCursor(ReadableMap args, Callback success, Callback error) {
+        String actionAsString = "openCursor";
+        try {
+            this.execute(actionAsString, args, new CallbackContext(success, error));
+        } catch (Exception ex){
+            error.invoke("Unexpected error"+ex.getMessage());
+        }
+    }
+
+    @ReactMethod
+    public void fetch(ReadableMap args, Callback success, Callback error) {
+        String actionAsString = "fetch";
+        try {
+            this.execute(actionAsString, args, new CallbackContext(success, error));
+        } catch (Exception ex){
+            error.invoke("Unexpected error"+ex.getMessage());
+        }
+    }
+
+    @ReactMethod
+    public void closeCursor(ReadableMap args, Callback success, Callback error) {
+        String actionAsString = "closeCursor";
+        try {
+            this.execute(actionAsString, args, new CallbackContext(success, error));
+        } catch (Exception ex){
+            error.invoke("Unexpected error"+ex.getMessage());
+        }
+    }
+
+    @ReactMethod
+    public void cancel(ReadableMap args, Callback success, Callback error) {
+        String actionAsString = "cancel";
+        try {
+            this.execute(actionAsString, args, new CallbackContext(success, error));
+        } catch (Exception ex){
+            error.invoke("Unexpected error"+ex.getMessage());
+        }
+    }
+
+    @ReactMethod
+    public void getQueueStatus(ReadableMap args, Callback success, Callback error) {
+        String actionAsString = "getQueueStatus";
+        try {
+            this.execute(actionAsString, args, new CallbackContext(success, error));
+        } catch (Exception ex){
+            error.invoke("Unexpected error"+ex.getMessage());
+        }
+    }
+
+    @ReactMethod
+    public void getStats(ReadableMap args, Callback success, Callback error) {
+        String actionAsString = "getStats";
+        try {
+            this.execute(actionAsString, args, new CallbackContext(success, error));
+        } catch (Exception ex){
+            error.invoke("Unexpected error"+ex.getMessage());
+        }
+    }
+
+    @ReactMethod
+    public void resetStats(ReadableMap args, Callback success, Callback error) {
+        String actionAsString = "resetStats";
+        try {
+            this.execute(actionAsString, args, new CallbackContext(success, error));
+        } catch (Exception ex){
+            error.invoke("Unexpected error"+ex.getMessage());
+        }
+    }
+
+    @ReactMethod
+    public void getSlowQueries(ReadableMap args, Callback success, Callback error) {
+        String actionAsString = "getSlowQueries";
+        try {
+            this.execute(actionAsString, args, new CallbackContext(success, error));
+        } catch (Exception ex){
+            error.invoke("Unexpected error"+ex.getMessage());
+        }
+    }
+
+    @ReactMethod
+    public void setTracing(ReadableMap args, Callback success, Callback error) {
+        String actionAsString = "setTracing";
+        try {
+            this.execute(actionAsString, args, new CallbackContext(success, error));
+        } catch (Exception ex){
+            error.invoke("Unexpected error"+ex.getMessage());
+        }
+    }
+
     @ReactMethod
     public void echoStringValue(ReadableMap args, Callback success, Callback error) {
         String actionAsString = "echoStringValue";
@@ -156,6 +336,133 @@ public class SQLitePlugin extends ReactContextBaseJavaModule {
         }
     }
 
+    /**
+     * Synchronous variant of executeSqlBatch, called directly from the JS thread.
+     *
+     * The batch still runs on the database thread, the JS thread only blocks until the
+     * result is ready. This saves the asynchronous bridge round trip for small queries.
+     * It fails right away while requests are queued or the writer has a transaction open,
+     * so that the JS thread never waits behind them.
+     *
+     * @return {type: "success", result: [...]} or {type: "error", message}
+     */
+    @ReactMethod(isBlockingSynchronousMethod = true)
+    public WritableMap executeSqlBatchSync(ReadableMap args) {
+        return this.executeSync("executeSqlBatch", args);
+    }
+
+    private WritableMap executeSync(String actionAsString, ReadableMap args) {
+        final WritableMap response = Arguments.createMap();
+        final CountDownLatch done = new CountDownLatch(1);
+        final AtomicBoolean timedOut = new AtomicBoolean();
+
+        Callback success = new Callback() {
+            @Override
+            public void invoke(Object... result) {
+                response.putString("type", "success");
+                if (result.length > 0 && result[0] instanceof WritableArray) {
+                    response.putArray("result", (WritableArray) result[0]);
+                } else if (result.length > 0 && result[0] instanceof WritableMap) {
+                    response.putMap("result", (WritableMap) result[0]);
+                } else if (result.length > 0 && result[0] != null) {
+                    response.putString("result", result[0].toString());
+                }
+                done.countDown();
+            }
+        };
+        Callback error = new Callback() {
+            @Override
+            public void invoke(Object... result) {
+                String message = result.length > 0 && result[0] != null ? result[0].toString() : "unknown";
+                response.putString("type", "error");
+                response.putString("message", timedOut.get() && REQUEST_CANCELLED.equals(message) ? SYNC_TIMED_OUT : message);
+                done.countDown();
+            }
+        };
+
+        String dbname = SQLitePluginConverter.getString((ReadableMap) SQLitePluginConverter.get(args,"dbargs",null),"dbname","");
+        DBRunner r = dbrmap.get(dbname);
+        if (r != null && r.isBusy()) {
+            WritableMap busy = Arguments.createMap();
+            busy.putString("type", "error");
+            busy.putString("message", "database busy");
+            return busy;
+        }
+
+        CallbackContext cbc = new CallbackContext(success, error);
+        cbc.synchronous = true;
+        // (to cancel it on timeout)
+        cbc.requestId = "sync-" + nextSyncRequestId.incrementAndGet();
+        try {
+            this.execute(actionAsString, args, cbc);
+            if (!done.await(SYNC_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                FLog.e(TAG, "SQLitePlugin." + actionAsString + "Sync() timed out");
+                // a queued request is removed (and fails with SYNC_TIMED_OUT), a running one is
+                // interrupted, the result reported is its real outcome either way:
+                timedOut.set(true);
+                if (r != null) {
+                    r.cancel(cbc.requestId);
+                }
+                done.await();
+            }
+        } catch (Exception ex) {
+            FLog.e(TAG, "SQLitePlugin." + actionAsString + "Sync() failed", ex);
+            WritableMap failure = Arguments.createMap();
+            failure.putString("type", "error");
+            failure.putString("message", "Unexpected error: " + ex.getMessage());
+            return failure;
+        }
+        return response;
+    }
+
+    /**
+     * Statistics of an open database, as sent by the getStats action (e.g. for native code
+     * of the app to log or upload them).
+     *
+     * @param dbname The name of the database file
+     * @return the statistics, null if the database is not open
+     */
+    public static WritableMap getStats(String dbname) {
+        DBRunner r = dbrmap.get(dbname);
+        return r == null ? null : r.getStats();
+    }
+
+    /**
+     * Reset the statistics of an open database.
+     *
+     * @param dbname The name of the database file
+     * @return false if the database is not open
+     */
+    public static boolean resetStats(String dbname) {
+        DBRunner r = dbrmap.get(dbname);
+        if (r == null) {
+            return false;
+        }
+        r.resetStats();
+        return true;
+    }
+
+    /**
+     * Slow query log of an open database, as sent by the getSlowQueries action.
+     *
+     * @param dbname The name of the database file
+     * @return the logged statements, oldest first, null if the database is not open
+     */
+    public static WritableArray getSlowQueries(String dbname) {
+        DBRunner r = dbrmap.get(dbname);
+        return r == null ? null : r.getSlowQueries();
+    }
+
+    /**
+     * Switch the trace sections of all databases on or off, as the setTracing action
+     * (e.g. for native code of the app to trace its startup).
+     *
+     * @param enabled Emit trace sections while a trace is captured
+     */
+    public static void setTracing(boolean enabled) {
+        SQLiteTrace.setEnabled(enabled);
+    }
+
     /**
      *
      * @return the thread pool available for scheduling background execution
@@ -233,13 +540,70 @@ public class SQLitePlugin extends ReactContextBaseJavaModule {
                 deleteDatabase(dbname, cbc);
                 break;
 
+            case cancel:
+                dbname = SQLitePluginConverter.getString((ReadableMap) SQLitePluginConverter.get(args,"dbargs",null),"dbname","");
+                DBRunner cancelRunner = dbrmap.get(dbname);
+                if (cancelRunner != null) {
+                    WritableMap cancelResult = Arguments.createMap();
+                    cancelResult.putInt("cancelled", cancelRunner.cancel(SQLitePluginConverter.getString(args,"requestId","")));
+                    cbc.success(cancelResult);
+                } else {
+                    cbc.error("database not open");
+                }
+                break;
+
+            case getQueueStatus:
+                dbname = SQLitePluginConverter.getString((ReadableMap) SQLitePluginConverter.get(args,"dbargs",null),"dbname","");
+                DBRunner statusRunner = dbrmap.get(dbname);
+                if (statusRunner != null) {
+                    cbc.success(statusRunner.getQueueStatus());
+                } else {
+                    cbc.error("database not open");
+                }
+                break;
+
+            case getStats:
+            case resetStats:
+                dbname = SQLitePluginConverter.getString((ReadableMap) SQLitePluginConverter.get(args,"dbargs",null),"dbname","");
+                DBRunner statsRunner = dbrmap.get(dbname);
+                if (statsRunner == null) {
+                    cbc.error("database not open");
+                } else if (action == Action.getStats) {
+                    cbc.success(statsRunner.getStats());
+                } else {
+                    statsRunner.resetStats();
+                    cbc.success("stats reset");
+                }
+                break;
+
+            case getSlowQueries:
+                dbname = SQLitePluginConverter.getString((ReadableMap) SQLitePluginConverter.get(args,"dbargs",null),"dbname","");
+                DBRunner slowQueryRunner = dbrmap.get(dbname);
+                if (slowQueryRunner != null) {
+                    cbc.success(slowQueryRunner.getSlowQueries());
+                } else {
+                    cbc.error("database not open");
+                }
+                break;
+
+            case setTracing:
+                boolean tracing = SQLitePluginConverter.getBoolean(args,"enabled",false);
+                SQLiteTrace.setEnabled(tracing);
+                cbc.success(tracing ? "tracing enabled" : "tracing disabled");
+                break;
+
             case executeSqlBatch:
             case backgroundExecuteSqlBatch:
+            case executeTransaction:
                 String [] queries;
                 String [] queryIDs = null;
                 ReadableArray [] queryParams = null;
+                ResultFormat [] queryFormats = null;
+                SQLiteBlobEncoding [] queryBlobEncodings = null;
                 ReadableMap dbArgs = (ReadableMap) SQLitePluginConverter.get(args,"dbargs",null);
                 dbname = SQLitePluginConverter.getString(dbArgs,"dbname","");
+                boolean readOnly = SQLitePluginConverter.getBoolean(args,"readOnly",false);
+                boolean atomic = SQLitePluginConverter.getBoolean(args,"atomic",false);
                 ReadableArray txArgs = (ReadableArray) SQLitePluginConverter.get(args,"executes",null);
 
                 if (txArgs.isNull(0)) {
@@ -249,21 +613,67 @@ public class SQLitePlugin extends ReactContextBaseJavaModule {
                     queries = new String[len];
                     queryIDs = new String[len];
                     queryParams = new ReadableArray[len];
+                    queryFormats = new ResultFormat[len];
+                    queryBlobEncodings = new SQLiteBlobEncoding[len];
 
                     for (int i = 0; i < len; i++) {
                         ReadableMap queryArgs = (ReadableMap) SQLitePluginConverter.get(txArgs,i,null);
                         queries[i] = SQLitePluginConverter.getString(queryArgs,"sql","");
                         queryIDs[i] = SQLitePluginConverter.getString(queryArgs,"qid","");
                         queryParams[i] = (ReadableArray) SQLitePluginConverter.get(queryArgs,"params",null);
+                        queryFormats[i] = getResultFormat(SQLitePluginConverter.getString(queryArgs,"format",null));
+                        queryBlobEncodings[i] = SQLiteBlobEncoding.fromString(SQLitePluginConverter.getString(queryArgs,"blobs",null));
                     }
                 }
 
                 // put db query in the queue to be executed in the db thread:
-                DBQuery q = new DBQuery(queries, queryIDs, queryParams, cbc);
+                DBQuery q;
+                boolean pureRead = SQLiteStatementInfo.isReadOnly(queries);
+                if (action == Action.executeTransaction) {
+                    // (only a read transaction of JS is read-only, as with BEGIN/COMMIT batches)
+                    q = new DBQuery(action, queries, queryIDs, queryParams, queryFormats, queryBlobEncodings, false, readOnly, cbc);
+                    pureRead = false;
+                } else {
+                    q = new DBQuery(Action.executeSqlBatch, queries, queryIDs, queryParams, queryFormats, queryBlobEncodings, atomic, readOnly, cbc);
+                }
+                setRequestOptions(q, action, args);
                 DBRunner r = dbrmap.get(dbname);
                 if (r != null) {
+                    // only standalone reads can be dropped (dropOldestRead policy of the queue limit),
+                    // not a batch of a transaction open on the writer or on a reader:
+                    q.read = action == Action.executeTransaction ? readOnly
+                            : pureRead && !r.inTransaction && r.pinnedReader == null;
+                    try {
+                        // atomic batches are executed by the writer, they are part of its group commit:
+                        r.submit(q, args, readOnly, !atomic && pureRead);
+                    } catch(Exception ex) {
+                        FLog.e(TAG, "couldn't add to queue", ex);
+                        cbc.error("couldn't add to queue");
+                    }
+                } else {
+                    cbc.error("database not open");
+                }
+                break;
+
+            case executeMany:
+            case executeScript:
+            case openCursor:
+            case fetch:
+            case closeCursor:
+                dbname = SQLitePluginConverter.getString((ReadableMap) SQLitePluginConverter.get(args,"dbargs",null),"dbname","");
+                DBRunner runner = dbrmap.get(dbname);
+                if (runner != null) {
                     try {
-                        r.q.put(q);
+                        // cursors live on the db thread, every cursor request goes through the queue
+                        // (as does executeMany, to keep its order with the batches):
+                        DBQuery query = new DBQuery(action, args, cbc);
+                        setRequestOptions(query, action, args);
+                        // (a cursor is always closed, also when the queues are full)
+                        if (action == Action.closeCursor) {
+                            runner.post(query);
+                        } else {
+                            runner.submit(query, args, false, false);
+                        }
                     } catch(Exception ex) {
                         FLog.e(TAG, "couldn't add to queue", ex);
                         cbc.error("couldn't add to queue");
@@ -277,6 +687,17 @@ public class SQLitePlugin extends ReactContextBaseJavaModule {
         return true;
     }
 
+    /**
+     * Stop the worker threads of the scheduler (if any) once they have run their queued requests.
+     */
+    @Override
+    public void onCatalystInstanceDestroy() {
+        super.onCatalystInstanceDestroy();
+        if (scheduler != null) {
+            scheduler.shutdown();
+        }
+    }
+
     /**
      * Clean up and close all open databases.
      */
@@ -289,7 +710,7 @@ public class SQLitePlugin extends ReactContextBaseJavaModule {
             DBRunner r = dbrmap.get(dbname);
             try {
                 // stop the db runner thread:
-                r.q.put(new DBQuery());
+                r.post(new DBQuery());
             } catch(Exception ex) {
                 FLog.e(TAG, "couldn't stop db thread for db: " + dbname,ex);
             }
@@ -321,7 +742,11 @@ public class SQLitePlugin extends ReactContextBaseJavaModule {
         } else {
             r = new DBRunner(dbname, options, cbc);
             dbrmap.put(dbname, r);
-            this.getThreadPool().execute(r);
+            if (scheduler != null) {
+                r.start(scheduler.assign());
+            } else {
+                this.getThreadPool().execute(r);
+            }
         }
     }
 
@@ -331,13 +756,13 @@ public class SQLitePlugin extends ReactContextBaseJavaModule {
      * @param dbname - The name of the database file
      * @param assetFilePath - path to the pre-populated database file
      * @param openFlags - the db open options
-     * @param cbc - JS callback
      * @return instance of SQLite database
      * @throws Exception
      */
-    private SQLiteDatabase openDatabase(String dbname, String assetFilePath, int openFlags, CallbackContext cbc) throws Exception {
+    private SQLiteDatabase openDatabase(String dbname, String assetFilePath, int openFlags) throws Exception {
         InputStream in = null;
         File dbfile = null;
+        boolean traced = SQLiteTrace.begin("openDatabase", dbname);
         try {
             SQLiteDatabase database = this.getDatabase(dbname);
             if (database != null && database.isOpen()) {
@@ -411,14 +836,10 @@ public class SQLitePlugin extends ReactContextBaseJavaModule {
 
             FLog.v(TAG, "DB file is ready, proceeding to OPEN SQLite DB: " + dbfile.getAbsolutePath());
 
-            SQLiteDatabase mydb = SQLiteDatabase.openDatabase(dbfile.getAbsolutePath(), null, openFlags);
-
-            if (cbc != null)
-                cbc.success("Database opened");
-
-            return mydb;
+            return SQLiteDatabase.openDatabase(dbfile.getAbsolutePath(), null, openFlags);
         } finally {
             closeQuietly(in);
+            SQLiteTrace.end(traced);
         }
     }
 
@@ -432,6 +853,7 @@ public class SQLitePlugin extends ReactContextBaseJavaModule {
      */
     private void createFromAssets(String dbName, File dbfile, InputStream assetFileInputStream) throws Exception {
         OutputStream out = null;
+        boolean traced = SQLiteTrace.begin("createFromAssets", dbName);
 
         try {
             FLog.v(TAG, "Copying pre-populated DB content");
@@ -455,6 +877,7 @@ public class SQLitePlugin extends ReactContextBaseJavaModule {
             FLog.v(TAG, "Copied pre-populated DB asset to: " + newDbFile.getAbsolutePath());
         } finally {
             closeQuietly(out);
+            SQLiteTrace.end(traced);
         }
     }
 
@@ -468,7 +891,7 @@ public class SQLitePlugin extends ReactContextBaseJavaModule {
         DBRunner r = dbrmap.get(dbName);
         if (r != null) {
             try {
-                r.q.put(new DBQuery(false, cbc));
+                r.post(new DBQuery(false, cbc));
             } catch(Exception ex) {
                 if (cbc != null) {
                     cbc.error("couldn't close database" + ex);
@@ -488,7 +911,15 @@ public class SQLitePlugin extends ReactContextBaseJavaModule {
      * @param dbName   The name of the database file
      */
     private void closeDatabaseNow(String dbName) {
-        SQLiteDatabase mydb = this.getDatabase(dbName);
+        DBRunner r = dbrmap.get(dbName);
+        SQLiteDatabase mydb = (r == null) ? null : r.mydb;
+
+        if (r != null) {
+            // open cursors and cached statements must be released before the connection goes away
+            closeCursors(r);
+            r.statementCache.clear();
+            FLog.v(TAG, "statement cache for db " + dbName + ": " + r.statementCache);
+        }
 
         if (mydb != null) {
             mydb.close();
@@ -509,10 +940,14 @@ public class SQLitePlugin extends ReactContextBaseJavaModule {
             File databasePath = this.getContext().getDatabasePath(dbNameToAttach);
             String filePathToAttached = databasePath.getAbsolutePath();
             String statement = "ATTACH DATABASE '" + filePathToAttached + "' AS " + dbAlias;
+            // reader connections attach lazily, before their next batch:
+            runner.attachStatements.add(statement);
             // TODO: get rid of qid as it's just hardcoded to 1111 in js layer
             DBQuery query = new DBQuery(new String [] {statement}, new String[] {"1111"}, null, cbc);
+            // ahead of waiting background requests, which may already use the attached database:
+            query.background = false;
             try {
-                runner.q.put(query);
+                runner.post(query);
             } catch (InterruptedException ex) {
                 cbc.error("Can't put query in the queue. Interrupted.");
             }
@@ -530,7 +965,7 @@ public class SQLitePlugin extends ReactContextBaseJavaModule {
         DBRunner r = dbrmap.get(dbname);
         if (r != null) {
             try {
-                r.q.put(new DBQuery(true, cbc));
+                r.post(new DBQuery(true, cbc));
             } catch(Exception ex) {
                 if (cbc != null) {
                     cbc.error("couldn't close database" + ex);
@@ -570,51 +1005,122 @@ public class SQLitePlugin extends ReactContextBaseJavaModule {
         return (r == null) ? null :  r.mydb;
     }
 
+    /**
+     * Switch the database to write-ahead logging so read-only connections can read while
+     * this connection writes.
+     *
+     * NOTE: with a PRAGMA rather than SQLiteDatabase.enableWriteAheadLogging(), which makes
+     * the framework run reads on a pool of connections of its own, without the per-connection
+     * settings of the performance profile (the reader pool connections get them).
+     *
+     * @return true if WAL is enabled
+     */
+    private static boolean enableWriteAheadLogging(SQLiteDatabase mydb) {
+        Cursor cur = mydb.rawQuery("PRAGMA journal_mode=WAL", null);
+        try {
+            return cur.moveToFirst() && "wal".equalsIgnoreCase(cur.getString(0));
+        } finally {
+            cur.close();
+        }
+    }
+
+    /**
+     * Statements used to apply a performance profile to a database connection.
+     */
+    private static SQLitePerformanceProfile.Connection profileConnection(final SQLiteDatabase mydb) {
+        return new SQLitePerformanceProfile.Connection() {
+            @Override
+            public String query(String sql) {
+                Cursor cur = mydb.rawQuery(sql, null);
+                try {
+                    return cur.moveToFirst() ? cur.getString(0) : null;
+                } finally {
+                    cur.close();
+                }
+            }
+
+            @Override
+            public boolean enableWriteAheadLogging() {
+                return SQLitePlugin.enableWriteAheadLogging(mydb);
+            }
+        };
+    }
+
     /**
      * Executes a batch request and sends the results via cbc.
      *
-     * @param dbname     The name of the database.
+     * Query results are read into row buffers, the result array is built and sent
+     * by the result serializer of the database while the caller goes on.
+     *
+     * @param mydb       The database connection to execute on.
      * @param queries   Array of query strings
      * @param queryParams Array of JSON query parameters
      * @param queryIDs   Array of query ids
+     * @param queryFormats Array of requested result formats (may be null)
+     * @param queryBlobEncodings Array of requested BLOB encodings (may be null)
+     * @param statementCache compiled statement cache of the database connection
+     * @param cursorSettings cursor window settings of the database
+     * @param metrics    metrics of the database, see SQLiteMetrics
+     * @param slowQueryLog slow query log of the database (may be null), see SQLiteSlowQueryLog
+     * @param atomic     Stop at the first failed statement (atomic batch of a group commit)
+     * @param readOnly   Batch of a read transaction (marked by JS), see beginTransaction()
+     * @param cancellation cancellation signal of the request (may be null): cancels a running
+     *                   query, the statements after it fail without being executed
+     * @param resultSerializer result serializer of the database
      * @param cbc        Callback context from Cordova API
+     * @return index of the first failed statement, -1 if all statements succeeded
      */
     @SuppressLint("NewApi")
-    private void executeSqlBatch(String dbname, String[] queries, ReadableArray[] queryParams,
-                                 String[] queryIDs, CallbackContext cbc) {
-
-        SQLiteDatabase mydb = getDatabase(dbname);
+    private int executeSqlBatch(SQLiteDatabase mydb, String[] queries, ReadableArray[] queryParams,
+                                    String[] queryIDs, ResultFormat[] queryFormats,
+                                    SQLiteBlobEncoding[] queryBlobEncodings,
+                                    SQLiteStatementCache statementCache, SQLiteQueryCursor.Settings cursorSettings,
+                                    SQLiteMetrics metrics, SQLiteSlowQueryLog slowQueryLog,
+                                    boolean atomic, boolean readOnly, CancellationSignal cancellation,
+                                    SQLiteResultSerializer resultSerializer, CallbackContext cbc) {
 
         if (mydb == null) {
             // not allowed - can only happen if someone has closed (and possibly deleted) a database and then re-used the database
             cbc.error("database has been closed");
-            return;
+            return 0;
         }
 
+        int failedIndex = -1;
+
         String query;
         String query_id;
         int len = queries.length;
-        WritableArray batchResults = Arguments.createArray();
+        SQLiteBatchResults batchResults = new SQLiteBatchResults(len);
+        boolean batchTraced = SQLiteTrace.begin("executeSqlBatch");
 
         for (int i = 0; i < len; i++) {
             query_id = queryIDs[i];
+            query = queries[i];
+            QueryType queryType = SQLiteStatementInfo.getQueryType(query);
+            // (section named after the statement kind)
+            boolean traced = SQLiteTrace.begin(queryType.name());
+            long startedAt = System.nanoTime();
 
             WritableMap queryResult = null;
+            SQLiteRowBuffer queryRows = null;
             String errorMessage = "unknown";
 
             try {
+                if (cancellation != null) {
+                    cancellation.throwIfCanceled();
+                }
                 boolean needRawQuery = true;
-                query = queries[i];
-                QueryType queryType = getQueryType(query);
+                ReadableArray params = queryParams != null ? batchResults.resolveRefs(queryParams[i]) : null;
 
                 if (queryType == QueryType.update || queryType == QueryType.delete) {
                     SQLiteStatement myStatement = null;
                     int rowsAffected = -1; // (assuming invalid)
 
                     try {
-                        myStatement = mydb.compileStatement(query);
-                        if (queryParams != null) {
-                            bindArgsToStatement(myStatement, queryParams[i]);
+                        myStatement = statementCache.acquire(mydb, query);
+                        metrics.recordCompile(queryType, startedAt);
+                        if (params != null) {
+                            bindArgsToStatement(myStatement, params);
                         }
 
                         rowsAffected = myStatement.executeUpdateDelete();
@@ -626,7 +1132,7 @@ public class SQLitePlugin extends ReactContextBaseJavaModule {
                         FLog.e(TAG, "SQLiteStatement.executeUpdateDelete() failed", ex);
                         needRawQuery = false;
                     } finally {
-                        closeQuietly(myStatement);
+                        statementCache.release(query, myStatement);
                     }
 
                     if (rowsAffected != -1) {
@@ -636,17 +1142,18 @@ public class SQLitePlugin extends ReactContextBaseJavaModule {
                 }
 
                 // INSERT:
-                else if (queryType == QueryType.insert && queryParams != null) {
+                else if (queryType == QueryType.insert && params != null) {
                     FLog.d("executeSqlBatch","INSERT");
                     needRawQuery = false;
 
-                    SQLiteStatement myStatement = mydb.compileStatement(query);
-
-                    bindArgsToStatement(myStatement, queryParams[i]);
+                    SQLiteStatement myStatement = statementCache.acquire(mydb, query);
+                    metrics.recordCompile(queryType, startedAt);
 
                     long insertId; // (invalid) = -1
 
                     try {
+                        bindArgsToStatement(myStatement, params);
+
                         insertId = myStatement.executeInsert();
 
                         // statement has finished with no constraint violation:
@@ -663,14 +1170,14 @@ public class SQLitePlugin extends ReactContextBaseJavaModule {
                         errorMessage = ex.getMessage();
                         FLog.e(TAG, "SQLiteDatabase.executeInsert() failed", ex);
                     } finally {
-                        closeQuietly(myStatement);
+                        statementCache.release(query, myStatement);
                     }
                 }
 
                 else if (queryType == QueryType.begin) {
                     needRawQuery = false;
                     try {
-                        mydb.beginTransaction();
+                        beginTransaction(mydb, readOnly);
 
                         queryResult = Arguments.createMap();
                         queryResult.putInt("rowsAffected", 0);
@@ -683,8 +1190,7 @@ public class SQLitePlugin extends ReactContextBaseJavaModule {
                 else if (queryType == QueryType.commit) {
                     needRawQuery = false;
                     try {
-                        mydb.setTransactionSuccessful();
-                        mydb.endTransaction();
+                        endTransaction(mydb, isDeferredTransaction(mydb, readOnly), true);
 
                         queryResult = Arguments.createMap();
                         queryResult.putInt("rowsAffected", 0);
@@ -697,7 +1203,7 @@ public class SQLitePlugin extends ReactContextBaseJavaModule {
                 else if (queryType == QueryType.rollback) {
                     needRawQuery = false;
                     try {
-                        mydb.endTransaction();
+                        endTransaction(mydb, isDeferredTransaction(mydb, readOnly), false);
 
                         queryResult = Arguments.createMap();
                         queryResult.putInt("rowsAffected", 0);
@@ -709,52 +1215,518 @@ public class SQLitePlugin extends ReactContextBaseJavaModule {
 
                 // raw query for other statements:
                 if (needRawQuery) {
-                    queryResult = this.executeSqlStatementQuery(mydb, query, queryParams != null ? queryParams[i] : null, cbc);
+                    queryRows = this.executeSqlStatementQuery(mydb, query, queryType, params,
+                            cursorSettings, metrics, cancellation, cbc);
                 }
+            } catch (OperationCanceledException ex) {
+                errorMessage = REQUEST_CANCELLED;
             } catch (Exception ex) {
                 errorMessage = ex.getMessage();
                 FLog.e(TAG, "SQLitePlugin.executeSql[Batch](): failed", ex);
             }
+            metrics.recordStatement(queryType, startedAt, queryResult == null && queryRows == null, queryRows);
+            SQLiteTrace.end(traced);
+            if (slowQueryLog != null) {
+                long duration = System.nanoTime() - startedAt;
+                if (slowQueryLog.isSlow(duration)) {
+                    slowQueryLog.record(queryType, query, queryParams != null && queryParams[i] != null ? queryParams[i].size() : 0,
+                            duration, queryResult == null && queryRows == null, queryRows, explainer(mydb));
+                }
+            }
 
             if (queryResult != null) {
-                WritableMap r = Arguments.createMap();
-                r.putString("qid", query_id);
-
-                r.putString("type", "success");
-                r.putMap("result", queryResult);
-
-                batchResults.pushMap(r);
+                batchResults.success(query_id, queryResult);
+            } else if (queryRows != null) {
+                batchResults.success(query_id, Arguments.createMap(), queryRows,
+                        queryFormats != null ? queryFormats[i] : ResultFormat.rows,
+                        queryBlobEncodings != null ? queryBlobEncodings[i] : SQLiteBlobEncoding.base64);
             } else {
-                WritableMap r = Arguments.createMap();
-                r.putString("qid", query_id);
-                r.putString("type", "error");
-
-                WritableMap er = Arguments.createMap();
-                er.putString("message", errorMessage);
-                r.putMap("result", er);
+                batchResults.error(query_id, errorMessage);
 
-                batchResults.pushMap(r);
+                if (failedIndex == -1) {
+                    failedIndex = i;
+                }
+                if (atomic) {
+                    break;
+                }
             }
         }
 
-        cbc.success(batchResults);
+        SQLiteTrace.end(batchTraced);
+
+        resultSerializer.execute(batchResults.sendTo(cbc, metrics));
+        return failedIndex;
     }
 
-    private QueryType getQueryType(String query) {
-        Matcher matcher = FIRST_WORD.matcher(query);
-        if (matcher.find()) {
-            try {
-                return QueryType.valueOf(matcher.group(1).toLowerCase(Locale.US));
-            } catch (IllegalArgumentException ignore) {
-                // unknown verb
-            }
-        }
-        return QueryType.other;
+    /**
+     * @return true if a transaction is begun deferred, as a savepoint the framework doesn't know of:
+     *         on a read-only connection, which can't begin the immediate or exclusive transactions
+     *         of the framework, and for a read transaction unless the connection has a WAL connection
+     *         pool, whose reads the framework only keeps on one connection in its own transactions
+     */
+    private static boolean isDeferredTransaction(SQLiteDatabase mydb, boolean readOnly) {
+        return mydb.isReadOnly() || (readOnly && !mydb.isWriteAheadLoggingEnabled());
     }
 
-    private void bindArgsToStatement(SQLiteStatement myStatement, ReadableArray sqlArgs) {
-        for (int i = 0; i < sqlArgs.size(); i++) {
+    /**
+     * Begin a transaction, for a BEGIN statement of a batch and for executeTransaction alike:
+     * deferred (BEGIN DEFERRED, no lock until the first read) as a savepoint, which is passed
+     * to SQLite as is, see isDeferredTransaction(), otherwise by the framework, non-exclusive
+     * for a read transaction.
+     *
+     * @param readOnly   Read transaction (marked by JS)
+     * @return true if deferred, see endTransaction()
+     */
+    private static boolean beginTransaction(SQLiteDatabase mydb, boolean readOnly) {
+        if (isDeferredTransaction(mydb, readOnly)) {
+            mydb.execSQL("SAVEPOINT " + READ_SAVEPOINT);
+            return true;
+        }
+        if (readOnly) {
+            mydb.beginTransactionNonExclusive();
+        } else {
+            mydb.beginTransaction();
+        }
+        return false;
+    }
+
+    /**
+     * Commit or roll back a transaction begun by beginTransaction().
+     *
+     * @param deferred   as returned by beginTransaction()
+     */
+    private static void endTransaction(SQLiteDatabase mydb, boolean deferred, boolean commit) {
+        if (deferred) {
+            if (!commit) {
+                // leading ';' keeps the framework from taking this for a transaction rollback:
+                mydb.execSQL(";ROLLBACK TO " + READ_SAVEPOINT);
+            }
+            mydb.execSQL("RELEASE " + READ_SAVEPOINT);
+        } else {
+            if (commit) {
+                mydb.setTransactionSuccessful();
+            }
+            mydb.endTransaction();
+        }
+    }
+
+    /**
+     * Executes a batch as one transaction (executeTransaction) and sends the result via cbc:
+     * {results: batch result array, failedIndex: index of the failed statement or -1}.
+     *
+     * The transaction stops at the first failed statement and is rolled back, otherwise
+     * committed. It is begun as a BEGIN statement of a batch, see beginTransaction().
+     *
+     * @param mydb       The database connection to execute on.
+     * @param readOnly   Read-only transaction (its statements are checked by JS, as in a
+     *                   read transaction of batches)
+     * @param metrics    metrics of the database, see SQLiteMetrics
+     * @param slowQueryLog slow query log of the database (may be null), see SQLiteSlowQueryLog
+     * @param cancellation cancellation signal of the request (may be null), see executeSqlBatch
+     * @param cbc        Callback context from Cordova API
+     */
+    private void executeTransaction(SQLiteDatabase mydb, String[] queries, ReadableArray[] queryParams,
+                                    String[] queryIDs, ResultFormat[] queryFormats,
+                                    SQLiteBlobEncoding[] queryBlobEncodings, boolean readOnly,
+                                    SQLiteStatementCache statementCache, SQLiteQueryCursor.Settings cursorSettings,
+                                    SQLiteMetrics metrics, SQLiteSlowQueryLog slowQueryLog,
+                                    CancellationSignal cancellation,
+                                    SQLiteResultSerializer resultSerializer, CallbackContext cbc) {
+        if (mydb == null) {
+            cbc.error("database has been closed");
+            return;
+        }
+
+        String transactionError = null;
+        for (int i = 0; i < queries.length && transactionError == null; i++) {
+            SQLiteStatementInfo info = SQLiteStatementInfo.get(queries[i]);
+            if (info.queryType == QueryType.begin || info.queryType == QueryType.commit || info.queryType == QueryType.rollback) {
+                transactionError = "statement " + i + ": transaction control statements are not allowed in a transaction";
+            }
+        }
+        if (transactionError == null && mydb.inTransaction()) {
+            transactionError = "a transaction is already open";
+        }
+
+        DeferredResult result = new DeferredResult();
+        int failedIndex = -1;
+        if (transactionError == null) {
+            boolean traced = SQLiteTrace.begin("executeTransaction");
+            long startedAt = System.nanoTime();
+            try {
+                boolean deferred = beginTransaction(mydb, readOnly);
+                boolean committed = false;
+                try {
+                    failedIndex = executeSqlBatch(mydb, queries, queryParams, queryIDs, queryFormats, queryBlobEncodings,
+                            statementCache, cursorSettings, metrics, slowQueryLog, true, readOnly, cancellation, resultSerializer, result.cbc);
+                    if (failedIndex == -1) {
+                        endTransaction(mydb, deferred, true);
+                        committed = true;
+                    }
+                } finally {
+                    // (a failed commit has ended the transaction of the framework)
+                    if (!committed && (deferred || mydb.inTransaction())) {
+                        endTransaction(mydb, deferred, false);
+                    }
+                    metrics.recordTransaction(startedAt, committed);
+                }
+            } catch (Exception ex) {
+                FLog.e(TAG, "SQLitePlugin.executeTransaction() failed", ex);
+                transactionError = "transaction failed: " + ex.getMessage();
+            }
+            SQLiteTrace.end(traced);
+        }
+
+        // (queued behind the encoding of the results)
+        resultSerializer.execute(result.deliverTransactionTo(cbc, failedIndex, transactionError));
+    }
+
+    /**
+     * Executes a request queued outside of executeSqlBatch (in the db thread).
+     */
+    private void executeAction(DBRunner runner, Action action, ReadableMap args, CallbackContext cbc) {
+        if (action == Action.executeMany) {
+            executeMany(runner, args, cbc);
+        } else if (action == Action.executeScript) {
+            executeScript(runner, args, cbc);
+        } else {
+            executeCursorAction(runner, action, args, cbc);
+        }
+    }
+
+    /**
+     * Executes one statement for many parameter rows (in the db thread) and sends
+     * the aggregate counts via cbc.
+     *
+     * The statement is compiled once and re-bound for every row. Unless a transaction
+     * is already open, all rows are executed in an implicit transaction which is rolled
+     * back if any row fails.
+     *
+     * @param runner     The db runner
+     * @param args       sql, rows (array of parameter arrays), returnInsertIds
+     * @param cbc        Callback context from Cordova API
+     */
+    private void executeMany(DBRunner runner, ReadableMap args, CallbackContext cbc) {
+        SQLiteDatabase mydb = runner.mydb;
+        if (mydb == null) {
+            cbc.error("database has been closed");
+            return;
+        }
+
+        String query = SQLitePluginConverter.getString(args,"sql","");
+        ReadableArray rows = (ReadableArray) SQLitePluginConverter.get(args,"rows",null);
+        boolean returnInsertIds = SQLitePluginConverter.getBoolean(args,"returnInsertIds",false);
+        int rowCount = rows == null ? 0 : rows.size();
+        boolean isInsert = SQLiteStatementInfo.getQueryType(query) == QueryType.insert;
+        boolean ownTransaction = !mydb.inTransaction();
+
+        long rowsAffected = 0;
+        long firstInsertId = -1;
+        long lastInsertId = -1;
+        int i = 0;
+
+        SQLiteStatement myStatement = null;
+        try {
+            if (ownTransaction) {
+                mydb.beginTransaction();
+            }
+            try {
+                myStatement = runner.statementCache.acquire(mydb, query);
+                for (; i < rowCount; i++) {
+                    myStatement.clearBindings();
+                    bindArgsToStatement(myStatement, rows.getArray(i));
+                    if (isInsert) {
+                        long insertId = myStatement.executeInsert();
+                        if (insertId != -1) {
+                            rowsAffected++;
+                            if (firstInsertId == -1) {
+                                firstInsertId = insertId;
+                            }
+                            lastInsertId = insertId;
+                        }
+                    } else {
+                        rowsAffected += myStatement.executeUpdateDelete();
+                    }
+                }
+                if (ownTransaction) {
+                    mydb.setTransactionSuccessful();
+                }
+            } finally {
+                runner.statementCache.release(query, myStatement);
+                if (ownTransaction) {
+                    mydb.endTransaction();
+                }
+            }
+        } catch (Exception ex) {
+            FLog.e(TAG, "SQLitePlugin.executeMany() failed at row " + i, ex);
+            cbc.error("row " + i + ": " + ex.getMessage());
+            return;
+        }
+
+        WritableMap result = Arguments.createMap();
+        result.putInt("rowCount", rowCount);
+        result.putDouble("rowsAffected", rowsAffected);
+        if (returnInsertIds && firstInsertId != -1) {
+            result.putDouble("firstInsertId", firstInsertId);
+            result.putDouble("lastInsertId", lastInsertId);
+        }
+        cbc.success(result);
+    }
+
+    /**
+     * Executes a SQL script (in the db thread) and sends a summary via cbc:
+     * {statements, rowsAffected}.
+     *
+     * The script is split into its statements natively. Unless a transaction is already
+     * open, they are executed in an implicit transaction which is rolled back if any
+     * statement fails.
+     *
+     * @param runner     The db runner
+     * @param args       sql
+     * @param cbc        Callback context from Cordova API
+     */
+    private void executeScript(DBRunner runner, ReadableMap args, CallbackContext cbc) {
+        SQLiteDatabase mydb = runner.mydb;
+        if (mydb == null) {
+            cbc.error("database has been closed");
+            return;
+        }
+
+        List<String> statements = SQLiteStatementInfo.splitScript(SQLitePluginConverter.getString(args,"sql",""));
+        boolean ownTransaction = !mydb.inTransaction();
+        long rowsAffected;
+        try {
+            if (ownTransaction) {
+                mydb.beginTransaction();
+            }
+            try {
+                rowsAffected = runScript(mydb, statements);
+                if (ownTransaction) {
+                    mydb.setTransactionSuccessful();
+                }
+            } finally {
+                if (ownTransaction) {
+                    mydb.endTransaction();
+                }
+            }
+        } catch (Exception ex) {
+            FLog.e(TAG, "SQLitePlugin.executeScript() failed", ex);
+            cbc.error(ex.getMessage());
+            return;
+        }
+
+        WritableMap result = Arguments.createMap();
+        result.putInt("statements", statements.size());
+        result.putDouble("rowsAffected", rowsAffected);
+        cbc.success(result);
+    }
+
+    /**
+     * Execute the statements of a script one by one (in the current thread).
+     *
+     * @return number of rows changed by the statements
+     * @throws Exception naming the index of the failed statement
+     */
+    private long runScript(SQLiteDatabase mydb, List<String> statements) throws Exception {
+        SQLiteStatement totalChanges = mydb.compileStatement("SELECT total_changes()");
+        try {
+            long changesBefore = totalChanges.simpleQueryForLong();
+            for (int i = 0; i < statements.size(); i++) {
+                String query = statements.get(i);
+                // (not cached, script statements are usually run once)
+                SQLiteStatementInfo info = SQLiteStatementInfo.classify(query);
+                try {
+                    if (info.queryType == QueryType.begin || info.queryType == QueryType.commit || info.queryType == QueryType.rollback) {
+                        throw new Exception("transaction control statements are not allowed in a script");
+                    }
+                    if (info.readOnly || SQLiteStatementInfo.isPragma(query)) {
+                        // execSQL refuses statements which return rows:
+                        Cursor cur = mydb.rawQuery(query, null);
+                        try {
+                            cur.moveToFirst();
+                        } finally {
+                            cur.close();
+                        }
+                    } else {
+                        mydb.execSQL(query);
+                    }
+                } catch (Exception ex) {
+                    throw new Exception("statement " + i + ": " + ex.getMessage(), ex);
+                }
+            }
+            return totalChanges.simpleQueryForLong() - changesBefore;
+        } finally {
+            totalChanges.close();
+        }
+    }
+
+    /**
+     * Executes a result cursor request (in the db thread) and sends the results via cbc.
+     *
+     * @param runner     The db runner owning the cursors
+     * @param action     openCursor, fetch or closeCursor
+     * @param args       Arguments from JS
+     * @param cbc        Callback context from Cordova API
+     */
+    private void executeCursorAction(DBRunner runner, Action action, ReadableMap args, CallbackContext cbc) {
+        SQLiteResultCursor cursor = null;
+        boolean needPrefetch = false;
+
+        try {
+            switch (action) {
+                case openCursor: {
+                    SQLiteDatabase mydb = runner.mydb;
+                    if (mydb == null) {
+                        cbc.error("database has been closed");
+                        return;
+                    }
+
+                    String query = SQLitePluginConverter.getString(args,"sql","");
+                    ReadableArray queryParams = (ReadableArray) SQLitePluginConverter.get(args,"params",null);
+                    boolean readAhead = SQLitePluginConverter.getBoolean(args,"readAhead",false);
+                    SQLiteBlobEncoding blobEncoding = SQLiteBlobEncoding.fromString(SQLitePluginConverter.getString(args,"blobs",null));
+
+                    Cursor cur = rawQueryTyped(mydb, query, queryParams, runner.cursorSettings, null);
+                    cursor = SQLiteResultCursor.fromCursor(nextCursorId.incrementAndGet(), cur, readAhead, blobEncoding);
+                    runner.cursors.put(cursor.id, cursor);
+
+                    WritableMap result = Arguments.createMap();
+                    result.putInt("cursorId", cursor.id);
+                    result.putArray("columns", toWritableArray(cursor.getColumnNames()));
+                    cbc.success(result);
+                    break;
+                }
+
+                case fetch: {
+                    int cursorId = SQLitePluginConverter.getInt(args,"cursorId",-1);
+                    int count = SQLitePluginConverter.getInt(args,"count",100);
+                    cursor = runner.cursors.get(cursorId);
+                    if (cursor == null) {
+                        cbc.error("cursor is not open");
+                        return;
+                    }
+
+                    WritableArray rows = cursor.fetch(count);
+                    boolean done = cursor.isDone();
+                    if (done) {
+                        runner.cursors.remove(cursorId);
+                        cursor.closeNow();
+                    }
+
+                    WritableMap result = Arguments.createMap();
+                    result.putArray("rows", rows);
+                    result.putBoolean("done", done);
+                    cbc.success(result);
+                    needPrefetch = !done;
+                    break;
+                }
+
+                case closeCursor: {
+                    int cursorId = SQLitePluginConverter.getInt(args,"cursorId",-1);
+                    cursor = runner.cursors.remove(cursorId);
+                    if (cursor != null) {
+                        cursor.closeNow();
+                    }
+                    cbc.success("cursor closed");
+                    break;
+                }
+            }
+        } catch (Exception ex) {
+            FLog.e(TAG, "SQLitePlugin." + action + "() failed", ex);
+            if (cursor != null && action != Action.openCursor) {
+                runner.cursors.remove(cursor.id);
+                cursor.closeNow();
+            }
+            cbc.error(ex.getMessage());
+            return;
+        }
+
+        if (needPrefetch) {
+            // read the next chunk while JS is busy with this one:
+            try {
+                cursor.prefetch();
+            } catch (Exception ex) {
+                // reported by the next fetch
+                FLog.w(TAG, "SQLitePlugin.fetch() read ahead failed", ex);
+            }
+        }
+    }
+
+    /**
+     * Close all result cursors of a db runner.
+     */
+    private void closeCursors(DBRunner runner) {
+        for (SQLiteResultCursor cursor : runner.cursors.values()) {
+            cursor.closeNow();
+        }
+        runner.cursors.clear();
+    }
+
+    private ResultFormat getResultFormat(String format) {
+        if (format != null) {
+            try {
+                return ResultFormat.valueOf(format);
+            } catch (IllegalArgumentException ignore) {
+                FLog.w(TAG, "unknown result format: " + format + ", using rows");
+            }
+        }
+        return ResultFormat.rows;
+    }
+
+    /**
+     * @return true if a request goes in the background lane of the writer queue:
+     * by the priority hint of the request ("interactive" or "background") if there is one,
+     * otherwise executeSqlBatch requests are interactive and all others background
+     */
+    private boolean isBackground(Action action, ReadableMap args) {
+        String priority = SQLitePluginConverter.getString(args,"priority",null);
+        if (priority != null) {
+            return !priority.equals("interactive");
+        }
+        return action != Action.executeSqlBatch;
+    }
+
+    /**
+     * Set the lane, request ID (for the cancel action) and deadline of a request
+     * from its args. The deadline is the timeout (ms) after the request was received.
+     */
+    private void setRequestOptions(DBQuery dbq, Action action, ReadableMap args) {
+        dbq.background = isBackground(action, args);
+        dbq.requestId = SQLitePluginConverter.getString(args,"requestId",dbq.cbc.requestId);
+        if (dbq.requestId != null) {
+            dbq.cancellation = new CancellationSignal();
+        }
+        int timeout = SQLitePluginConverter.getInt(args,"timeout",0);
+        if (timeout > 0) {
+            dbq.deadline = dbq.enqueuedAt + TimeUnit.MILLISECONDS.toNanos(timeout);
+        }
+    }
+
+    /**
+     * Run a query with its parameters bound by type, as bindArgsToStatement does for writes.
+     *
+     * rawQuery only takes string arguments: an INTEGER key would be compared with TEXT
+     * (never matching values stored without affinity) and null turned into ''.
+     * The cursor reads into a window as configured by cursorSettings, cancellation
+     * (may be null) cancels the query while the window is filled.
+     */
+    private Cursor rawQueryTyped(SQLiteDatabase mydb, String query, final ReadableArray queryParams,
+                                 final SQLiteQueryCursor.Settings cursorSettings, CancellationSignal cancellation) {
+        return mydb.rawQueryWithFactory(new SQLiteDatabase.CursorFactory() {
+            @Override
+            public Cursor newCursor(SQLiteDatabase db, SQLiteCursorDriver driver, String editTable, SQLiteQuery sqliteQuery) {
+                if (queryParams != null) {
+                    bindArgsToStatement(sqliteQuery, queryParams);
+                }
+                return cursorSettings.newCursor(driver, editTable, sqliteQuery);
+            }
+        }, query, null, null, cancellation);
+    }
+
+    private void bindArgsToStatement(SQLiteProgram myStatement, ReadableArray sqlArgs) {
+        for (int i = 0; i < sqlArgs.size(); i++) {
             ReadableType type = sqlArgs.getType(i);
+            byte[] blob;
             if (type == ReadableType.Number){
                 double tmp = sqlArgs.getDouble(i);
                 if (tmp == (long) tmp) {
@@ -764,6 +1736,8 @@ public class SQLitePlugin extends ReactContextBaseJavaModule {
                 }
             } else if (sqlArgs.isNull(i)) {
                 myStatement.bindNull(i + 1);
+            } else if ((blob = SQLiteBlobEncoding.getBlob(sqlArgs, i)) != null) {
+                myStatement.bindBlob(i + 1, blob);
             } else {
                 myStatement.bindString(i + 1, SQLitePluginConverter.getString(sqlArgs,i,""));
             }
@@ -775,171 +1749,1015 @@ public class SQLitePlugin extends ReactContextBaseJavaModule {
      *
      * @param mydb - database
      * @param query - SQL query to execute
+     * @param queryType - kind of the query, for the metrics
      * @param queryParams - parameters to the query
+     * @param cursorSettings - cursor window settings of the database
+     * @param metrics - metrics of the database, the compile time is recorded
+     * @param cancellation - cancellation signal of the request (may be null)
      * @param cbc - callback object
      *
      * @throws Exception
-     * @return results in string form
+     * @throws OperationCanceledException if the request is cancelled meanwhile
+     * @return result rows, encoded later by the result serializer
+     */
+    private SQLiteRowBuffer executeSqlStatementQuery(SQLiteDatabase mydb,
+                                                     String query, QueryType queryType, ReadableArray queryParams,
+                                                     SQLiteQueryCursor.Settings cursorSettings,
+                                                     SQLiteMetrics metrics, CancellationSignal cancellation,
+                                                     CallbackContext cbc) throws Exception {
+        SQLiteRowBuffer rows;
+
+        Cursor cur = null;
+        try {
+            boolean traced = SQLiteTrace.begin("prepare");
+            try {
+                // (the statement is prepared here, rows are only read by the first move)
+                long compileStartedAt = System.nanoTime();
+                cur = rawQueryTyped(mydb, query, queryParams, cursorSettings, cancellation);
+                metrics.recordCompile(queryType, compileStartedAt);
+            } catch (Exception ex) {
+                FLog.e(TAG, "SQLitePlugin.executeSql[Batch]() failed", ex);
+                throw ex;
+            } finally {
+                SQLiteTrace.end(traced);
+            }
+
+            rows = new SQLiteRowBuffer(cur.getColumnNames());
+            traced = SQLiteTrace.begin("read rows");
+            try {
+                while (cur.moveToNext()) {
+                    rows.addRow(cur);
+                }
+            } finally {
+                SQLiteTrace.end(traced);
+            }
+
+            if (cur instanceof SQLiteQueryCursor) {
+                cursorSettings.recordRefills(query, (SQLiteQueryCursor) cur);
+            }
+        } finally {
+            closeQuietly(cur);
+        }
+
+        return rows;
+    }
+
+    /**
+     * @return the connection mydb capturing query plans for the slow query log
      */
-    private WritableMap executeSqlStatementQuery(SQLiteDatabase mydb,
-                                                 String query, ReadableArray queryParams,
-                                                 CallbackContext cbc) throws Exception {
-        WritableMap rowsResult = Arguments.createMap();
+    private static SQLiteSlowQueryLog.Explainer explainer(final SQLiteDatabase mydb) {
+        return new SQLiteSlowQueryLog.Explainer() {
+            @Override
+            public List<String> explainQueryPlan(String sql) {
+                List<String> steps = new ArrayList<String>();
+                Cursor cur = mydb.rawQuery("EXPLAIN QUERY PLAN " + sql, null);
+                try {
+                    int detail = cur.getColumnIndex("detail");
+                    while (cur.moveToNext()) {
+                        steps.add(cur.getString(detail));
+                    }
+                } finally {
+                    cur.close();
+                }
+                return steps;
+            }
+        };
+    }
+
+    private WritableArray toWritableArray(String[] strings) {
+        WritableArray array = Arguments.createArray();
+        for (String string : strings) {
+            array.pushString(string);
+        }
+        return array;
+    }
+
+    private void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException ex) {
+                // ignore
+            }
+        }
+    }
+
+    private class DBRunner implements Runnable {
+        final String dbname;
+        final int openFlags;
+        private String assetFilename;
+        private boolean androidLockWorkaround;
+        final SQLitePriorityQueue<DBQuery> q;
+        final CallbackContext openCbc;
+        final SQLiteStatementCache statementCache;
+        final Map<Integer, SQLiteResultCursor> cursors = new HashMap<Integer, SQLiteResultCursor>();
+
+        // WAL reader connection pool, all readers take from the reader lane rq:
+        final int readerPoolSize;
+        final BlockingQueue<DBQuery> rq;
+        final List<ReaderRunner> readers = new ArrayList<ReaderRunner>();
+        final List<String> attachStatements = new CopyOnWriteArrayList<String>();
+        final SQLiteQueueStats writerStats = new SQLiteQueueStats("writer");
+        final SQLiteQueueStats readerStats = new SQLiteQueueStats("reader");
+        // requests with a request ID, from being queued until they have run, see cancel():
+        final Set<DBQuery> cancellable = Collections.newSetFromMap(new ConcurrentHashMap<DBQuery, Boolean>());
+        final SQLitePerformanceProfile performanceProfile;
+        final SQLiteQueryCursor.Settings cursorSettings;
+        final SQLiteResultSerializer resultSerializer = new SQLiteResultSerializer(getThreadPool());
+        final SQLiteMetrics metrics = new SQLiteMetrics();
+        // begin of the transaction left open by a batch (BEGIN sent by JS), for the metrics:
+        private long transactionStartedAt;
+        // versioned migrations run at open time, see migrate():
+        final ReadableArray migrations;
+        // bound of the waiting requests, null for unbounded queues:
+        final SQLiteQueueLimit queueLimit;
+        // requests waiting for room under the block policy, in order, see submit():
+        private final ArrayDeque<DBQuery> blocked = new ArrayDeque<DBQuery>();
+        // null unless requested by the open options:
+        final SQLiteSlowQueryLog slowQueryLog;
+        final SQLiteIoStats ioStats;
+        volatile boolean readersActive;
+        volatile boolean inTransaction;
+        // reader in a read transaction (JS sends them one at a time), see ReaderRunner.pin():
+        volatile ReaderRunner pinnedReader;
+
+        // group commit of atomic batches:
+        final int groupCommitMaxBatches;
+        final long groupCommitMaxDelayNanos;
+        private DBQuery heldOver;
+
+        // scheduler mode, see start():
+        private SQLiteScheduler.Worker worker;
+        private boolean drainScheduled;
+        private volatile boolean finished;
+
+        SQLiteDatabase mydb;
+
+        DBRunner(final String dbname, ReadableMap options, CallbackContext cbc) {
+            this.dbname = dbname;
+            int openFlags = SQLiteDatabase.OPEN_READWRITE | SQLiteDatabase.CREATE_IF_NECESSARY;
+            try {
+                this.assetFilename = SQLitePluginConverter.getString(options,"assetFilename",null);
+                if (this.assetFilename != null && this.assetFilename.length() > 0) {
+                    boolean readOnly = SQLitePluginConverter.getBoolean(options,"readOnly",false);
+                    openFlags = readOnly ? SQLiteDatabase.OPEN_READONLY : openFlags;
+                }
+            } catch (Exception ex){
+                FLog.e(TAG,"Error retrieving assetFilename or mode from options:",ex);
+            }
+            this.openFlags = openFlags;
+            this.androidLockWorkaround = SQLitePluginConverter.getBoolean(options,"androidLockWorkaround",false);
+            if (this.androidLockWorkaround)
+                FLog.i(TAG, "Android db closing/locking workaround applied");
+
+            int statementCacheSize = SQLitePluginConverter.getInt(options,"statementCacheSize",0);
+            this.statementCache = new SQLiteStatementCache(statementCacheSize);
+            if (this.statementCache.isEnabled())
+                FLog.i(TAG, "Compiled statement cache enabled, size: " + statementCacheSize);
+
+            this.readerPoolSize = SQLitePluginConverter.getInt(options,"readerPoolSize",0);
+            this.rq = new LinkedBlockingQueue<DBQuery>();
+            this.performanceProfile = SQLitePerformanceProfile.fromOptions(options);
+            this.cursorSettings = new SQLiteQueryCursor.Settings(SQLitePluginConverter.getInt(options,"cursorWindowSize",0));
+            if (this.cursorSettings.windowSize > 0)
+                FLog.i(TAG, "Cursor window size: " + this.cursorSettings.windowSize);
+
+            Object groupCommit = SQLitePluginConverter.get(options,"groupCommit",null);
+            if (groupCommit instanceof ReadableMap) {
+                this.groupCommitMaxBatches = Math.max(1, SQLitePluginConverter.getInt((ReadableMap) groupCommit,"maxBatches",GROUP_COMMIT_MAX_BATCHES));
+                this.groupCommitMaxDelayNanos = TimeUnit.MILLISECONDS.toNanos(SQLitePluginConverter.getInt((ReadableMap) groupCommit,"maxDelayMs",0));
+            } else {
+                this.groupCommitMaxBatches = Boolean.TRUE.equals(groupCommit) ? GROUP_COMMIT_MAX_BATCHES : 1;
+                this.groupCommitMaxDelayNanos = 0;
+            }
+            if (this.groupCommitMaxBatches > 1)
+                FLog.i(TAG, "Group commit enabled, max batches: " + this.groupCommitMaxBatches);
+
+            this.migrations = (ReadableArray) SQLitePluginConverter.get(options,"migrations",null);
+
+            this.queueLimit = SQLiteQueueLimit.fromOptions(options);
+            if (this.queueLimit != null)
+                FLog.i(TAG, "Queue limit: " + this.queueLimit.maxRequests + " requests, " + this.queueLimit.maxBytes
+                        + " bytes, policy: " + this.queueLimit.policy);
+
+            this.slowQueryLog = SQLiteSlowQueryLog.fromOptions(options);
+            if (this.slowQueryLog != null)
+                FLog.i(TAG, "Slow query log: " + TimeUnit.NANOSECONDS.toMillis(this.slowQueryLog.thresholdNanos) + " ms, "
+                        + this.slowQueryLog.maxEntries + " entries");
+
+            this.ioStats = SQLiteIoStats.fromOptions(options);
+            if (this.ioStats != null)
+                FLog.i(TAG, "I/O stats enabled");
+
+            this.q = new SQLitePriorityQueue<DBQuery>();
+            this.openCbc = cbc;
+        }
+
+        /**
+         * Put a batch in the writer queue or, when the reader pool is running, in the reader lane.
+         *
+         * @param dbq        The batch
+         * @param readOnly   Batch of a read transaction (marked by JS)
+         * @param pureRead   Batch consists of read-only statements only
+         */
+        void enqueue(DBQuery dbq, boolean readOnly, boolean pureRead) throws InterruptedException {
+            ReaderRunner reader = pinnedReader;
+            if (readOnly && reader != null && dbq.action == Action.executeSqlBatch) {
+                // next batch of the read transaction open on a reader, so it reads the same snapshot:
+                queued(dbq);
+                reader.pinned.put(dbq);
+            } else if (readersActive && (readOnly || (pureRead && !inTransaction))) {
+                // plain reads must see uncommitted writes of an open transaction, so they only
+                // go to the readers while the writer is not in a transaction:
+                queued(dbq);
+                rq.put(dbq);
+            } else {
+                post(dbq);
+            }
+        }
+
+        /**
+         * Put a request in the writer queue.
+         */
+        void post(DBQuery dbq) throws InterruptedException {
+            queued(dbq);
+            q.put(dbq);
+            if (worker != null) {
+                schedule();
+            }
+        }
+
+        /**
+         * A request is put in a queue: it can be cancelled (if it has a request ID) and
+         * its queue wait slice begins (when tracing), see release().
+         */
+        private void queued(DBQuery dbq) {
+            if (dbq.requestId != null) {
+                cancellable.add(dbq);
+            }
+            if (!dbq.stop && SQLiteTrace.isEnabled()) {
+                dbq.traceName = dbname + " " + dbq.action + (dbq.requestId != null ? " " + dbq.requestId : "");
+                dbq.traceCookie = SQLiteTrace.beginAsync(dbq.traceName);
+            }
+        }
+
+        /**
+         * @return true while requests are queued or the writer has a transaction open
+         */
+        boolean isBusy() {
+            return inTransaction || q.size() > 0 || !rq.isEmpty();
+        }
+
+        /**
+         * Cancel the requests with the given request ID. A queued request is removed from
+         * its queue, a running one is interrupted: its running query is cancelled and the
+         * statements after it are not executed. Their callbacks get a "request cancelled" error.
+         *
+         * @return number of requests cancelled
+         */
+        int cancel(String requestId) {
+            int count = 0;
+            for (DBQuery dbq : cancellable) {
+                if (!requestId.equals(dbq.requestId)) {
+                    continue;
+                }
+                dbq.cancellation.cancel();
+                // (a request already taken from its queue sees the signal)
+                if (q.remove(dbq) || rq.remove(dbq) || unblock(dbq)) {
+                    release(dbq);
+                    cancellable.remove(dbq);
+                    dbq.cbc.error(REQUEST_CANCELLED);
+                }
+                count++;
+            }
+            return count;
+        }
+
+        /**
+         * Queue a request (see enqueue()) under the queue limit of the open options (if any).
+         * With the block policy a request finding no room is kept in the blocked requests,
+         * in order, until release() makes room for it or blockTimeoutMs is over: the calling
+         * thread never waits for room.
+         *
+         * @param dbq        The request
+         * @param args       Its arguments, for their estimated size
+         * @param readOnly   Batch of a read transaction (marked by JS)
+         * @param pureRead   Batch consists of read-only statements only
+         */
+        void submit(DBQuery dbq, ReadableMap args, boolean readOnly, boolean pureRead) throws InterruptedException {
+            if (queueLimit == null) {
+                enqueue(dbq, readOnly, pureRead);
+                return;
+            }
+            dbq.queuedBytes = queueLimit.isByteLimited() ? SQLiteQueueLimit.estimateSize(args) : 0;
+            // (a synchronous request fails right away instead, its result is awaited on the JS thread)
+            if (queueLimit.policy == SQLiteQueueLimit.Policy.block && !dbq.cbc.synchronous) {
+                synchronized (blocked) {
+                    // behind the requests already blocked, to keep the order:
+                    if (!blocked.isEmpty() || !queueLimit.acquire(dbq.queuedBytes)) {
+                        block(dbq, readOnly, pureRead);
+                        return;
+                    }
+                    dbq.admitted = true;
+                    enqueue(dbq, readOnly, pureRead);
+                }
+                return;
+            }
+            while (!queueLimit.acquire(dbq.queuedBytes)) {
+                if (queueLimit.policy != SQLiteQueueLimit.Policy.dropOldestRead || !dropOldestRead()) {
+                    queueLimit.rejected();
+                    dbq.cbc.error(SQLiteQueueLimit.QUEUE_FULL);
+                    return;
+                }
+            }
+            dbq.admitted = true;
+            enqueue(dbq, readOnly, pureRead);
+        }
+
+        /**
+         * Keep a request waiting for room (block policy), it fails once blockTimeoutMs is over.
+         * Called with the blocked requests locked.
+         */
+        private void block(final DBQuery dbq, boolean readOnly, boolean pureRead) {
+            dbq.blockedReadOnly = readOnly;
+            dbq.blockedPureRead = pureRead;
+            if (dbq.requestId != null) {
+                cancellable.add(dbq);
+            }
+            blocked.add(dbq);
+            dbq.blockTimeout = queueLimit.scheduleTimeout(new Runnable() {
+                @Override
+                public void run() {
+                    if (unblock(dbq)) {
+                        done(dbq);
+                        queueLimit.rejected();
+                        dbq.cbc.error(SQLiteQueueLimit.QUEUE_FULL);
+                        // (the requests behind it may fit)
+                        admitBlocked();
+                    }
+                }
+            });
+        }
+
+        /**
+         * Queue the blocked requests which fit in the queues now, in order.
+         */
+        private void admitBlocked() {
+            synchronized (blocked) {
+                DBQuery dbq;
+                while ((dbq = blocked.peek()) != null && queueLimit.acquire(dbq.queuedBytes)) {
+                    blocked.poll();
+                    dbq.blockTimeout.cancel(false);
+                    dbq.admitted = true;
+                    try {
+                        enqueue(dbq, dbq.blockedReadOnly, dbq.blockedPureRead);
+                    } catch (InterruptedException ex) {
+                        FLog.e(TAG, "couldn't add to queue", ex);
+                        release(dbq);
+                        done(dbq);
+                        dbq.cbc.error("couldn't add to queue");
+                    }
+                }
+            }
+        }
+
+        /**
+         * Take a request out of the blocked requests (block policy).
+         *
+         * @return false if it is not blocked (anymore)
+         */
+        private boolean unblock(DBQuery dbq) {
+            synchronized (blocked) {
+                if (!blocked.remove(dbq)) {
+                    return false;
+                }
+                dbq.blockTimeout.cancel(false);
+                return true;
+            }
+        }
+
+        /**
+         * Fail the requests still blocked when the database is closed (block policy).
+         */
+        private void failBlocked() {
+            synchronized (blocked) {
+                for (DBQuery dbq : blocked) {
+                    dbq.blockTimeout.cancel(false);
+                    done(dbq);
+                    dbq.cbc.error("database not open");
+                }
+                blocked.clear();
+            }
+        }
+
+        /**
+         * Give back the room of a request taken from (or removed from) the queues
+         * and end its queue wait slice.
+         */
+        void release(DBQuery dbq) {
+            if (dbq.traceCookie != 0) {
+                SQLiteTrace.endAsync(dbq.traceName, dbq.traceCookie);
+                dbq.traceCookie = 0;
+            }
+            if (dbq.admitted) {
+                dbq.admitted = false;
+                queueLimit.release(dbq.queuedBytes);
+                if (queueLimit.policy == SQLiteQueueLimit.Policy.block) {
+                    admitBlocked();
+                }
+            }
+        }
+
+        /**
+         * Drop the read request waiting longest in the queues (dropOldestRead policy).
+         *
+         * @return false if there is none
+         */
+        private boolean dropOldestRead() {
+            DBQuery oldest = q.peekOldestRead();
+            // (the reader lane only holds reads)
+            DBQuery read = rq.peek();
+            if (read != null && !read.stop && (oldest == null || read.enqueuedAt - oldest.enqueuedAt < 0)) {
+                oldest = read;
+            }
+            if (oldest == null) {
+                return false;
+            }
+            // (unless a connection has taken it meanwhile)
+            if (q.remove(oldest) || rq.remove(oldest)) {
+                release(oldest);
+                done(oldest);
+                queueLimit.dropped();
+                oldest.cbc.error("request dropped: " + SQLiteQueueLimit.QUEUE_FULL);
+            }
+            return true;
+        }
+
+        /**
+         * @return depth of the queues, with the queue limit (if any) its bounds and counters
+         */
+        WritableMap getQueueStatus() {
+            if (queueLimit != null) {
+                WritableMap status = queueLimit.toMap();
+                synchronized (blocked) {
+                    status.putInt("blocked", blocked.size());
+                }
+                return status;
+            }
+            WritableMap status = Arguments.createMap();
+            status.putInt("depth", q.size() + rq.size());
+            status.putDouble("rejected", 0);
+            status.putDouble("dropped", 0);
+            return status;
+        }
+
+        /**
+         * @return the metrics of the database with its queue wait, queue status,
+         * statement cache and cursor window counters and its I/O (if accounted)
+         */
+        WritableMap getStats() {
+            WritableMap queueWait = Arguments.createMap();
+            queueWait.putMap("writer", writerStats.toMap());
+            queueWait.putMap("reader", readerStats.toMap());
+            queueWait.putMap("interactive", q.interactiveStats.toMap());
+            queueWait.putMap("background", q.backgroundStats.toMap());
+
+            WritableMap cache = Arguments.createMap();
+            cache.putInt("maxSize", statementCache.getMaxSize());
+            cache.putDouble("hits", statementCache.getHitCount());
+            cache.putDouble("misses", statementCache.getMissCount());
+            cache.putDouble("evictions", statementCache.getEvictionCount());
+
+            WritableMap stats = metrics.toMap();
+            stats.putMap("queueWait", queueWait);
+            stats.putMap("queue", getQueueStatus());
+            stats.putMap("statementCache", cache);
+            stats.putDouble("cursorWindowRefills", cursorSettings.getWindowRefills());
+            if (ioStats != null) {
+                stats.putMap("io", ioStats.toMap());
+            }
+            return stats;
+        }
+
+        void resetStats() {
+            metrics.reset();
+            writerStats.reset();
+            readerStats.reset();
+            q.interactiveStats.reset();
+            q.backgroundStats.reset();
+            statementCache.resetCounts();
+            cursorSettings.resetWindowRefills();
+            if (queueLimit != null) {
+                queueLimit.resetCounters();
+            }
+            if (slowQueryLog != null) {
+                slowQueryLog.clear();
+            }
+            if (ioStats != null) {
+                ioStats.reset();
+            }
+        }
+
+        /**
+         * @return the slow query log entries, oldest first (none without a slow query log)
+         */
+        WritableArray getSlowQueries() {
+            return slowQueryLog != null ? slowQueryLog.toArray() : Arguments.createArray();
+        }
+
+        /**
+         * Drop a request taken from a queue if it has been cancelled or is past its deadline.
+         *
+         * @return true if the request was dropped, its callback got the error
+         */
+        boolean dropExpired(DBQuery dbq) {
+            String error;
+            if (dbq.cancellation != null && dbq.cancellation.isCanceled()) {
+                error = REQUEST_CANCELLED;
+            } else if (dbq.deadline != 0 && System.nanoTime() - dbq.deadline > 0) {
+                error = REQUEST_CANCELLED + ": deadline exceeded";
+            } else {
+                return false;
+            }
+            done(dbq);
+            dbq.cbc.error(error);
+            return true;
+        }
 
-        Cursor cur = null;
-        try {
-            try {
-                String[] params = new String[0];
-                if (queryParams != null) {
-                    int size = queryParams.size();
-                    params = new String[size];
-                    for (int j = 0; j < size; j++) {
-                        if (queryParams.isNull(j)) {
-                            params[j] = "";
-                        } else {
-                            params[j] = SQLitePluginConverter.getString(queryParams, j, "");
-                        }
+        /**
+         * A request has run, it can no longer be cancelled.
+         */
+        void done(DBQuery dbq) {
+            if (dbq.requestId != null) {
+                cancellable.remove(dbq);
+            }
+        }
+
+        /**
+         * Run the database on a worker of the scheduler: open it, then drain the writer
+         * queue whenever requests arrive.
+         */
+        void start(SQLiteScheduler.Worker worker) {
+            this.worker = worker;
+            worker.execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (!openWriter()) {
+                        finished = true;
+                        scheduler.release(DBRunner.this.worker);
                     }
                 }
+            });
+            // (requests posted during the open are drained after it)
+            schedule();
+        }
 
-                cur = mydb.rawQuery(query, params);
-            } catch (Exception ex) {
-                FLog.e(TAG, "SQLitePlugin.executeSql[Batch]() failed", ex);
-                throw ex;
+        private synchronized void schedule() {
+            if (!drainScheduled) {
+                drainScheduled = true;
+                worker.execute(drain);
             }
+        }
 
-            // If query result has rows
-            if (cur != null && cur.moveToFirst()) {
-                WritableArray rowsArrayResult = Arguments.createArray();
-                String key;
-                int colCount = cur.getColumnCount();
+        /**
+         * @return the next request of the writer queue without waiting, null if there is none
+         */
+        private synchronized DBQuery poll() {
+            DBQuery dbq = heldOver;
+            if (dbq != null) {
+                heldOver = null;
+                return dbq;
+            }
+            dbq = q.poll();
+            if (dbq == null) {
+                drainScheduled = false;
+            }
+            return dbq;
+        }
 
-                // Build up result object for each row
-                do {
-                    WritableMap row = Arguments.createMap();
-                    for (int i = 0; i < colCount; ++i) {
-                        key = cur.getColumnName(i);
-                        bindRow(row, key, cur, i);
+        /**
+         * Execute the requests of the writer queue until it is empty (scheduler mode,
+         * in the worker thread), taking turns with the other databases of the worker.
+         */
+        private final Runnable drain = new Runnable() {
+            @Override
+            public void run() {
+                int turn = 0;
+                // (with too many results waiting to be delivered the turn ends, still scheduled)
+                while (finished || resultSerializer.hasRoom(resume)) {
+                    DBQuery dbq = poll();
+                    if (dbq == null) {
+                        return;
                     }
+                    if (finished) {
+                        // (database failed to open or is closed)
+                        reject(dbq);
+                        continue;
+                    }
+                    if (dbq.stop) {
+                        finished = true;
+                        finishAsync(dbq);
+                        continue;
+                    }
+                    try {
+                        executeRequest(dbq);
+                    } catch (Exception ex) {
+                        FLog.e(TAG, "unexpected error", ex);
+                    }
+                    // (still scheduled, the rest of the queue is drained in the next turn)
+                    if (++turn == SQLiteScheduler.MAX_TURN_REQUESTS && worker.tryExecute(this)) {
+                        return;
+                    }
+                }
+            }
+        };
+
+        /**
+         * Next turn of a drain which ended on undelivered results, see SQLiteResultSerializer.hasRoom().
+         */
+        private final Runnable resume = new Runnable() {
+            @Override
+            public void run() {
+                worker.tryExecute(drain);
+            }
+        };
+
+        /**
+         * Fail a request left in the writer queue of a database which failed to open or
+         * is closed (scheduler mode).
+         */
+        private void reject(DBQuery dbq) {
+            release(dbq);
+            done(dbq);
+            if (dbq.cbc != null) {
+                dbq.cbc.error("database not open");
+            }
+        }
 
-                    rowsArrayResult.pushMap(row);
-                } while (cur.moveToNext());
-
-                rowsResult.putArray("rows", rowsArrayResult);
+        /**
+         * Apply the performance profile of the open options (if any) to the writer connection.
+         *
+         * @return the settings in effect, null without a performance profile
+         */
+        private WritableMap applyPerformanceProfile() {
+            if (this.performanceProfile == null) {
+                return null;
             }
-        } finally {
-            closeQuietly(cur);
+            return this.performanceProfile.apply(profileConnection(this.mydb));
         }
 
-        return rowsResult;
-    }
+        /**
+         * Run the migrations of the open options ({version, sql} scripts) whose version is
+         * above the user_version of the database, in the order of their versions. Each
+         * migration runs in its own transaction which also sets user_version to its version.
+         *
+         * @return the user_version after the migrations
+         */
+        private int migrate() throws Exception {
+            TreeMap<Integer, String> scripts = new TreeMap<Integer, String>();
+            for (int i = 0; i < this.migrations.size(); i++) {
+                ReadableMap migration = this.migrations.getMap(i);
+                int version = SQLitePluginConverter.getInt(migration,"version",0);
+                if (version <= 0 || scripts.put(version, SQLitePluginConverter.getString(migration,"sql","")) != null) {
+                    throw new Exception("invalid or duplicate migration version: " + version);
+                }
+            }
 
-    @SuppressLint("NewApi")
-    private void bindRow(WritableMap row, String key, Cursor cur, int i) {
-        int curType = cur.getType(i);
+            int userVersion = this.mydb.getVersion();
+            for (Map.Entry<Integer, String> migration : scripts.tailMap(userVersion, false).entrySet()) {
+                int version = migration.getKey();
+                this.mydb.beginTransaction();
+                try {
+                    runScript(this.mydb, SQLiteStatementInfo.splitScript(migration.getValue()));
+                    this.mydb.setVersion(version);
+                    this.mydb.setTransactionSuccessful();
+                } catch (Exception ex) {
+                    throw new Exception("migration to version " + version + " failed: " + ex.getMessage(), ex);
+                } finally {
+                    this.mydb.endTransaction();
+                }
+                userVersion = version;
+                FLog.i(TAG, "db " + dbname + " migrated to version " + version);
+            }
+            return userVersion;
+        }
 
-        switch (curType) {
-            case Cursor.FIELD_TYPE_NULL:
-                row.putNull(key);
-                break;
-            case Cursor.FIELD_TYPE_INTEGER:
-                row.putDouble(key, cur.getLong(i));
-                break;
-            case Cursor.FIELD_TYPE_FLOAT:
-                row.putDouble(key, cur.getDouble(i));
-                break;
-            case Cursor.FIELD_TYPE_BLOB:
-                row.putString(key, new String(Base64.encode(cur.getBlob(i), Base64.DEFAULT)));
-                break;
-            case Cursor.FIELD_TYPE_STRING:
-            default: /* (not expected) */
-                row.putString(key, cur.getString(i));
-                break;
+        /**
+         * @return the next request of the writer queue, a request held over by the group commit goes first
+         */
+        private DBQuery take() throws InterruptedException {
+            DBQuery dbq = heldOver;
+            if (dbq != null) {
+                heldOver = null;
+                return dbq;
+            }
+            return q.take();
         }
-    }
 
-    private void closeQuietly(Closeable closeable) {
-        if (closeable != null) {
+        /**
+         * Execute an atomic batch together with the atomic batches already waiting
+         * behind it (group commit).
+         *
+         * All batches of the group share one transaction, each batch runs within its own
+         * savepoint so a failed batch is rolled back without affecting the others. The
+         * results are only sent after the shared commit.
+         */
+        private void executeAtomicGroup(DBQuery first) throws InterruptedException {
+            List<DBQuery> group = new ArrayList<DBQuery>();
+            group.add(first);
+            long deadline = System.nanoTime() + groupCommitMaxDelayNanos;
+            while (group.size() < groupCommitMaxBatches) {
+                // (a worker of the scheduler is shared, only batches already waiting join the group)
+                long wait = worker == null ? deadline - System.nanoTime() : 0;
+                DBQuery next = wait > 0 ? q.poll(wait, TimeUnit.NANOSECONDS) : q.poll();
+                if (next == null) {
+                    break;
+                }
+                if (!next.atomic) {
+                    // keep the queue order, the request is executed after the group:
+                    heldOver = next;
+                    break;
+                }
+                writerStats.record(next.enqueuedAt);
+                release(next);
+                if (!dropExpired(next)) {
+                    group.add(next);
+                }
+            }
+
+            List<DeferredResult> results = new ArrayList<DeferredResult>(group.size());
+            for (int i = 0; i < group.size(); i++) {
+                results.add(new DeferredResult());
+            }
+            String groupError = null;
+            // (the group joins a transaction left open by a plain batch)
+            boolean outer = this.mydb != null && !this.mydb.inTransaction();
+            boolean traced = SQLiteTrace.begin("group commit");
+            long startedAt = System.nanoTime();
             try {
-                closeable.close();
-            } catch (IOException ex) {
-                // ignore
+                if (outer) {
+                    this.mydb.beginTransaction();
+                }
+                try {
+                    for (int i = 0; i < group.size(); i++) {
+                        DBQuery dbq = group.get(i);
+                        DeferredResult result = results.get(i);
+                        this.mydb.execSQL("SAVEPOINT " + GROUP_SAVEPOINT);
+                        if (executeSqlBatch(this.mydb, dbq.queries, dbq.queryParams, dbq.queryIDs, dbq.queryFormats,
+                                dbq.queryBlobEncodings, statementCache, cursorSettings, metrics, slowQueryLog, true, false, dbq.cancellation,
+                                resultSerializer, result.cbc) != -1) {
+                            // leading ';' keeps the framework from taking this for a transaction rollback:
+                            this.mydb.execSQL(";ROLLBACK TO " + GROUP_SAVEPOINT);
+                        }
+                        this.mydb.execSQL("RELEASE " + GROUP_SAVEPOINT);
+                    }
+                    if (outer) {
+                        this.mydb.setTransactionSuccessful();
+                    }
+                } finally {
+                    if (outer) {
+                        this.mydb.endTransaction();
+                    }
+                }
+            } catch (Exception ex) {
+                FLog.e(TAG, "group commit failed", ex);
+                groupError = "group commit failed: " + ex.getMessage();
+            }
+            SQLiteTrace.end(traced);
+            if (outer) {
+                metrics.recordTransaction(startedAt, groupError == null);
+            }
+            inTransaction = this.mydb != null && this.mydb.inTransaction();
+
+            // (queued behind the encoding of the results)
+            for (int i = 0; i < group.size(); i++) {
+                done(group.get(i));
+                resultSerializer.execute(results.get(i).deliverTo(group.get(i).cbc, groupError));
+            }
+            if (group.size() > 1) {
+                FLog.v(TAG, "group commit of " + group.size() + " batches for db " + dbname);
             }
         }
-    }
 
-    private class DBRunner implements Runnable {
-        final String dbname;
-        final int openFlags;
-        private String assetFilename;
-        private boolean androidLockWorkaround;
-        final BlockingQueue<DBQuery> q;
-        final CallbackContext openCbc;
+        private void startReaders() {
+            boolean walEnabled = false;
+            try {
+                walEnabled = enableWriteAheadLogging(this.mydb);
+            } catch (Exception ex) {
+                FLog.e(TAG, "couldn't enable WAL for db: " + dbname, ex);
+            }
+            if (!walEnabled) {
+                FLog.w(TAG, "WAL is not available for db: " + dbname + ", reader pool disabled");
+                return;
+            }
 
-        SQLiteDatabase mydb;
+            for (int i = 0; i < readerPoolSize; i++) {
+                ReaderRunner reader = new ReaderRunner(this, this.mydb.getPath());
+                readers.add(reader);
+                getThreadPool().execute(reader);
+            }
+            readersActive = true;
+            FLog.i(TAG, "Reader connection pool started, size: " + readerPoolSize);
+        }
 
-        DBRunner(final String dbname, ReadableMap options, CallbackContext cbc) {
-            this.dbname = dbname;
-            int openFlags = SQLiteDatabase.OPEN_READWRITE | SQLiteDatabase.CREATE_IF_NECESSARY;
+        private void stopReaders() {
+            readersActive = false;
             try {
-                this.assetFilename = SQLitePluginConverter.getString(options,"assetFilename",null);
-                if (this.assetFilename != null && this.assetFilename.length() > 0) {
-                    boolean readOnly = SQLitePluginConverter.getBoolean(options,"readOnly",false);
-                    openFlags = readOnly ? SQLiteDatabase.OPEN_READONLY : openFlags;
+                for (ReaderRunner reader : readers) {
+                    rq.put(new DBQuery());
+                    // (a reader in a read transaction takes from its own queue)
+                    reader.pinned.put(new DBQuery());
                 }
-            } catch (Exception ex){
-                FLog.e(TAG,"Error retrieving assetFilename or mode from options:",ex);
+                for (ReaderRunner reader : readers) {
+                    reader.stopped.await();
+                }
+            } catch (InterruptedException ex) {
+                FLog.e(TAG, "interrupted while stopping reader connections", ex);
             }
-            this.openFlags = openFlags;
-            this.androidLockWorkaround = SQLitePluginConverter.getBoolean(options,"androidLockWorkaround",false);
-            if (this.androidLockWorkaround)
-                FLog.i(TAG, "Android db closing/locking workaround applied");
-
-            this.q = new LinkedBlockingQueue<DBQuery>();
-            this.openCbc = cbc;
+            readers.clear();
+            FLog.v(TAG, "queue wait for db " + dbname + ": " + writerStats + ", " + readerStats
+                    + ", " + q.interactiveStats + ", " + q.backgroundStats
+                    + (queueLimit != null ? ", queue limit: " + queueLimit : ""));
         }
 
-        public void run() {
+        /**
+         * Open the writer connection and send the open result (in the db thread).
+         *
+         * @return false if the database could not be opened
+         */
+        private boolean openWriter() {
             try {
-                this.mydb = openDatabase(dbname, this.assetFilename, this.openFlags, this.openCbc);
+                this.mydb = openDatabase(dbname, this.assetFilename, this.openFlags);
+                this.statementCache.configure(this.mydb);
+                WritableMap performance = applyPerformanceProfile();
+                int userVersion = 0;
+                if (this.migrations != null) {
+                    try {
+                        userVersion = migrate();
+                    } catch (Exception ex) {
+                        closeDatabaseNow(dbname);
+                        throw ex;
+                    }
+                }
+                if (this.readerPoolSize > 0 && this.openFlags != SQLiteDatabase.OPEN_READONLY) {
+                    startReaders();
+                }
+
+                if (this.openCbc != null) {
+                    if (performance == null && this.migrations == null) {
+                        this.openCbc.success("Database opened");
+                    } else {
+                        WritableMap result = Arguments.createMap();
+                        result.putString("message", "Database opened");
+                        if (performance != null) {
+                            result.putMap("performance", performance);
+                        }
+                        if (this.migrations != null) {
+                            result.putInt("userVersion", userVersion);
+                        }
+                        this.openCbc.success(result);
+                    }
+                }
             } catch (SQLiteException ex) {
                 FLog.e(TAG, "SQLite error opening database, stopping db thread", ex);
                 if (this.openCbc != null) {
                     this.openCbc.error("Can't open database." + ex);
                 }
                 dbrmap.remove(dbname);
-                return;
+                return false;
             } catch (Exception ex) {
                 FLog.e(TAG, "Unexpected error opening database, stopping db thread", ex);
                 if (openCbc != null) {
                     openCbc.error("Can't open database." + ex);
                 }
                 dbrmap.remove(dbname);
-                return;
+                return false;
             }
 
-            DBQuery dbq = null;
+            return true;
+        }
 
+        /**
+         * Execute a request of the writer queue (in the db thread).
+         */
+        private void executeRequest(DBQuery dbq) throws Exception {
+            writerStats.record(dbq.enqueuedAt);
+            release(dbq);
+            if (dropExpired(dbq)) {
+                return;
+            }
+            boolean traced = SQLiteTrace.begin(dbq.action.name(), dbq.requestId);
+            SQLiteIoStats.Sample ioBefore = ioStats != null ? ioStats.begin() : null;
             try {
-                dbq = q.take();
+                executeRequestNow(dbq);
+            } finally {
+                if (ioBefore != null) {
+                    ioStats.end(ioBefore);
+                }
+                SQLiteTrace.end(traced);
+                done(dbq);
+            }
+        }
 
-                while (!dbq.stop) {
-                    executeSqlBatch(dbname, dbq.queries, dbq.queryParams, dbq.queryIDs, dbq.cbc);
+        private void executeRequestNow(DBQuery dbq) throws Exception {
+            if (dbq.action == Action.executeTransaction) {
+                executeTransaction(this.mydb, dbq.queries, dbq.queryParams, dbq.queryIDs, dbq.queryFormats,
+                        dbq.queryBlobEncodings, dbq.readOnly, statementCache, cursorSettings, metrics, slowQueryLog,
+                        dbq.cancellation, resultSerializer, dbq.cbc);
+                return;
+            }
 
-                    // XXX workaround for Android locking/closing issue:
-                    if (androidLockWorkaround && dbq.queries.length == 1 && dbq.queries[0].equals("COMMIT")) {
-                        // FLog.v(TAG, "close and reopen db");
-                        closeDatabaseNow(dbname);
-                        this.mydb = openDatabase(dbname, "", this.openFlags, null);
-                        // FLog.v(TAG, "close and reopen db finished");
-                    }
+            if (dbq.action != Action.executeSqlBatch) {
+                executeAction(this, dbq.action, dbq.args, dbq.cbc);
+                return;
+            }
+
+            if (dbq.atomic) {
+                executeAtomicGroup(dbq);
+                return;
+            }
+
+            long startedAt = System.nanoTime();
+            executeSqlBatch(this.mydb, dbq.queries, dbq.queryParams, dbq.queryIDs, dbq.queryFormats, dbq.queryBlobEncodings, statementCache, cursorSettings, metrics, slowQueryLog, false, dbq.readOnly, dbq.cancellation, resultSerializer, dbq.cbc);
+            boolean wasInTransaction = inTransaction;
+            inTransaction = this.mydb != null && this.mydb.inTransaction();
+            recordTransaction(dbq, wasInTransaction, startedAt);
+
+            // XXX workaround for Android locking/closing issue:
+            if (androidLockWorkaround && dbq.queries.length == 1 && dbq.queries[0].equals("COMMIT")) {
+                // FLog.v(TAG, "close and reopen db");
+                closeDatabaseNow(dbname);
+                this.mydb = openDatabase(dbname, "", this.openFlags);
+                this.statementCache.configure(this.mydb);
+                applyPerformanceProfile();
+                // FLog.v(TAG, "close and reopen db finished");
+            }
+        }
+
+        /**
+         * Record a transaction begun and ended by batches (BEGIN and COMMIT or ROLLBACK sent by JS).
+         */
+        private void recordTransaction(DBQuery dbq, boolean wasInTransaction, long startedAt) {
+            if (!wasInTransaction && inTransaction) {
+                transactionStartedAt = startedAt;
+            } else if (wasInTransaction && !inTransaction && dbq.queries.length > 0) {
+                String last = dbq.queries[dbq.queries.length - 1];
+                metrics.recordTransaction(transactionStartedAt, SQLiteStatementInfo.getQueryType(last) == QueryType.commit);
+            }
+        }
+
+        /**
+         * Stop the readers and close or delete the database as requested by the
+         * stop request dbq (in the db thread).
+         */
+        private void finish(DBQuery dbq) {
+            quiesce();
+            closeOrDelete(dbq);
+        }
 
-                    dbq = q.take();
+        /**
+         * Finish the database as requested by the stop request dbq (scheduler mode) without
+         * holding up the shared worker: the readers and the pending results are awaited on
+         * a pool thread, the writer connection is then closed back on the worker.
+         */
+        private void finishAsync(final DBQuery dbq) {
+            getThreadPool().execute(new Runnable() {
+                @Override
+                public void run() {
+                    quiesce();
+                    Runnable close = new Runnable() {
+                        @Override
+                        public void run() {
+                            closeOrDelete(dbq);
+                            scheduler.release(worker);
+                        }
+                    };
+                    // (closed right here if the scheduler has been shut down meanwhile)
+                    if (!worker.tryExecute(close)) {
+                        close.run();
+                    }
                 }
-            } catch (Exception ex) {
-                FLog.e(TAG, "unexpected error", ex);
+            });
+        }
+
+        /**
+         * Fail the blocked requests, then wait for the readers to finish their queued
+         * batches and for the results to be delivered, before the database is closed.
+         */
+        private void quiesce() {
+            failBlocked();
+            stopReaders();
+            try {
+                resultSerializer.await();
+            } catch (InterruptedException ex) {
+                FLog.e(TAG, "interrupted while delivering results", ex);
             }
+        }
 
+        /**
+         * Close or delete the database as requested by the stop request dbq.
+         */
+        private void closeOrDelete(DBQuery dbq) {
             if (dbq != null && dbq.close) {
                 try {
                     closeDatabaseNow(dbname);
@@ -969,25 +2787,299 @@ public class SQLitePlugin extends ReactContextBaseJavaModule {
                 }
             }
         }
+
+        public void run() {
+            // (names the pool thread in traces and thread dumps)
+            Thread thread = Thread.currentThread();
+            String threadName = thread.getName();
+            thread.setName("SQLite " + dbname);
+            try {
+                runWriter();
+            } finally {
+                thread.setName(threadName);
+            }
+        }
+
+        private void runWriter() {
+            if (!openWriter()) {
+                return;
+            }
+
+            DBQuery dbq = null;
+
+            try {
+                dbq = take();
+
+                while (!dbq.stop) {
+                    executeRequest(dbq);
+                    dbq = take();
+                }
+            } catch (Exception ex) {
+                FLog.e(TAG, "unexpected error", ex);
+            }
+
+            finish(dbq);
+        }
+    }
+
+    /**
+     * Read-only connection of a DBRunner reader pool, executes batches from the reader lane.
+     *
+     * The batches of a read transaction (from its BEGIN to its COMMIT or ROLLBACK) all go
+     * to the reader which took the first one, see pin().
+     */
+    private class ReaderRunner implements Runnable {
+        final DBRunner owner;
+        final String path;
+        final CountDownLatch stopped = new CountDownLatch(1);
+        // next batches of the read transaction this reader is in:
+        final BlockingQueue<DBQuery> pinned = new LinkedBlockingQueue<DBQuery>();
+        final SQLiteStatementCache statementCache = new SQLiteStatementCache(0);
+        private int attached;
+
+        SQLiteDatabase mydb;
+
+        ReaderRunner(DBRunner owner, String path) {
+            this.owner = owner;
+            this.path = path;
+        }
+
+        private void attachPending() {
+            List<String> statements = owner.attachStatements;
+            while (attached < statements.size()) {
+                String statement = statements.get(attached++);
+                try {
+                    mydb.execSQL(statement);
+                } catch (Exception ex) {
+                    FLog.e(TAG, "reader connection couldn't attach database", ex);
+                }
+            }
+        }
+
+        /**
+         * Keep the read transaction begun by a batch on this reader until a batch ends it
+         * (also if a batch is dropped, as JS still ends the transaction).
+         */
+        private void pin(DBQuery dbq) {
+            if (dbq.action != Action.executeSqlBatch) {
+                return;
+            }
+            for (String query : dbq.queries) {
+                QueryType queryType = SQLiteStatementInfo.getQueryType(query);
+                if (queryType == QueryType.begin) {
+                    owner.pinnedReader = this;
+                } else if (queryType == QueryType.commit || queryType == QueryType.rollback) {
+                    owner.pinnedReader = null;
+                }
+            }
+        }
+
+        public void run() {
+            Thread thread = Thread.currentThread();
+            String threadName = thread.getName();
+            thread.setName("SQLite reader " + owner.dbname);
+            try {
+                runReader();
+            } finally {
+                thread.setName(threadName);
+            }
+        }
+
+        private void runReader() {
+            try {
+                this.mydb = SQLiteDatabase.openDatabase(path, null, SQLiteDatabase.OPEN_READONLY);
+                if (owner.performanceProfile != null) {
+                    owner.performanceProfile.applyConnectionSettings(profileConnection(this.mydb), Arguments.createMap());
+                }
+            } catch (Exception ex) {
+                FLog.e(TAG, "couldn't open reader connection, reads go to the writer", ex);
+            }
+
+            try {
+                DBQuery dbq = owner.rq.take();
+
+                while (!dbq.stop) {
+                    owner.readerStats.record(dbq.enqueuedAt);
+                    owner.release(dbq);
+                    pin(dbq);
+
+                    if (owner.dropExpired(dbq)) {
+                        // (cancelled or past its deadline)
+                    } else if (this.mydb == null) {
+                        owner.post(dbq);
+                    } else {
+                        attachPending();
+                        boolean traced = SQLiteTrace.begin(dbq.action.name(), dbq.requestId);
+                        SQLiteIoStats.Sample ioBefore = owner.ioStats != null ? owner.ioStats.begin() : null;
+                        if (dbq.action == Action.executeTransaction) {
+                            executeTransaction(this.mydb, dbq.queries, dbq.queryParams, dbq.queryIDs, dbq.queryFormats,
+                                    dbq.queryBlobEncodings, true, statementCache, owner.cursorSettings, owner.metrics, owner.slowQueryLog,
+                                    dbq.cancellation, owner.resultSerializer, dbq.cbc);
+                        } else {
+                            executeSqlBatch(this.mydb, dbq.queries, dbq.queryParams, dbq.queryIDs, dbq.queryFormats, dbq.queryBlobEncodings, statementCache, owner.cursorSettings, owner.metrics, owner.slowQueryLog, false, dbq.readOnly, dbq.cancellation, owner.resultSerializer, dbq.cbc);
+                        }
+                        if (ioBefore != null) {
+                            owner.ioStats.end(ioBefore);
+                        }
+                        SQLiteTrace.end(traced);
+                        owner.done(dbq);
+                    }
+
+                    dbq = owner.pinnedReader == this ? pinned.take() : owner.rq.take();
+                }
+            } catch (Exception ex) {
+                FLog.e(TAG, "unexpected error", ex);
+            } finally {
+                if (this.mydb != null) {
+                    this.mydb.close();
+                    this.mydb = null;
+                }
+                stopped.countDown();
+            }
+        }
+    }
+
+    /**
+     * Keeps the result of an atomic batch until its group has been committed.
+     */
+    private static class DeferredResult {
+        private Object result;
+        private boolean error;
+
+        final CallbackContext cbc = new CallbackContext(new Callback() {
+            @Override
+            public void invoke(Object... args) {
+                result = args[0];
+            }
+        }, new Callback() {
+            @Override
+            public void invoke(Object... args) {
+                result = args[0];
+                error = true;
+            }
+        });
+
+        /**
+         * @param groupError error of the group commit, sent instead of the result
+         * @return task sending the result (once it has been set) via target
+         */
+        Runnable deliverTo(final CallbackContext target, final String groupError) {
+            return new Runnable() {
+                @Override
+                public void run() {
+                    if (groupError != null) {
+                        target.error(groupError);
+                    } else if (error) {
+                        target.error(String.valueOf(result));
+                    } else {
+                        target.success((WritableArray) result);
+                    }
+                }
+            };
+        }
+
+        /**
+         * @param failedIndex index of the failed statement, -1 if the transaction was committed
+         * @param transactionError error of the transaction itself, sent instead of the result
+         * @return task sending the result of executeTransaction (once it has been set) via target
+         */
+        Runnable deliverTransactionTo(final CallbackContext target, final int failedIndex, final String transactionError) {
+            return new Runnable() {
+                @Override
+                public void run() {
+                    if (transactionError != null) {
+                        target.error(transactionError);
+                    } else if (error) {
+                        target.error(String.valueOf(result));
+                    } else {
+                        WritableMap transactionResult = Arguments.createMap();
+                        transactionResult.putArray("results", (WritableArray) result);
+                        transactionResult.putInt("failedIndex", failedIndex);
+                        target.success(transactionResult);
+                    }
+                }
+            };
+        }
     }
 
-    private final class DBQuery {
+    private final class DBQuery implements SQLitePriorityQueue.Request {
         // XXX TODO replace with DBRunner action enum:
         final boolean stop;
         final boolean close;
         final boolean delete;
+        final Action action;
+        final ReadableMap args;
         final String[] queries;
         final String[] queryIDs;
         final ReadableArray[] queryParams;
+        final ResultFormat[] queryFormats;
+        final SQLiteBlobEncoding[] queryBlobEncodings;
+        // self-contained transaction sent in a single batch, see DBRunner.executeAtomicGroup():
+        final boolean atomic;
+        // read-only transaction of executeTransaction, batch of a read transaction:
+        final boolean readOnly;
         final CallbackContext cbc;
+        final long enqueuedAt = System.nanoTime();
+        // lane of the writer queue, close and stop requests go after all waiting requests:
+        boolean background = true;
+        // set for requests which can be cancelled, see DBRunner.cancel():
+        String requestId;
+        CancellationSignal cancellation;
+        // System.nanoTime() after which the request is dropped before it runs, 0 for none:
+        long deadline;
+        // read request outside of a transaction, see SQLiteQueueLimit.Policy.dropOldestRead:
+        boolean read;
+        // room taken under the queue limit, see DBRunner.submit():
+        boolean admitted;
+        long queuedBytes;
+        // lane and timeout of a request waiting for room (block policy), see DBRunner.block():
+        boolean blockedReadOnly;
+        boolean blockedPureRead;
+        Future<?> blockTimeout;
+        // queue wait slice (when tracing), see DBRunner.queued():
+        String traceName;
+        int traceCookie;
 
         DBQuery(String[] myqueries, String[] qids, ReadableArray[] params, CallbackContext c) {
+            this(myqueries, qids, params, null, null, false, c);
+        }
+
+        DBQuery(String[] myqueries, String[] qids, ReadableArray[] params, ResultFormat[] formats,
+                SQLiteBlobEncoding[] blobEncodings, boolean atomic, CallbackContext c) {
+            this(Action.executeSqlBatch, myqueries, qids, params, formats, blobEncodings, atomic, false, c);
+        }
+
+        DBQuery(Action action, String[] myqueries, String[] qids, ReadableArray[] params, ResultFormat[] formats,
+                SQLiteBlobEncoding[] blobEncodings, boolean atomic, boolean readOnly, CallbackContext c) {
             this.stop = false;
             this.close = false;
             this.delete = false;
+            this.atomic = atomic;
+            this.readOnly = readOnly;
+            this.action = action;
+            this.args = null;
             this.queries = myqueries;
             this.queryIDs = qids;
             this.queryParams = params;
+            this.queryFormats = formats;
+            this.queryBlobEncodings = blobEncodings;
+            this.cbc = c;
+        }
+
+        // request handled by the db thread outside of executeSqlBatch:
+        DBQuery(Action action, ReadableMap args, CallbackContext c) {
+            this.stop = false;
+            this.close = false;
+            this.delete = false;
+            this.atomic = false;
+            this.readOnly = false;
+            this.action = action;
+            this.args = args;
+            this.queries = null;
+            this.queryIDs = null;
+            this.queryParams = null;
+            this.queryFormats = null;
+            this.queryBlobEncodings = null;
             this.cbc = c;
         }
 
@@ -995,9 +3087,15 @@ public class SQLitePlugin extends ReactContextBaseJavaModule {
             this.stop = true;
             this.close = true;
             this.delete = delete;
+            this.atomic = false;
+            this.readOnly = false;
+            this.action = null;
+            this.args = null;
             this.queries = null;
             this.queryIDs = null;
             this.queryParams = null;
+            this.queryFormats = null;
+            this.queryBlobEncodings = null;
             this.cbc = cbc;
         }
 
@@ -1006,11 +3104,32 @@ public class SQLitePlugin extends ReactContextBaseJavaModule {
             this.stop = true;
             this.close = false;
             this.delete = false;
+            this.atomic = false;
+            this.readOnly = false;
+            this.action = null;
+            this.args = null;
             this.queries = null;
             this.queryIDs = null;
             this.queryParams = null;
+            this.queryFormats = null;
+            this.queryBlobEncodings = null;
             this.cbc = null;
         }
+
+        @Override
+        public boolean isBackground() {
+            return background;
+        }
+
+        @Override
+        public boolean isRead() {
+            return read;
+        }
+
+        @Override
+        public long getEnqueuedAt() {
+            return enqueuedAt;
+        }
     }
 
     private enum Action {
@@ -1020,17 +3139,29 @@ public class SQLitePlugin extends ReactContextBaseJavaModule {
         delete,
         executeSqlBatch,
         backgroundExecuteSqlBatch,
+        executeTransaction,
+        executeMany,
+        executeScript,
+        openCursor,
+        fetch,
+        closeCursor,
+        cancel,
+        getQueueStatus,
+        getStats,
+        resetStats,
+        getSlowQueries,
+        setTracing,
         echoStringValue
     }
 
-    private enum QueryType {
-        update,
-        insert,
-        delete,
-        select,
-        begin,
-        commit,
-        rollback,
-        other
+    /**
+     * Encoding of SELECT results sent back over the bridge:
+     * rows - one map per row (default), array - column names once and one
+     * positional array per row, columnar - column names once and one array per column
+     */
+    enum ResultFormat {
+        rows,
+        array,
+        columnar
     }
 }
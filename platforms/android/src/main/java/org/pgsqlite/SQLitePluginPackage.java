@@ -20,6 +20,8 @@ import java.util.List;
 
 public class SQLitePluginPackage implements ReactPackage {
 
+    private final int workerThreads;
+
     /**
      * @deprecated, use method without activity
      * activity parameter is ignored
@@ -29,6 +31,16 @@ public class SQLitePluginPackage implements ReactPackage {
     }
 
     public SQLitePluginPackage() {
+        this(0);
+    }
+
+    /**
+     * @param workerThreads number of worker threads shared by all open databases
+     *                      (e.g. Runtime.getRuntime().availableProcessors()),
+     *                      0 for a thread per open database
+     */
+    public SQLitePluginPackage(int workerThreads) {
+        this.workerThreads = workerThreads;
     }
 
     @Override
@@ -36,7 +48,7 @@ public class SQLitePluginPackage implements ReactPackage {
                                 ReactApplicationContext reactContext) {
       List<NativeModule> modules = new ArrayList<>();
 
-      modules.add(new SQLitePlugin(reactContext));
+      modules.add(new SQLitePlugin(reactContext, workerThreads));
 
       return modules;
     }
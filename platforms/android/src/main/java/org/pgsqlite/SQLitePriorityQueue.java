@@ -0,0 +1,131 @@
+/*
+ * This library is available under the terms of the MIT License (2008).
+ * See http://opensource.org/licenses/alphabetical for full text.
+ */
+
+package org.pgsqlite;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writer queue of a DBRunner with an interactive and a background lane.
+ *
+ * Requests are taken from the interactive lane first, each lane keeps its order.
+ * So that a steady stream of interactive requests can't starve the background lane,
+ * a waiting background request is taken after MAX_INTERACTIVE_STREAK interactive
+ * requests taken ahead of it. The queue wait of both lanes is recorded.
+ */
+class SQLitePriorityQueue<E extends SQLitePriorityQueue.Request> {
+
+    static final int MAX_INTERACTIVE_STREAK = 8;
+
+    interface Request {
+        /**
+         * @return true for the background lane
+         */
+        boolean isBackground();
+
+        /**
+         * @return true for a request which only reads (may be dropped under load)
+         */
+        boolean isRead();
+
+        /**
+         * @return System.nanoTime() when the request was put in the queue
+         */
+        long getEnqueuedAt();
+    }
+
+    final SQLiteQueueStats interactiveStats = new SQLiteQueueStats("interactive");
+    final SQLiteQueueStats backgroundStats = new SQLiteQueueStats("background");
+
+    private final ArrayDeque<E> interactive = new ArrayDeque<E>();
+    private final ArrayDeque<E> background = new ArrayDeque<E>();
+    private int interactiveStreak;
+
+    synchronized void put(E request) {
+        (request.isBackground() ? background : interactive).add(request);
+        notifyAll();
+    }
+
+    /**
+     * @return the next request without waiting, null if the queue is empty
+     */
+    synchronized E poll() {
+        E request;
+        if (!interactive.isEmpty() && (background.isEmpty() || interactiveStreak < MAX_INTERACTIVE_STREAK)) {
+            request = interactive.poll();
+            interactiveStreak = background.isEmpty() ? 0 : interactiveStreak + 1;
+            interactiveStats.record(request.getEnqueuedAt());
+        } else {
+            request = background.poll();
+            if (request == null) {
+                return null;
+            }
+            interactiveStreak = 0;
+            backgroundStats.record(request.getEnqueuedAt());
+        }
+        return request;
+    }
+
+    /**
+     * @return the next request, waiting at most the given time, null if there is none
+     */
+    synchronized E poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        E request;
+        while ((request = poll()) == null) {
+            long wait = deadline - System.nanoTime();
+            if (wait <= 0) {
+                return null;
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, wait);
+        }
+        return request;
+    }
+
+    /**
+     * @return the next request, waiting until there is one
+     */
+    synchronized E take() throws InterruptedException {
+        E request;
+        while ((request = poll()) == null) {
+            wait();
+        }
+        return request;
+    }
+
+    /**
+     * @return true if the request was waiting in the queue and has been removed
+     */
+    synchronized boolean remove(E request) {
+        return interactive.remove(request) || background.remove(request);
+    }
+
+    /**
+     * @return the read request waiting longest, null if there is none
+     */
+    synchronized E peekOldestRead() {
+        E oldest = null;
+        for (E request : interactive) {
+            if (request.isRead()) {
+                oldest = request;
+                break;
+            }
+        }
+        for (E request : background) {
+            if (request.isRead()) {
+                if (oldest == null || request.getEnqueuedAt() - oldest.getEnqueuedAt() < 0) {
+                    oldest = request;
+                }
+                break;
+            }
+        }
+        return oldest;
+    }
+
+    synchronized int size() {
+        return interactive.size() + background.size();
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * This library is available under the terms of the MIT License (2008).
+ * See http://opensource.org/licenses/alphabetical for full text.
+ */
+
+package org.pgsqlite;
+
+import android.annotation.SuppressLint;
+import android.database.CursorWindow;
+import android.database.sqlite.SQLiteCursor;
+import android.database.sqlite.SQLiteCursorDriver;
+import android.database.sqlite.SQLiteQuery;
+import android.os.Build;
+
+import com.facebook.common.logging.FLog;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * SQLiteCursor which counts how often its CursorWindow is refilled.
+ *
+ * The framework copies query results into a CursorWindow (2 MB by default). Moving
+ * past the rows in the window refills it by running the query again and stepping over
+ * all rows before the new window, so reading a result of many windows costs close to
+ * quadratic time. With a configured window size (Android 9 and newer) the result is
+ * read into a window of that size, filled forward from the row requested.
+ */
+class SQLiteQueryCursor extends SQLiteCursor {
+
+    /**
+     * Cursor window settings and refill count of a database (shared by its connections).
+     */
+    static class Settings {
+        /**
+         * Size of the cursor window in bytes, 0 for the framework default.
+         */
+        final long windowSize;
+
+        private final AtomicLong windowRefills = new AtomicLong();
+
+        Settings(long windowSize) {
+            this.windowSize = windowSize;
+        }
+
+        SQLiteQueryCursor newCursor(SQLiteCursorDriver driver, String editTable, SQLiteQuery query) {
+            return new SQLiteQueryCursor(driver, editTable, query, windowSize);
+        }
+
+        /**
+         * Count the window refills of a cursor after reading it.
+         */
+        void recordRefills(String sql, SQLiteQueryCursor cursor) {
+            int refills = cursor.getWindowRefills();
+            if (refills > 0) {
+                windowRefills.addAndGet(refills);
+                FLog.w(SQLitePlugin.TAG, "cursor window refilled " + refills + " times for: " + sql);
+            }
+        }
+
+        long getWindowRefills() {
+            return windowRefills.get();
+        }
+
+        void resetWindowRefills() {
+            windowRefills.set(0);
+        }
+    }
+
+    private int windowRefills;
+
+    @SuppressLint("NewApi")
+    SQLiteQueryCursor(SQLiteCursorDriver driver, String editTable, SQLiteQuery query, long windowSize) {
+        super(driver, editTable, query);
+        if (windowSize > 0 && Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
+            setWindow(new CursorWindow("SQLitePlugin", windowSize));
+            // refill from the requested row on instead of centering the window around it:
+            setFillWindowForwardOnly(true);
+        }
+    }
+
+    @Override
+    public boolean onMove(int oldPosition, int newPosition) {
+        CursorWindow window = getWindow();
+        if (window != null && window.getNumRows() > 0
+                && (newPosition < window.getStartPosition()
+                || newPosition >= window.getStartPosition() + window.getNumRows())) {
+            windowRefills++;
+        }
+        return super.onMove(oldPosition, newPosition);
+    }
+
+    /**
+     * @return number of times the window was refilled since the first fill
+     */
+    int getWindowRefills() {
+        return windowRefills;
+    }
+}
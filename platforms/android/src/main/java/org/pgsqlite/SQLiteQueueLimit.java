@@ -0,0 +1,224 @@
+/*
+ * This library is available under the terms of the MIT License (2008).
+ * See http://opensource.org/licenses/alphabetical for full text.
+ */
+
+package org.pgsqlite;
+
+import com.facebook.common.logging.FLog;
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.ReadableMapKeySetIterator;
+import com.facebook.react.bridge.WritableMap;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bound of the requests waiting in the queues of a DBRunner, requested with the
+ * {@code queueLimit} block of the open options.
+ *
+ * The queues hold the request arguments, parameters included, until the requests
+ * are taken by a connection. A request which would exceed maxRequests waiting
+ * requests or maxBytes of estimated argument size is handled by the policy:
+ * reject fails it right away, block keeps it waiting for room (at most
+ * blockTimeoutMs, then it fails), dropOldestRead drops waiting read requests
+ * outside of transactions, oldest first, to make room (and fails it if there
+ * are none). A request is
+ * always admitted to empty queues, whatever its size.
+ *
+ * Blocked requests wait in their DBRunner, the calling thread (the native modules
+ * thread or the JS thread) never waits for room.
+ */
+class SQLiteQueueLimit {
+
+    enum Policy {
+        reject,
+        block,
+        dropOldestRead
+    }
+
+    static final String QUEUE_FULL = "queue full";
+
+    // estimated size of a value without content (number, boolean, null) and per string char:
+    private static final int VALUE_BYTES = 16;
+    private static final int CHAR_BYTES = 2;
+
+    final int maxRequests;
+    final long maxBytes;
+    final Policy policy;
+    final long blockTimeoutNanos;
+
+    // fails blocked requests after blockTimeoutMs, shared by all databases:
+    private static ScheduledExecutorService timer;
+
+    private int depth;
+    private long bytes;
+    private long rejected;
+    private long dropped;
+
+    private SQLiteQueueLimit(int maxRequests, long maxBytes, Policy policy, long blockTimeoutNanos) {
+        this.maxRequests = maxRequests;
+        this.maxBytes = maxBytes;
+        this.policy = policy;
+        this.blockTimeoutNanos = blockTimeoutNanos;
+    }
+
+    /**
+     * @return the limit of the open options, null if no queueLimit block was sent
+     */
+    static SQLiteQueueLimit fromOptions(ReadableMap options) {
+        ReadableMap queueLimit = (ReadableMap) SQLitePluginConverter.get(options, "queueLimit", null);
+        if (queueLimit == null) {
+            return null;
+        }
+
+        Policy policy = Policy.reject;
+        String policyName = SQLitePluginConverter.getString(queueLimit, "policy", null);
+        if (policyName != null) {
+            try {
+                policy = Policy.valueOf(policyName);
+            } catch (IllegalArgumentException ignore) {
+                FLog.w(SQLitePlugin.TAG, "unknown queue limit policy: " + policyName + ", using reject");
+            }
+        }
+        return new SQLiteQueueLimit(
+                SQLitePluginConverter.getInt(queueLimit, "maxRequests", 0),
+                SQLitePluginConverter.getInt(queueLimit, "maxBytes", 0),
+                policy,
+                TimeUnit.MILLISECONDS.toNanos(SQLitePluginConverter.getInt(queueLimit, "blockTimeoutMs", 0)));
+    }
+
+    boolean isByteLimited() {
+        return maxBytes > 0;
+    }
+
+    /**
+     * Take room for a request in the queues.
+     *
+     * @param size estimated argument size of the request (0 without maxBytes)
+     * @return false if there is no room, the request must not be queued (yet)
+     */
+    synchronized boolean acquire(long size) {
+        if (!fits(size)) {
+            return false;
+        }
+        depth++;
+        bytes += size;
+        return true;
+    }
+
+    private boolean fits(long size) {
+        return depth == 0
+                || ((maxRequests <= 0 || depth < maxRequests) && (maxBytes <= 0 || bytes + size <= maxBytes));
+    }
+
+    /**
+     * Give back the room of a request taken from (or removed from) the queues.
+     */
+    synchronized void release(long size) {
+        depth--;
+        bytes -= size;
+    }
+
+    /**
+     * Run task once blockTimeoutMs is over (block policy).
+     */
+    Future<?> scheduleTimeout(Runnable task) {
+        synchronized (SQLiteQueueLimit.class) {
+            if (timer == null) {
+                timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, "SQLite queue limit");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+            }
+            return timer.schedule(task, blockTimeoutNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    synchronized void rejected() {
+        rejected++;
+    }
+
+    synchronized void dropped() {
+        dropped++;
+    }
+
+    synchronized void resetCounters() {
+        rejected = 0;
+        dropped = 0;
+    }
+
+    synchronized WritableMap toMap() {
+        WritableMap map = Arguments.createMap();
+        map.putInt("depth", depth);
+        map.putDouble("bytes", bytes);
+        map.putInt("maxRequests", maxRequests);
+        map.putDouble("maxBytes", maxBytes);
+        map.putString("policy", policy.name());
+        map.putDouble("rejected", rejected);
+        map.putDouble("dropped", dropped);
+        return map;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "depth=" + depth + " bytes=" + bytes + " rejected=" + rejected + " dropped=" + dropped;
+    }
+
+    /**
+     * @return rough size in memory of request arguments
+     */
+    static long estimateSize(ReadableMap map) {
+        long size = VALUE_BYTES;
+        ReadableMapKeySetIterator keys = map.keySetIterator();
+        while (keys.hasNextKey()) {
+            String key = keys.nextKey();
+            size += key.length() * CHAR_BYTES;
+            switch (map.getType(key)) {
+                case String:
+                    size += VALUE_BYTES + map.getString(key).length() * CHAR_BYTES;
+                    break;
+                case Map:
+                    size += estimateSize(map.getMap(key));
+                    break;
+                case Array:
+                    size += estimateSize(map.getArray(key));
+                    break;
+                default:
+                    size += VALUE_BYTES;
+                    break;
+            }
+        }
+        return size;
+    }
+
+    static long estimateSize(ReadableArray array) {
+        long size = VALUE_BYTES;
+        for (int i = 0; i < array.size(); i++) {
+            switch (array.getType(i)) {
+                case String:
+                    size += VALUE_BYTES + array.getString(i).length() * CHAR_BYTES;
+                    break;
+                case Map:
+                    size += estimateSize(array.getMap(i));
+                    break;
+                case Array:
+                    size += estimateSize(array.getArray(i));
+                    break;
+                default:
+                    size += VALUE_BYTES;
+                    break;
+            }
+        }
+        return size;
+    }
+}
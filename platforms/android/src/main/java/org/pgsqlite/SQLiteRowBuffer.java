@@ -0,0 +1,288 @@
+/*
+ * This library is available under the terms of the MIT License (2008).
+ * See http://opensource.org/licenses/alphabetical for full text.
+ */
+
+package org.pgsqlite;
+
+import android.annotation.SuppressLint;
+import android.database.Cursor;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+
+import org.pgsqlite.SQLitePlugin.ResultFormat;
+
+/**
+ * Rows of a query result in primitive arrays.
+ *
+ * The db thread only steps the query and copies the values here, the bridge objects
+ * are built later by the result serializer (see SQLiteResultSerializer) so the db
+ * thread can go on with the next request meanwhile.
+ *
+ * Values are kept row by row: the type of each value (Cursor.FIELD_TYPE_*), INTEGER
+ * values and the bits of REAL values in a long array, TEXT and BLOB values as objects.
+ */
+class SQLiteRowBuffer {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    // estimated size of a value without content (number, null) and per string char:
+    private static final int VALUE_BYTES = 8;
+    private static final int CHAR_BYTES = 2;
+
+    final String[] columnNames;
+    private int rowCount;
+    private int size;
+    private long byteCount;
+    private byte[] types;
+    private long[] numbers;
+    private Object[] objects;
+
+    SQLiteRowBuffer(String[] columnNames) {
+        this.columnNames = columnNames;
+        int capacity = Math.max(INITIAL_CAPACITY, columnNames.length);
+        this.types = new byte[capacity];
+        this.numbers = new long[capacity];
+        this.objects = new Object[capacity];
+    }
+
+    int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * @return estimated size of the values in memory
+     */
+    long getByteCount() {
+        return byteCount;
+    }
+
+    /**
+     * Copy the values of the current row of a cursor.
+     */
+    @SuppressLint("NewApi")
+    void addRow(Cursor cur) {
+        for (int i = 0; i < columnNames.length; ++i) {
+            switch (cur.getType(i)) {
+                case Cursor.FIELD_TYPE_NULL:
+                    addNull();
+                    break;
+                case Cursor.FIELD_TYPE_INTEGER:
+                    addLong(cur.getLong(i));
+                    break;
+                case Cursor.FIELD_TYPE_FLOAT:
+                    addDouble(cur.getDouble(i));
+                    break;
+                case Cursor.FIELD_TYPE_BLOB:
+                    addBlob(cur.getBlob(i));
+                    break;
+                case Cursor.FIELD_TYPE_STRING:
+                default: /* (not expected) */
+                    addString(cur.getString(i));
+                    break;
+            }
+        }
+        endRow();
+    }
+
+    void addNull() {
+        add(Cursor.FIELD_TYPE_NULL, 0, null);
+    }
+
+    void addLong(long value) {
+        add(Cursor.FIELD_TYPE_INTEGER, value, null);
+    }
+
+    void addDouble(double value) {
+        add(Cursor.FIELD_TYPE_FLOAT, Double.doubleToRawLongBits(value), null);
+    }
+
+    void addString(String value) {
+        if (value != null) {
+            byteCount += value.length() * CHAR_BYTES;
+        }
+        add(Cursor.FIELD_TYPE_STRING, 0, value);
+    }
+
+    void addBlob(byte[] value) {
+        if (value != null) {
+            byteCount += value.length;
+        }
+        add(Cursor.FIELD_TYPE_BLOB, 0, value);
+    }
+
+    /**
+     * Complete a row added value by value.
+     */
+    void endRow() {
+        rowCount++;
+    }
+
+    private void add(int type, long number, Object object) {
+        if (size == types.length) {
+            grow();
+        }
+        types[size] = (byte) type;
+        numbers[size] = number;
+        objects[size] = object;
+        size++;
+        byteCount += VALUE_BYTES;
+    }
+
+    private void grow() {
+        int capacity = types.length * 2;
+        byte[] newTypes = new byte[capacity];
+        long[] newNumbers = new long[capacity];
+        Object[] newObjects = new Object[capacity];
+        System.arraycopy(types, 0, newTypes, 0, size);
+        System.arraycopy(numbers, 0, newNumbers, 0, size);
+        System.arraycopy(objects, 0, newObjects, 0, size);
+        types = newTypes;
+        numbers = newNumbers;
+        objects = newObjects;
+    }
+
+    /**
+     * @return index of a result column, -1 if there is no such column
+     */
+    int getColumnIndex(String column) {
+        for (int i = 0; i < columnNames.length; ++i) {
+            if (columnNames[i].equals(column)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return value of a column of the first row (Long, Double, String, byte[] or null)
+     * @throws Exception if there is no row
+     */
+    Object getFirstRowValue(int column) throws Exception {
+        if (rowCount == 0) {
+            throw new Exception("no result row");
+        }
+        switch (types[column]) {
+            case Cursor.FIELD_TYPE_NULL:
+                return null;
+            case Cursor.FIELD_TYPE_INTEGER:
+                return numbers[column];
+            case Cursor.FIELD_TYPE_FLOAT:
+                return Double.longBitsToDouble(numbers[column]);
+            default:
+                return objects[column];
+        }
+    }
+
+    /**
+     * Put the rows into a statement result as encoded by executeSqlBatch (nothing for
+     * an empty result in the rows format; the array and columnar formats always have
+     * the column names).
+     */
+    void putResult(WritableMap result, ResultFormat format, SQLiteBlobEncoding blobEncoding) {
+        if (rowCount == 0 && format == ResultFormat.rows) {
+            return;
+        }
+        int colCount = columnNames.length;
+
+        switch (format) {
+            case array: {
+                // column names once, then one positional array per row
+                WritableArray rows = Arguments.createArray();
+                for (int r = 0, cell = 0; r < rowCount; r++) {
+                    WritableArray row = Arguments.createArray();
+                    for (int i = 0; i < colCount; ++i) {
+                        pushValue(row, cell++, blobEncoding);
+                    }
+                    rows.pushArray(row);
+                }
+
+                result.putArray("columns", toWritableArray(columnNames));
+                result.putArray("rows", rows);
+                break;
+            }
+
+            case columnar: {
+                // column names once, then one array of values per column
+                WritableArray values = Arguments.createArray();
+                for (int i = 0; i < colCount; ++i) {
+                    WritableArray column = Arguments.createArray();
+                    for (int cell = i; cell < size; cell += colCount) {
+                        pushValue(column, cell, blobEncoding);
+                    }
+                    values.pushArray(column);
+                }
+
+                result.putArray("columns", toWritableArray(columnNames));
+                result.putInt("rowCount", rowCount);
+                result.putArray("values", values);
+                break;
+            }
+
+            case rows:
+            default: {
+                WritableArray rows = Arguments.createArray();
+                for (int r = 0, cell = 0; r < rowCount; r++) {
+                    WritableMap row = Arguments.createMap();
+                    for (int i = 0; i < colCount; ++i) {
+                        putValue(row, columnNames[i], cell++, blobEncoding);
+                    }
+                    rows.pushMap(row);
+                }
+
+                result.putArray("rows", rows);
+                break;
+            }
+        }
+    }
+
+    private void putValue(WritableMap row, String key, int cell, SQLiteBlobEncoding blobEncoding) {
+        switch (types[cell]) {
+            case Cursor.FIELD_TYPE_NULL:
+                row.putNull(key);
+                break;
+            case Cursor.FIELD_TYPE_INTEGER:
+                row.putDouble(key, numbers[cell]);
+                break;
+            case Cursor.FIELD_TYPE_FLOAT:
+                row.putDouble(key, Double.longBitsToDouble(numbers[cell]));
+                break;
+            case Cursor.FIELD_TYPE_BLOB:
+                blobEncoding.put(row, key, (byte[]) objects[cell]);
+                break;
+            default:
+                row.putString(key, (String) objects[cell]);
+                break;
+        }
+    }
+
+    private void pushValue(WritableArray values, int cell, SQLiteBlobEncoding blobEncoding) {
+        switch (types[cell]) {
+            case Cursor.FIELD_TYPE_NULL:
+                values.pushNull();
+                break;
+            case Cursor.FIELD_TYPE_INTEGER:
+                values.pushDouble(numbers[cell]);
+                break;
+            case Cursor.FIELD_TYPE_FLOAT:
+                values.pushDouble(Double.longBitsToDouble(numbers[cell]));
+                break;
+            case Cursor.FIELD_TYPE_BLOB:
+                blobEncoding.push(values, (byte[]) objects[cell]);
+                break;
+            default:
+                values.pushString((String) objects[cell]);
+                break;
+        }
+    }
+
+    private static WritableArray toWritableArray(String[] strings) {
+        WritableArray array = Arguments.createArray();
+        for (String string : strings) {
+            array.pushString(string);
+        }
+        return array;
+    }
+}
@@ -0,0 +1,271 @@
+/*
+ * This library is available under the terms of the MIT License (2008).
+ * See http://opensource.org/licenses/alphabetical for full text.
+ */
+
+package org.pgsqlite;
+
+import com.facebook.common.logging.FLog;
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+
+import org.pgsqlite.SQLiteStatementInfo.QueryType;
+
+import java.util.ArrayDeque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Statements of a DBRunner which ran for a threshold or longer, requested with the
+ * {@code slowQueryLog} block of the open options and reported by the getSlowQueries action.
+ *
+ * The last maxEntries slow statements are kept, the oldest is dropped first. An entry
+ * holds the SQL with its literals redacted (parameter values are never recorded, only
+ * their number), the execution time, the row count and the EXPLAIN QUERY PLAN output.
+ * The plan is captured once per distinct SQL, after the statement has run, on the
+ * connection it ran on. Plan steps scanning a whole table are flagged, so statements
+ * missing an index stand out.
+ */
+class SQLiteSlowQueryLog {
+
+    static final int DEFAULT_THRESHOLD_MS = 100;
+    static final int DEFAULT_MAX_ENTRIES = 50;
+
+    // distinct SQL with a captured plan:
+    private static final int MAX_PLANS = 100;
+
+    /**
+     * Connection to capture query plans with.
+     */
+    interface Explainer {
+        /**
+         * @return the detail column of the EXPLAIN QUERY PLAN rows of the statement
+         */
+        List<String> explainQueryPlan(String sql) throws Exception;
+    }
+
+    private static class Plan {
+        final List<String> steps;
+        final boolean fullTableScan;
+
+        Plan(List<String> steps) {
+            this.steps = steps;
+            boolean fullTableScan = false;
+            for (String step : steps) {
+                fullTableScan |= isFullTableScan(step);
+            }
+            this.fullTableScan = fullTableScan;
+        }
+    }
+
+    private static class Entry {
+        final String sql;
+        final QueryType queryType;
+        final int paramCount;
+        final long durationNanos;
+        final int rows;
+        final boolean failed;
+        final long loggedAt = System.currentTimeMillis();
+        final Plan plan;
+
+        Entry(String sql, QueryType queryType, int paramCount, long durationNanos, int rows, boolean failed, Plan plan) {
+            this.sql = sql;
+            this.queryType = queryType;
+            this.paramCount = paramCount;
+            this.durationNanos = durationNanos;
+            this.rows = rows;
+            this.failed = failed;
+            this.plan = plan;
+        }
+
+        WritableMap toMap() {
+            WritableMap map = Arguments.createMap();
+            map.putString("sql", sql);
+            map.putString("kind", queryType.name());
+            map.putInt("paramCount", paramCount);
+            map.putDouble("durationMs", durationNanos / 1e6);
+            map.putInt("rows", rows);
+            map.putBoolean("failed", failed);
+            map.putDouble("loggedAt", loggedAt);
+            if (plan != null) {
+                WritableArray steps = Arguments.createArray();
+                for (String step : plan.steps) {
+                    steps.pushString(step);
+                }
+                map.putArray("plan", steps);
+            }
+            map.putBoolean("fullTableScan", plan != null && plan.fullTableScan);
+            return map;
+        }
+    }
+
+    final long thresholdNanos;
+    final int maxEntries;
+
+    private final ArrayDeque<Entry> entries = new ArrayDeque<Entry>();
+    private final Map<String, Plan> plans = new LinkedHashMap<String, Plan>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Plan> eldest) {
+            return size() > MAX_PLANS;
+        }
+    };
+
+    private SQLiteSlowQueryLog(long thresholdNanos, int maxEntries) {
+        this.thresholdNanos = thresholdNanos;
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * @return the log of the open options, null if no slowQueryLog block was sent
+     */
+    static SQLiteSlowQueryLog fromOptions(ReadableMap options) {
+        ReadableMap slowQueryLog = (ReadableMap) SQLitePluginConverter.get(options, "slowQueryLog", null);
+        if (slowQueryLog == null) {
+            return null;
+        }
+        return new SQLiteSlowQueryLog(
+                TimeUnit.MILLISECONDS.toNanos(SQLitePluginConverter.getInt(slowQueryLog, "thresholdMs", DEFAULT_THRESHOLD_MS)),
+                Math.max(1, SQLitePluginConverter.getInt(slowQueryLog, "maxEntries", DEFAULT_MAX_ENTRIES)));
+    }
+
+    /**
+     * @return true if a statement which ran for the given time is logged
+     */
+    boolean isSlow(long durationNanos) {
+        return durationNanos >= thresholdNanos;
+    }
+
+    /**
+     * Log a slow statement (in the thread of the connection it ran on).
+     *
+     * @param paramCount    number of bound parameters
+     * @param durationNanos execution time, compilation included
+     * @param result        rows of a query, null for other statements
+     * @param explainer     connection the statement ran on
+     */
+    void record(QueryType queryType, String sql, int paramCount, long durationNanos, boolean failed,
+                SQLiteRowBuffer result, Explainer explainer) {
+        Entry entry = new Entry(redact(sql), queryType, paramCount, durationNanos,
+                result != null ? result.getRowCount() : 0, failed, getPlan(queryType, sql, explainer));
+        synchronized (this) {
+            if (entries.size() == maxEntries) {
+                entries.poll();
+            }
+            entries.add(entry);
+        }
+    }
+
+    /**
+     * @return the captured plan of the statement, captured now on its first slow run
+     */
+    private Plan getPlan(QueryType queryType, String sql, Explainer explainer) {
+        if (queryType == QueryType.begin || queryType == QueryType.commit || queryType == QueryType.rollback) {
+            return null;
+        }
+        synchronized (this) {
+            Plan plan = plans.get(sql);
+            if (plan != null) {
+                return plan;
+            }
+        }
+
+        Plan plan;
+        try {
+            plan = new Plan(explainer.explainQueryPlan(sql));
+        } catch (Exception ex) {
+            FLog.w(SQLitePlugin.TAG, "couldn't capture the query plan of a slow statement: " + ex.getMessage());
+            return null;
+        }
+        if (plan.fullTableScan) {
+            FLog.w(SQLitePlugin.TAG, "slow statement scans a full table: " + redact(sql));
+        }
+        synchronized (this) {
+            plans.put(sql, plan);
+        }
+        return plan;
+    }
+
+    synchronized void clear() {
+        entries.clear();
+    }
+
+    /**
+     * @return the logged statements, oldest first
+     */
+    synchronized WritableArray toArray() {
+        WritableArray array = Arguments.createArray();
+        for (Entry entry : entries) {
+            array.pushMap(entry.toMap());
+        }
+        return array;
+    }
+
+    /**
+     * @return true for a plan step reading every row of a table: "SCAN TABLE t" (before
+     * SQLite 3.36) or "SCAN t", unless it goes through an index
+     */
+    static boolean isFullTableScan(String step) {
+        if (!step.startsWith("SCAN ")) {
+            return false;
+        }
+        String scanned = step.substring(5);
+        return !scanned.contains(" INDEX")
+                && !scanned.startsWith("CONSTANT ROW")
+                && !scanned.startsWith("SUBQUERY")
+                && !scanned.startsWith("(");
+    }
+
+    /**
+     * @return the SQL with its string, blob and number literals replaced by '?'
+     */
+    static String redact(String sql) {
+        StringBuilder redacted = new StringBuilder(sql.length());
+        int len = sql.length();
+        int i = 0;
+        while (i < len) {
+            char c = sql.charAt(i);
+            char previous = i > 0 ? sql.charAt(i - 1) : ' ';
+            if (c == '\'' || ((c == 'x' || c == 'X') && i + 1 < len && sql.charAt(i + 1) == '\'' && !isWordChar(previous))) {
+                // string or blob literal, '' is a quote within it:
+                i = sql.indexOf('\'', i) + 1;
+                while (true) {
+                    int end = sql.indexOf('\'', i);
+                    if (end == -1) {
+                        i = len;
+                        break;
+                    }
+                    i = end + 1;
+                    if (i >= len || sql.charAt(i) != '\'') {
+                        break;
+                    }
+                    i++;
+                }
+                redacted.append('?');
+            } else if (c == '"' || c == '`' || c == '[') {
+                // quoted identifier, kept:
+                int end = sql.indexOf(c == '[' ? ']' : c, i + 1);
+                end = end == -1 ? len : end + 1;
+                redacted.append(sql, i, end);
+                i = end;
+            } else if (Character.isDigit(c) && !isWordChar(previous)) {
+                while (i < len && (Character.isLetterOrDigit(sql.charAt(i)) || sql.charAt(i) == '.')) {
+                    i++;
+                }
+                redacted.append('?');
+            } else {
+                redacted.append(c);
+                i++;
+            }
+        }
+        return redacted.toString();
+    }
+
+    // (digits after ? are a parameter number, kept)
+    private static boolean isWordChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '$' || c == '?';
+    }
+}
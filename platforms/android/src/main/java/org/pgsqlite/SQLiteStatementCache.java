@@ -0,0 +1,143 @@
+/*
+ * This library is available under the terms of the MIT License (2008).
+ * See http://opensource.org/licenses/alphabetical for full text.
+ */
+
+package org.pgsqlite;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded LRU of compiled statements for a single database connection.
+ *
+ * NOTE: not thread safe, it is only ever used from the owning DBRunner thread
+ * (except for the counters, which are read and reset by the stats actions).
+ */
+class SQLiteStatementCache {
+
+    /**
+     * Upper bound of the prepared statement cache kept by the Android framework
+     * for each connection (SQLiteDatabase.MAX_SQL_CACHE_SIZE).
+     */
+    private static final int MAX_FRAMEWORK_CACHE_SIZE = 100;
+
+    private final int maxSize;
+    private final LinkedHashMap<String, SQLiteStatement> statements;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    SQLiteStatementCache(int maxSize) {
+        this.maxSize = maxSize > 0 ? maxSize : 0;
+        this.statements = new LinkedHashMap<String, SQLiteStatement>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, SQLiteStatement> eldest) {
+                if (size() > SQLiteStatementCache.this.maxSize) {
+                    evictions.incrementAndGet();
+                    eldest.getValue().close();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    boolean isEnabled() {
+        return maxSize > 0;
+    }
+
+    int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Size the framework prepared statement cache of a newly opened connection
+     * so it can hold at least as many statements as this cache.
+     */
+    void configure(SQLiteDatabase mydb) {
+        if (isEnabled() && mydb != null) {
+            mydb.setMaxSqlCacheSize(Math.min(maxSize, MAX_FRAMEWORK_CACHE_SIZE));
+        }
+    }
+
+    /**
+     * Returns a compiled statement for {@code sql} with all bindings cleared.
+     * Must be handed back through {@link #release(String, SQLiteStatement)} once executed.
+     */
+    SQLiteStatement acquire(SQLiteDatabase mydb, String sql) {
+        if (!isEnabled()) {
+            misses.incrementAndGet();
+            return mydb.compileStatement(sql);
+        }
+
+        SQLiteStatement statement = statements.get(sql);
+        if (statement != null) {
+            hits.incrementAndGet();
+            statement.clearBindings();
+            return statement;
+        }
+
+        misses.incrementAndGet();
+        statement = mydb.compileStatement(sql);
+        statements.put(sql, statement);
+        return statement;
+    }
+
+    /**
+     * Hand back a statement obtained from {@link #acquire(SQLiteDatabase, String)}.
+     * Statements which are not kept in the cache are closed.
+     */
+    void release(String sql, SQLiteStatement statement) {
+        if (statement == null) {
+            return;
+        }
+        if (!isEnabled() || statements.get(sql) != statement) {
+            statement.close();
+        }
+    }
+
+    /**
+     * Close all cached statements, must be called before the connection is closed.
+     */
+    void clear() {
+        Iterator<SQLiteStatement> it = statements.values().iterator();
+        while (it.hasNext()) {
+            it.next().close();
+            it.remove();
+        }
+    }
+
+    int size() {
+        return statements.size();
+    }
+
+    long getHitCount() {
+        return hits.get();
+    }
+
+    long getMissCount() {
+        return misses.get();
+    }
+
+    long getEvictionCount() {
+        return evictions.get();
+    }
+
+    void resetCounts() {
+        hits.set(0);
+        misses.set(0);
+        evictions.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return "size=" + statements.size() + "/" + maxSize + " hits=" + hits + " misses=" + misses + " evictions=" + evictions;
+    }
+}
@@ -21,10 +21,21 @@ var config = [
   [false,"SQLitePlugin","sqlBatch",false,false,true],
   [false,"SQLitePlugin","attach",true,false,true],
   [false,"SQLitePlugin","detach",false,false,true],
+  [false,"SQLitePlugin","executeMany",false,false,true],
+  [false,"SQLitePlugin","executeScript",false,false,true],
+  [false,"SQLitePlugin","cancel",false,false,true],
+  [false,"SQLitePlugin","getQueueStatus",false,false,true],
+  [false,"SQLitePlugin","getStats",false,false,true],
+  [false,"SQLitePlugin","resetStats",false,false,true],
+  [false,"SQLitePlugin","getSlowQueries",false,false,true],
+  [false,"SQLitePlugin","openCursor",true,false,true],
+  [false,"SQLitePluginCursor","fetch",false,false,true],
+  [false,"SQLitePluginCursor","close",false,false,true],
   [false,"SQLitePluginTransaction","executeSql",true,false,false],
   [false,"SQLiteFactory","deleteDatabase",false,false,true],
   [true, "SQLiteFactory","openDatabase",false,false,true],
-  [false,"SQLiteFactory","echoTest",false,false,true]
+  [false,"SQLiteFactory","echoTest",false,false,true],
+  [false,"SQLiteFactory","setTracing",false,false,true]
 ];
 
 var originalFns = {};
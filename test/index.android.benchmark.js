@@ -0,0 +1,336 @@
+/**
+ * Benchmark App for the native hot paths (Android)
+ *
+ * Each case targets one path of the native module:
+ * - lookups: typed parameter binding of SELECT statements, keys sent as numbers
+ *   (bound as INTEGER) and as strings (bound as TEXT, which is what every SELECT
+ *   parameter used to be bound as)
+ * - decode: argument decoding of a batch of statements with many parameters
+ * - bind: parameter binding of INSERT statements with values of every type
+ * - query type: classification of statements with comments, whitespace and
+ *   CTEs, against plain SELECT statements
+ * - read rows: reading a large result into row buffers and sending it
+ * - blobs: the Base64 encoding of BLOB columns
+ *
+ * The data and the keys come from a fixed seed, each case runs once to warm up
+ * and then `repetitions` times, so numbers can be compared before and after a
+ * change on the same device. Wall time (bridge included) is reported with the
+ * native execute and serialization time from db.getStats(). All results are
+ * also logged as JSON.
+ *
+ * This library is available under the terms of the MIT License (2008).
+ * See http://opensource.org/licenses/alphabetical for full text.
+ */
+'use strict';
+
+import React, { Component } from 'react';
+import {
+    AppRegistry,
+    StyleSheet,
+    Text,
+    View,
+} from 'react-native';
+import ListView from 'deprecated-react-native-listview';
+
+import SQLite from 'react-native-sqlite-storage';
+SQLite.DEBUG(false);
+SQLite.enablePromise(true);
+
+const database_name = "Benchmark.db";
+const row_count = 200000;
+const lookup_count = 2000;
+const chunk_size = 5000;
+const seed = 20150101;
+const repetitions = 5;
+const batch_size = 1000;
+const read_row_count = 20000;
+const blob_count = 1000;
+const blob_size = 1024;
+let db;
+
+/**
+ * Deterministic pseudo random numbers in [0, 1) (mulberry32).
+ */
+const seededRandom = (state) => {
+    return () => {
+        state = (state + 0x6D2B79F5) | 0;
+        let t = Math.imul(state ^ (state >>> 15), 1 | state);
+        t = (t + Math.imul(t ^ (t >>> 7), 61 | t)) ^ t;
+        return ((t ^ (t >>> 14)) >>> 0) / 4294967296;
+    };
+};
+
+const now = () => global.performance && global.performance.now ? global.performance.now() : Date.now();
+
+const median = (values) => {
+    const sorted = [...values].sort((a, b) => a - b);
+    return sorted[Math.floor(sorted.length / 2)];
+};
+
+class SQLiteBenchmark extends Component {
+    constructor() {
+        super();
+        this.progress = [];
+        this.results = {};
+        this.state = {
+            progress: [],
+            ds: new ListView.DataSource({
+                rowHasChanged: (r1, r2) => r1 !== r2}
+            )
+        };
+    }
+
+    updateProgress = (text, resetState) => {
+        let progress = [];
+        if (!resetState) {
+            progress = [...this.progress];
+        }
+        progress.push(text);
+        this.progress = progress;
+        this.setState({
+            progress
+        });
+    };
+
+    componentWillUnmount = () => {
+        this.closeDatabase();
+    };
+
+    populateDatabase = async () => {
+        const [results] = await db.executeSql('SELECT COUNT(*) AS n FROM bench_int');
+        if (results.rows.item(0).n !== row_count) {
+            this.updateProgress(`Populating tables with ${row_count} rows ...`);
+            await db.sqlBatch([
+                'DELETE FROM bench_int',
+                'DELETE FROM bench_any'
+            ]);
+            for (let first = 0; first < row_count; first += chunk_size) {
+                let rows = [];
+                for (let k = first; k < first + chunk_size && k < row_count; k++) {
+                    rows.push([k, `value ${k}`]);
+                }
+                await db.executeMany('INSERT INTO bench_int (k, v) VALUES (?, ?)', rows);
+                await db.executeMany('INSERT INTO bench_any (k, v) VALUES (?, ?)', rows);
+            }
+        }
+
+        const [blobs] = await db.executeSql('SELECT COUNT(*) AS n FROM bench_blob');
+        if (blobs.rows.item(0).n !== blob_count) {
+            await db.sqlBatch([
+                'DELETE FROM bench_blob',
+                [`WITH RECURSIVE n(i) AS (SELECT 1 UNION ALL SELECT i + 1 FROM n WHERE i < ${blob_count})
+                  INSERT INTO bench_blob (id, data) SELECT i, zeroblob(${blob_size}) FROM n`, []]
+            ]);
+        }
+        this.updateProgress("Tables populated");
+    };
+
+    /**
+     * Run a case once to warm up, then `repetitions` times, and report its wall time
+     * with the native execute and serialization time per run.
+     */
+    measure = async (name, run) => {
+        await run();
+        await db.resetStats();
+        let times = [];
+        for (let i = 0; i < repetitions; i++) {
+            const start = now();
+            await run();
+            times.push(now() - start);
+        }
+        const [stats] = await db.getStats();
+        let executeMs = 0;
+        for (let kind in stats.statements) {
+            executeMs += stats.statements[kind].execute.totalMs;
+        }
+        const result = {
+            medianMs: median(times),
+            minMs: Math.min(...times),
+            maxMs: Math.max(...times),
+            nativeExecuteMs: executeMs / repetitions,
+            serializationMs: stats.serialization.totalMs / repetitions
+        };
+        this.results[name] = result;
+        this.updateProgress(`${name}: ${result.medianMs.toFixed(1)} ms (${result.minMs.toFixed(1)}-${result.maxMs.toFixed(1)}), ` +
+            `native ${result.nativeExecuteMs.toFixed(1)} ms, serialization ${result.serializationMs.toFixed(1)} ms`);
+    };
+
+    /**
+     * All lookups go in one transaction (a single native batch), so the time
+     * measured is mostly spent binding and executing the statements.
+     */
+    lookup = async (table, keys, asText) => {
+        let found = 0;
+        await db.readTransaction((tx) => {
+            for (let key of keys) {
+                tx.executeSql(`SELECT v FROM ${table} WHERE k = ?`, [asText ? String(key) : key]).then(([tx, results]) => {
+                    found += results.rows.length;
+                });
+            }
+        });
+        if (found !== keys.length) {
+            throw new Error(`${table}: ${found}/${keys.length} rows found`);
+        }
+    };
+
+    runBenchmark = async () => {
+        try {
+            this.updateProgress("Opening database ...", true);
+            this.results = {};
+            db = await SQLite.openDatabase({name: database_name, location: 'default'});
+            // bench_int: INTEGER affinity, bench_any: no affinity (e.g. columns declared without type)
+            await db.sqlBatch([
+                'CREATE TABLE IF NOT EXISTS bench_int (id INTEGER PRIMARY KEY, k INTEGER NOT NULL, v TEXT)',
+                'CREATE INDEX IF NOT EXISTS bench_int_k ON bench_int (k)',
+                'CREATE TABLE IF NOT EXISTS bench_any (id INTEGER PRIMARY KEY, k, v)',
+                'CREATE INDEX IF NOT EXISTS bench_any_k ON bench_any (k)',
+                'CREATE TABLE IF NOT EXISTS bench_bind (i INTEGER, r REAL, t TEXT, b BLOB, n)',
+                'CREATE TABLE IF NOT EXISTS bench_blob (id INTEGER PRIMARY KEY, data BLOB)'
+            ]);
+            await this.populateDatabase();
+            this.updateProgress(`seed ${seed}, ${repetitions} repetitions, median (min-max):`);
+
+            const random = seededRandom(seed);
+            let keys = [];
+            for (let i = 0; i < lookup_count; i++) {
+                keys.push(Math.floor(random() * row_count));
+            }
+            await this.measure(`lookups bench_int, keys as INTEGER`, () => this.lookup('bench_int', keys, false));
+            await this.measure(`lookups bench_int, keys as TEXT`, () => this.lookup('bench_int', keys, true));
+            await this.measure(`lookups bench_any, keys as INTEGER`, () => this.lookup('bench_any', keys, false));
+            await this.measure(`lookups bench_any, keys as TEXT`, () => this.lookup('bench_any', keys, true));
+
+            let decodeBatch = [];
+            for (let i = 0; i < batch_size; i++) {
+                decodeBatch.push(['SELECT ?, ?, ?, ?, ?, ?, ?, ?', [i, i + 0.5, `text ${i}`, null, -i, i * 1e9, `${i}`, true]]);
+            }
+            await this.measure(`decode ${batch_size} statements, 8 parameters`, () => db.sqlBatch(decodeBatch));
+
+            let bindBatch = ['DELETE FROM bench_bind'];
+            for (let i = 0; i < batch_size; i++) {
+                bindBatch.push(['INSERT INTO bench_bind (i, r, t, b, n) VALUES (?, ?, ?, ?, ?)',
+                    [i, random(), `text ${i}`, new Uint8Array([i & 0xff, 1, 2, 3]), null]]);
+            }
+            await this.measure(`bind ${batch_size} inserts`, () => db.sqlBatch(bindBatch));
+
+            const kinds = [
+                'SELECT 1',
+                '  \n\tselect 1',
+                '/* comment */ SELECT 1',
+                '-- comment\nSELECT 1',
+                'WITH x AS (SELECT 1) SELECT * FROM x',
+                'VALUES (1)'
+            ];
+            let plainBatch = [];
+            let kindBatch = [];
+            for (let i = 0; i < batch_size; i++) {
+                plainBatch.push(['SELECT 1', []]);
+                kindBatch.push([kinds[i % kinds.length], []]);
+            }
+            await this.measure(`query type, ${batch_size} plain statements`, () => db.sqlBatch(plainBatch));
+            await this.measure(`query type, ${batch_size} mixed statements`, () => db.sqlBatch(kindBatch));
+
+            const readSql = `SELECT id, k, v, k * 0.5 AS f FROM bench_int LIMIT ${read_row_count}`;
+            await this.measure(`read ${read_row_count} rows`, () => db.executeSql(readSql, []));
+            await this.measure(`read ${read_row_count} rows, array format`, () => db.executeSql({sql: readSql, resultFormat: "array"}, []));
+
+            await this.measure(`blobs ${blob_count} x ${blob_size} bytes, base64`, () => db.executeSql('SELECT data FROM bench_blob', []));
+            await this.measure(`blobs ${blob_count} x ${blob_size} bytes, compact`, () => db.executeSql({sql: 'SELECT data FROM bench_blob', blobs: "compact"}, []));
+
+            console.log("benchmark results: " + JSON.stringify(this.results));
+            this.updateProgress("Benchmark completed");
+        } catch (err) {
+            console.log("error: ", err);
+            this.updateProgress("Error: " + (err.message || err));
+        }
+    };
+
+    deleteDatabase = () => {
+        this.updateProgress("Deleting database");
+        SQLite.deleteDatabase({name: database_name, location: 'default'}).then(() => {
+            this.updateProgress("Database DELETED");
+        });
+    };
+
+    closeDatabase = () => {
+        if (db) {
+            this.updateProgress("Closing database");
+            db.close().then(() => {
+                this.updateProgress("Database CLOSED");
+            });
+            db = null;
+        } else {
+            this.updateProgress("Database was not OPENED");
+        }
+    };
+
+    renderProgressEntry = (entry) => {
+        return (<View style={listStyles.li}>
+            <View>
+                <Text style={listStyles.liText}>{entry}</Text>
+            </View>
+        </View>)
+    };
+
+    render = () => {
+        return (<View style={styles.mainContainer}>
+            <View style={styles.toolbar}>
+                <Text style={styles.toolbarButton} onPress={this.runBenchmark}>
+                    Run Benchmark
+                </Text>
+                <Text style={styles.toolbarButton} onPress={this.closeDatabase}>
+                    Close DB
+                </Text>
+                <Text style={styles.toolbarButton} onPress={this.deleteDatabase}>
+                    Delete DB
+                </Text>
+            </View>
+            <ListView
+                enableEmptySections={true}
+                dataSource={this.state.ds.cloneWithRows(this.state.progress)}
+                renderRow={this.renderProgressEntry}
+                style={listStyles.liContainer}/>
+        </View>);
+    }
+}
+
+var listStyles = StyleSheet.create({
+    li: {
+        borderBottomColor: '#c8c7cc',
+        borderBottomWidth: 0.5,
+        paddingTop: 15,
+        paddingRight: 15,
+        paddingBottom: 15,
+    },
+    liContainer: {
+        backgroundColor: '#fff',
+        flex: 1,
+        paddingLeft: 15,
+    },
+    liText: {
+        color: '#333',
+        fontSize: 17,
+        fontWeight: '400',
+        marginBottom: -3.5,
+        marginTop: -3.5,
+    },
+});
+
+var styles = StyleSheet.create({
+    toolbar: {
+        backgroundColor: '#51c04d',
+        paddingTop: 30,
+        paddingBottom: 10,
+        flexDirection: 'row'
+    },
+    toolbarButton: {
+        color: 'blue',
+        textAlign: 'center',
+        flex: 1
+    },
+    mainContainer: {
+        flex: 1
+    }
+});
+
+AppRegistry.registerComponent('AwesomeProject', () => SQLiteBenchmark);